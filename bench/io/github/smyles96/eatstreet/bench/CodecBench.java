@@ -0,0 +1,144 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import com.google.gson.reflect.TypeToken;
+import io.github.smyles96.eatstreet.model.menu.MenuCategory;
+import io.github.smyles96.eatstreet.util.codec.ModelCodec;
+import io.github.smyles96.eatstreet.util.json.JsonConverter;
+
+/**
+ * Compares the binary ModelCodec with Gson (the JSON the disk caches stored
+ * before) and Java serialization, on a full restaurant menu.
+ *
+ * The menu has 15 categories of 20 items, each item with 3 customization
+ * groups of 4 choices, as a large restaurant's menu with customizations
+ * does. For each format the encoded size is printed, with the time and
+ * allocation of encoding the menu and of decoding it again. Java
+ * serialization is only encoded: the model classes extend EatStreetModel,
+ * which is not Serializable and has no no-argument constructor, so a menu
+ * cannot be deserialized.
+ *
+ * Arguments (all optional): iterations per round, rounds.
+ *
+ * @author smyles96
+ */
+public final class CodecBench {
+
+    /* STATIC FIELDS */
+    private static final int CATEGORIES = 15;
+    private static final int ITEMS = 20;
+    private static final int GROUPS = 3;
+    private static final int CHOICES = 4;
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private CodecBench() {}
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 15;
+
+        Type menuType = new TypeToken<List<MenuCategory>>() {}.getType();
+        List<MenuCategory> menu = new ArrayList<>(Arrays.asList(JsonConverter.fromJson(
+            com.google.gson.JsonParser.parseString(menuJson()), MenuCategory[].class)));
+
+        ModelCodec<List<MenuCategory>> codec = ModelCodec.listOf(MenuCategory.class);
+        byte[] binary = codec.encode(menu);
+        byte[] json = JsonConverter.GSON.toJson(menu, menuType).getBytes(StandardCharsets.UTF_8);
+        byte[] serialized = serialize(menu);
+
+        System.out.printf("menu of %d categories x %d items x %d groups x %d choices, %d iterations x %d rounds%n",
+                          CATEGORIES, ITEMS, GROUPS, CHOICES, iterations, rounds);
+        System.out.printf("%-8s %10s %12s %12s %12s %12s%n", "format", "bytes", "encode us", "encode B/op", "decode us", "decode B/op");
+
+        Measurement encode = Measurement.of(() -> codec.encode(menu), iterations, WARM_UP_ROUNDS, rounds);
+        Measurement decode = Measurement.of(() -> codec.decode(ByteBuffer.wrap(binary)), iterations, WARM_UP_ROUNDS, rounds);
+        print("binary", binary.length, encode, decode);
+
+        encode = Measurement.of(() -> JsonConverter.GSON.toJson(menu, menuType).getBytes(StandardCharsets.UTF_8), iterations, WARM_UP_ROUNDS, rounds);
+        decode = Measurement.of(() -> JsonConverter.GSON.fromJson(
+            new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8), menuType), iterations, WARM_UP_ROUNDS, rounds);
+        print("gson", json.length, encode, decode);
+
+        encode = Measurement.of(() -> serialize(menu), iterations, WARM_UP_ROUNDS, rounds);
+        print("java", serialized.length, encode, null);
+
+        // The binary encoding must hold the same menu
+        String decoded = JsonConverter.GSON.toJson(codec.decode(ByteBuffer.wrap(binary)), menuType);
+        System.out.println("binary round trip matches: " + decoded.equals(new String(json, StandardCharsets.UTF_8)));
+    }
+
+    private static void print(String format, int size, Measurement encode, Measurement decode) {
+        if( decode == null ) {
+            System.out.printf("%-8s %10d %12.1f %12d %12s %12s%n", format, size,
+                              encode.getMicrosPerOp(), encode.getBytesPerOp(), "n/a", "n/a");
+            return;
+        }
+
+        System.out.printf("%-8s %10d %12.1f %12d %12.1f %12d%n", format, size,
+                          encode.getMicrosPerOp(), encode.getBytesPerOp(), decode.getMicrosPerOp(), decode.getBytesPerOp());
+    }
+
+    private static byte[] serialize(List<MenuCategory> menu) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(menu);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Builds the JSON of the benchmark menu, as the EatStreet API returns it
+     */
+    private static String menuJson() {
+        Random random = new Random(7);
+        StringBuilder json = new StringBuilder("[");
+
+        for(int c = 0; c < CATEGORIES; c++) {
+            json.append((c > 0) ? "," : "")
+                .append("{\"apiKey\":\"c").append(c).append("\",\"name\":\"Category ").append(c)
+                .append("\",\"description\":\"Tasty things\",\"items\":[");
+
+            for(int i = 0; i < ITEMS; i++) {
+                json.append((i > 0) ? "," : "")
+                    .append("{\"apiKey\":\"i").append(c).append('_').append(i).append("\",\"name\":\"Item ").append(i)
+                    .append("\",\"description\":\"A fine item with cheese\",\"basePrice\":")
+                    .append(5 + random.nextInt(20)).append(random.nextBoolean() ? ".99" : ".49")
+                    .append(",\"customizationGroups\":[");
+
+                for(int g = 0; g < GROUPS; g++) {
+                    json.append((g > 0) ? "," : "")
+                        .append("{\"apiKey\":\"g").append(g).append("\",\"name\":\"Size\",\"maxCount\":1,\"basePrice\":0.0,")
+                        .append("\"customizations\":[{\"apiKey\":\"cu").append(g)
+                        .append("\",\"name\":\"Choose\",\"type\":\"RADIO\",\"customizationChoices\":[");
+
+                    for(int k = 0; k < CHOICES; k++) {
+                        json.append((k > 0) ? "," : "")
+                            .append("{\"apiKey\":\"ch").append(k).append("\",\"name\":\"Option ").append(k)
+                            .append("\",\"price\":").append(k * 0.5).append(",\"count\":0}");
+                    }
+
+                    json.append("]}]}");
+                }
+
+                json.append("]}");
+            }
+
+            json.append("]}");
+        }
+
+        return json.append("]").toString();
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import com.google.gson.JsonParser;
+import io.github.smyles96.eatstreet.util.io.DecodingReader;
+
+/**
+ * Compares decoding response bodies with an InputStreamReader, as the GET
+ * path did before the shared decoding stage, with a DecodingReader on
+ * pooled buffers.
+ *
+ * The body is a JSON array of about 64KB with non-ASCII names. Four reads
+ * are measured with each reader: the whole body in bulk reads of 4096
+ * chars, a 512 byte body in bulk (the size of most account responses), the
+ * whole body one char at a time (as an unbuffered reader is read by a
+ * parser that pulls characters through small reads), and the whole body
+ * parsed by Gson. The time and allocation per response are printed; the
+ * bytes of the body itself are allocated before measuring.
+ *
+ * Arguments (all optional): rounds.
+ *
+ * @author smyles96
+ */
+public final class DecodingBench {
+
+    /* STATIC FIELDS */
+    private static final int BODY_SIZE = 64 * 1024;
+    private static final int SMALL_BODY_SIZE = 512;
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    /**
+     * Opens a reader over a response body
+     */
+    @FunctionalInterface
+    private interface ReaderFactory {
+        Reader open(InputStream in);
+    }
+
+    private DecodingBench() {}
+
+    public static void main(String[] args) throws Exception {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 9;
+
+        StringBuilder json = new StringBuilder("[");
+        while( json.length() < BODY_SIZE ) {
+            json.append((json.length() > 1) ? "," : "").append("{\"name\":\"Café Über\",\"price\":12.5,\"apiKey\":\"abc123\"}");
+        }
+        byte[] body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("body %d bytes, small body %d bytes, %d rounds%n", body.length, SMALL_BODY_SIZE, rounds);
+        System.out.printf("%-10s %-18s %12s %12s%n", "read", "reader", "us/response", "B/response");
+
+        ReaderFactory[] readers = {
+            in -> new InputStreamReader(in, StandardCharsets.UTF_8),
+            in -> new DecodingReader(in, StandardCharsets.UTF_8)
+        };
+        String[] names = { "InputStreamReader", "DecodingReader" };
+
+        for(int r = 0; r < readers.length; r++) {
+            ReaderFactory reader = readers[r];
+            char[] chars = new char[4096];
+
+            print("bulk", names[r], Measurement.of(() -> {
+                try(Reader in = reader.open(new ByteArrayInputStream(body))) {
+                    long count = 0;
+                    int read;
+                    while( (read = in.read(chars)) > 0 ) {
+                        count += read;
+                    }
+                    return count;
+                }
+            }, 500, WARM_UP_ROUNDS, rounds));
+        }
+
+        for(int r = 0; r < readers.length; r++) {
+            ReaderFactory reader = readers[r];
+            char[] chars = new char[4096];
+
+            print("small", names[r], Measurement.of(() -> {
+                try(Reader in = reader.open(new ByteArrayInputStream(body, 0, SMALL_BODY_SIZE))) {
+                    long count = 0;
+                    int read;
+                    while( (read = in.read(chars)) > 0 ) {
+                        count += read;
+                    }
+                    return count;
+                }
+            }, 20000, WARM_UP_ROUNDS, rounds));
+        }
+
+        for(int r = 0; r < readers.length; r++) {
+            ReaderFactory reader = readers[r];
+
+            print("per char", names[r], Measurement.of(() -> {
+                try(Reader in = reader.open(new ByteArrayInputStream(body))) {
+                    long count = 0;
+                    while( in.read() >= 0 ) {
+                        count++;
+                    }
+                    return count;
+                }
+            }, 50, WARM_UP_ROUNDS, rounds));
+        }
+
+        for(int r = 0; r < readers.length; r++) {
+            ReaderFactory reader = readers[r];
+
+            print("gson", names[r], Measurement.of(() -> {
+                try(Reader in = reader.open(new ByteArrayInputStream(body))) {
+                    return JsonParser.parseReader(in);
+                }
+            }, 100, WARM_UP_ROUNDS, rounds));
+        }
+    }
+
+    private static void print(String read, String reader, Measurement measurement) {
+        System.out.printf("%-10s %-18s %12.1f %12d%n", read, reader, measurement.getMicrosPerOp(), measurement.getBytesPerOp());
+    }
+}
@@ -0,0 +1,340 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the EatStreet API that answers every request with the
+ * same JSON body, over HTTP/1.1 with keep-alive or over cleartext HTTP/2
+ * (h2c, reached through the HTTP/1.1 Upgrade the JDK client performs, or
+ * with prior knowledge).
+ *
+ * Each response is delayed by a fixed server time, and each new connection
+ * by a fixed setup time standing in for the TCP and TLS handshakes a real
+ * connection to the API pays. The stand-in counts the connections it
+ * accepts, so benchmarks can report how many each transport opened.
+ *
+ * Only what the benchmarks need of HTTP/2 is implemented: request headers
+ * are never decoded (every request gets the same answer), responses are
+ * encoded with the HPACK static table and literals, and a body fits one
+ * DATA frame.
+ *
+ * @author smyles96
+ */
+public final class H2cStandIn implements Closeable {
+
+    /* STATIC FIELDS */
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int DATA = 0;
+    private static final int HEADERS = 1;
+    private static final int SETTINGS = 4;
+    private static final int PING = 6;
+    private static final int GOAWAY = 7;
+    private static final int WINDOW_UPDATE = 8;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final ServerSocket server;
+    private final byte[] body;
+    private final long serverMillis;
+    private final long setupMillis;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(daemon("stand-in-connection"));
+    private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(4, daemon("stand-in-responder"));
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Starts a stand-in on a free local port
+     *
+     * @param body The JSON body of every response; at most 16KB
+     * @param serverMillis How long each response is delayed
+     * @param setupMillis How long each new connection is delayed before it is served
+     *
+     * @throws IOException If the server socket could not be opened
+     */
+    public H2cStandIn(String body, long serverMillis, long setupMillis) throws IOException {
+        this.body = body.getBytes(StandardCharsets.UTF_8);
+        this.serverMillis = serverMillis;
+        this.setupMillis = setupMillis;
+        this.server = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+
+        if( this.body.length > 16384 ) {
+            throw new IllegalArgumentException("The body must fit one DATA frame");
+        }
+
+        connectionThreads.execute(this::accept);
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Gets the number of connections accepted so far
+     *
+     * @return The connection count
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connectionThreads.shutdownNow();
+        responders.shutdownNow();
+    }
+
+    private void accept() {
+        while( !server.isClosed() ) {
+            try {
+                Socket socket = server.accept();
+                connections.incrementAndGet();
+                connectionThreads.execute(() -> serve(socket));
+            }
+            catch(IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try(Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            TimeUnit.MILLISECONDS.sleep(setupMillis);
+
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = connection.getOutputStream();
+
+            in.mark(PREFACE.length);
+            byte[] start = new byte[PREFACE.length];
+            int read = in.read(start);
+            in.reset();
+
+            if( read == PREFACE.length && java.util.Arrays.equals(start, PREFACE) ) {
+                serveHttp2(in, out, false);
+            }
+            else {
+                serveHttp1(in, out);
+            }
+        }
+        catch(IOException | InterruptedException e) {
+            // The client went away
+        }
+    }
+
+    /**
+     * Serves HTTP/1.1 requests on a connection until it closes, or until a
+     * request upgrades it to h2c
+     */
+    private void serveHttp1(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        while( true ) {
+            boolean upgrade = false;
+            long contentLength = 0;
+
+            String line = readLine(in);
+            if( line == null ) {
+                return;
+            }
+
+            while( !(line = readLine(in)).isEmpty() ) {
+                String header = line.toLowerCase(Locale.ROOT);
+
+                if( header.startsWith("upgrade:") && header.contains("h2c") ) {
+                    upgrade = true;
+                }
+                else if( header.startsWith("content-length:") ) {
+                    contentLength = Long.parseLong(header.substring(15).trim());
+                }
+            }
+
+            skip(in, contentLength);
+
+            if( upgrade ) {
+                out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                serveHttp2(in, out, true);
+                return;
+            }
+
+            TimeUnit.MILLISECONDS.sleep(serverMillis);
+
+            String head = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * Serves HTTP/2 streams on a connection until it closes. An upgraded
+     * connection answers its upgrade request as stream 1
+     */
+    private void serveHttp2(InputStream in, OutputStream out, boolean upgraded) throws IOException {
+        DataInputStream frames = new DataInputStream(in);
+        byte[] preface = new byte[PREFACE.length];
+        frames.readFully(preface);
+
+        writeFrame(out, SETTINGS, 0, 0, new byte[0]);
+        if( upgraded ) {
+            respond(out, 1);
+        }
+
+        while( true ) {
+            int length = frames.readUnsignedShort() << 8 | frames.readUnsignedByte();
+            int type = frames.readUnsignedByte();
+            int flags = frames.readUnsignedByte();
+            int stream = frames.readInt() & 0x7FFFFFFF;
+
+            byte[] payload = new byte[length];
+            frames.readFully(payload);
+
+            if( type == SETTINGS && (flags & ACK) == 0 ) {
+                writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+            }
+            else if( type == PING && (flags & ACK) == 0 ) {
+                writeFrame(out, PING, ACK, 0, payload);
+            }
+            else if( type == DATA && length > 0 ) {
+                // Give back the flow control window the body used
+                writeFrame(out, WINDOW_UPDATE, 0, 0, int32(length));
+                writeFrame(out, WINDOW_UPDATE, 0, stream, int32(length));
+            }
+            else if( type == GOAWAY ) {
+                return;
+            }
+
+            if( (type == HEADERS || type == DATA) && (flags & END_STREAM) != 0 ) {
+                respond(out, stream);
+            }
+        }
+    }
+
+    /**
+     * Answers a stream once the server time has passed
+     */
+    private void respond(OutputStream out, int stream) {
+        responders.schedule(() -> {
+            ByteArrayOutputStream headers = new ByteArrayOutputStream();
+
+            // :status 200 (static table index 8)
+            headers.write(0x88);
+
+            // content-type (index 31) and content-length (index 28), as literals without indexing
+            literal(headers, 31, "application/json");
+            literal(headers, 28, Integer.toString(body.length));
+
+            try {
+                synchronized( out ) {
+                    writeFrame(out, HEADERS, END_HEADERS, stream, headers.toByteArray());
+                    writeFrame(out, DATA, END_STREAM, stream, body);
+                }
+            }
+            catch(IOException e) {
+                // The client went away
+            }
+        }, serverMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /* STATIC METHODS */
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload) throws IOException {
+        byte[] header = {
+            (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+            (byte) type, (byte) flags,
+            (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream
+        };
+
+        synchronized( out ) {
+            out.write(header);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static void literal(ByteArrayOutputStream out, int nameIndex, String value) {
+        // A 4-bit prefixed index: 15 and the rest in the next byte
+        out.write(0x0F);
+        out.write(nameIndex - 15);
+
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] int32(int value) {
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        int c;
+        while( (c = in.read()) != '\n' ) {
+            if( c < 0 ) {
+                if( line.length() == 0 ) {
+                    return null;
+                }
+                throw new EOFException();
+            }
+            if( c != '\r' ) {
+                line.append((char) c);
+            }
+        }
+
+        return line.toString();
+    }
+
+    private static void skip(InputStream in, long length) throws IOException {
+        while( length > 0 ) {
+            long skipped = in.skip(length);
+            if( skipped <= 0 ) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.io.Reader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import io.github.smyles96.eatstreet.util.http.ApacheHttpTransport;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequest;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.http.Http2Transport;
+import io.github.smyles96.eatstreet.util.http.HttpTransport;
+import io.github.smyles96.eatstreet.util.http.RequestInterceptor;
+import io.github.smyles96.eatstreet.util.http.TrafficClass;
+import io.github.smyles96.eatstreet.util.json.JsonStreamEntity;
+
+/**
+ * Compares the ApacheHttpTransport (HTTP/1.1, one connection per concurrent
+ * request) with the Http2Transport (HTTP/2, multiplexed) on fan-outs of
+ * concurrent menu requests against an {@link H2cStandIn}.
+ *
+ * Every fan-out sends the given number of requests at once and waits for all
+ * of their bodies to be read. A cold fan-out is the first one of a new
+ * transport, against a new stand-in, so it pays for opening its connections;
+ * warm fan-outs (GETs, then streamed POSTs) run after warm-up fan-outs on one
+ * transport. The median and 90th percentile fan-out times are printed, with
+ * the connections opened by a cold fan-out, and during the measured warm
+ * fan-outs.
+ *
+ * Arguments (all optional): fan-out, rounds, server time ms, connection setup ms.
+ * Requires Java 11 or newer to run, for java.net.http.
+ *
+ * @author smyles96
+ */
+public final class Http2TransportBench {
+
+    /* STATIC FIELDS */
+    private static final String MENU = "[{\"apiKey\":\"c1\",\"name\":\"Pizza\",\"items\":[{\"apiKey\":\"i1\",\"name\":\"Cheese\",\"basePrice\":9.5}]}]";
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private Http2TransportBench() {}
+
+    public static void main(String[] args) throws Exception {
+        int fanOut = (args.length > 0) ? Integer.parseInt(args[0]) : 32;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+        long serverMillis = (args.length > 2) ? Long.parseLong(args[2]) : 20;
+        long setupMillis = (args.length > 3) ? Long.parseLong(args[3]) : 30;
+
+        if( !Http2Transport.isSupported() ) {
+            System.out.println("java.net.http is not available; run on Java 11 or newer");
+            return;
+        }
+
+        Map<TrafficClass, Integer> permits = new EnumMap<>(TrafficClass.class);
+        permits.put(TrafficClass.BROWSE, fanOut);
+        permits.put(TrafficClass.ORDER, fanOut);
+
+        EatStreetRequestor.setAccessToken("bench");
+        ExecutorService callers = Executors.newFixedThreadPool(fanOut);
+
+        System.out.printf("fan-out %d, %d rounds, server time %dms, connection setup %dms%n",
+                          fanOut, rounds, serverMillis, setupMillis);
+        System.out.printf("%-10s %-10s %12s %12s %12s%n", "transport", "fan-out", "median ms", "p90 ms", "connections");
+
+        Map<String, Supplier<HttpTransport>> transports = new LinkedHashMap<>();
+        transports.put("HTTP/1.1", () -> new ApacheHttpTransport(permits));
+        transports.put("HTTP/2", () -> new Http2Transport(permits));
+
+        for(Map.Entry<String, Supplier<HttpTransport>> transport : transports.entrySet()) {
+            // Cold: the first fan-out of a new transport, which opens its connections
+            long[] times = new long[Math.max(1, rounds / 3)];
+            int connections = 0;
+
+            for(int i = 0; i < times.length; i++) {
+                try(H2cStandIn standIn = new H2cStandIn(MENU, serverMillis, setupMillis)) {
+                    EatStreetRequestor.setTransport(transport.getValue().get());
+                    RequestInterceptor toStandIn = toStandIn(standIn);
+
+                    long start = System.nanoTime();
+                    fanOut(callers, fanOut, false);
+                    times[i] = System.nanoTime() - start;
+
+                    connections += standIn.getConnectionCount();
+                    EatStreetRequestor.removeInterceptor(toStandIn);
+                }
+            }
+            print(transport.getKey(), "cold GET", times, connections / times.length);
+
+            // Warm: fan-outs on a transport whose connections are already open
+            try(H2cStandIn standIn = new H2cStandIn(MENU, serverMillis, setupMillis)) {
+                EatStreetRequestor.setTransport(transport.getValue().get());
+                RequestInterceptor toStandIn = toStandIn(standIn);
+
+                for(boolean post : new boolean[] { false, true }) {
+                    for(int i = 0; i < WARM_UP_ROUNDS; i++) {
+                        fanOut(callers, fanOut, post);
+                    }
+
+                    int opened = standIn.getConnectionCount();
+                    times = new long[rounds];
+                    for(int i = 0; i < rounds; i++) {
+                        long start = System.nanoTime();
+                        fanOut(callers, fanOut, post);
+                        times[i] = System.nanoTime() - start;
+                    }
+                    print(transport.getKey(), post ? "warm POST" : "warm GET", times, standIn.getConnectionCount() - opened);
+                }
+
+                System.out.printf("%-10s %-10s %12s %12s %12d%n", transport.getKey(), "(total)", "", "", standIn.getConnectionCount());
+                EatStreetRequestor.removeInterceptor(toStandIn);
+            }
+        }
+
+        System.exit(0);
+    }
+
+    private static RequestInterceptor toStandIn(H2cStandIn standIn) {
+        String local = "http://127.0.0.1:" + standIn.getPort();
+
+        RequestInterceptor interceptor = chain -> {
+            EatStreetRequest request = chain.getRequest();
+            request.setUri(URI.create(request.getUri().toString().replace("https://eatstreet.com", local)));
+            return chain.proceed(request);
+        };
+        EatStreetRequestor.addInterceptor(interceptor);
+
+        return interceptor;
+    }
+
+    private static void print(String transport, String kind, long[] times, int connections) {
+        Arrays.sort(times);
+        System.out.printf("%-10s %-10s %12.1f %12.1f %12d%n", transport, kind,
+                          times[times.length / 2] / 1e6, times[times.length * 9 / 10] / 1e6, connections);
+    }
+
+    private static void fanOut(ExecutorService callers, int fanOut, boolean post) throws Exception {
+        List<CompletableFuture<Void>> calls = new ArrayList<>(fanOut);
+
+        for(int i = 0; i < fanOut; i++) {
+            String restaurant = "restaurant-" + i;
+
+            calls.add(CompletableFuture.runAsync(() -> {
+                try(Reader body = post
+                        ? EatStreetRequestor.makePostRequest(ApiEndpoint.VALIDATE_ORDER, JsonStreamEntity.of(new String[] { restaurant }))
+                        : EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_MENU, null, restaurant)) {
+                    char[] buffer = new char[1024];
+                    while( body.read(buffer) >= 0 ) {
+                        // Read the whole response, as the menu parser would
+                    }
+                }
+                catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, callers));
+        }
+
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
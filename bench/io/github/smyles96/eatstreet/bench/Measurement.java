@@ -0,0 +1,121 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Times an operation and measures what it allocates, for the main-driven
+ * microbenchmarks.
+ *
+ * An operation is run for a number of warm-up rounds, so the JIT has
+ * compiled it, then for a number of measured rounds of a fixed number of
+ * iterations each. The median round is reported. Allocation is read from
+ * the running thread's allocated byte counter (a HotSpot extension of the
+ * ThreadMXBean), so it is exact for the operation's own thread and includes
+ * nothing allocated by other threads. Every result is kept reachable in a
+ * sink so the JIT cannot drop the work.
+ *
+ * @author smyles96
+ */
+final class Measurement {
+
+    /**
+     * An operation to measure
+     */
+    @FunctionalInterface
+    interface Operation {
+
+        /**
+         * Runs the operation once
+         *
+         * @return The operation's result, kept so its work is not optimized away
+         *
+         * @throws Exception If the operation fails
+         */
+        Object run() throws Exception;
+    }
+
+    /* STATIC FIELDS */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile Object sink;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final double nanosPerOp;
+    private final long bytesPerOp;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private Measurement(double nanosPerOp, long bytesPerOp) {
+        this.nanosPerOp = nanosPerOp;
+        this.bytesPerOp = bytesPerOp;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    double getMicrosPerOp() {
+        return nanosPerOp / 1e3;
+    }
+
+    double getMillisPerOp() {
+        return nanosPerOp / 1e6;
+    }
+
+    long getBytesPerOp() {
+        return bytesPerOp;
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Measures an operation
+     *
+     * @param operation The operation
+     * @param iterations The iterations of each round
+     * @param warmUpRounds The rounds run before measuring
+     * @param rounds The rounds measured
+     *
+     * @return The median time and allocation per iteration of the measured rounds
+     *
+     * @throws Exception If the operation fails
+     */
+    static Measurement of(Operation operation, int iterations, int warmUpRounds, int rounds) throws Exception {
+        for(int round = 0; round < warmUpRounds; round++) {
+            run(operation, iterations);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long[] nanos = new long[rounds];
+        long[] bytes = new long[rounds];
+
+        for(int round = 0; round < rounds; round++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+
+            run(operation, iterations);
+
+            nanos[round] = System.nanoTime() - start;
+            bytes[round] = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+
+        return new Measurement((double) nanos[rounds / 2] / iterations, bytes[rounds / 2] / iterations);
+    }
+
+    private static void run(Operation operation, int iterations) throws Exception {
+        for(int i = 0; i < iterations; i++) {
+            sink = operation.run();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.smyles96.eatstreet.bench;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.message.BasicNameValuePair;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.http.RequestUriBuilder;
+
+/**
+ * Compares building request URIs the way EatStreetRequestor did before
+ * endpoint templates (String.format over the endpoint path, then a new
+ * URIBuilder with the query parameters and access token) with an
+ * EndpointTemplate and RequestUriBuilder appending the cached, pre-encoded
+ * access token.
+ *
+ * Two requests are built: a restaurant search with two query parameters,
+ * and a menu with one url param in the path. Before measuring, both ways are
+ * checked to build the same URIs, including for a url param holding the
+ * path-safe characters URIBuilder leaves unescaped.
+ *
+ * Arguments (all optional): iterations per round, rounds.
+ *
+ * @author smyles96
+ */
+public final class UriBuildBench {
+
+    /* STATIC FIELDS */
+    private static final String ACCESS_TOKEN = "0123456789abcdef0123456789abcdef";
+    private static final String ENCODED_ACCESS_TOKEN = RequestUriBuilder.encodeQueryComponent(ACCESS_TOKEN);
+    private static final String RESTAURANT = "90fd4587554469b1f15b4f2e73e761809f4b4bcca52eedca";
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private UriBuildBench() {}
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        List<NameValuePair> searchParams = new ArrayList<>();
+        searchParams.add(new BasicNameValuePair("street-address", "316 W. Washington Ave. Madison, WI"));
+        searchParams.add(new BasicNameValuePair("method", "delivery"));
+
+        check(ApiEndpoint.RESTAURANT_SEARCH, searchParams);
+        check(ApiEndpoint.RESTAURANT_MENU, new ArrayList<>(), RESTAURANT);
+        check(ApiEndpoint.RESTAURANT_MENU, new ArrayList<>(), "a:b@c;d=e+f$g,h&i!j'k(l)m*n");
+
+        System.out.printf("%d iterations x %d rounds%n", iterations, rounds);
+        System.out.printf("%-20s %-12s %10s %10s%n", "request", "builder", "us/op", "B/op");
+
+        print("restaurant/search", "URIBuilder", Measurement.of(() -> oldUri(ApiEndpoint.RESTAURANT_SEARCH, searchParams),
+                                                                iterations, WARM_UP_ROUNDS, rounds));
+        print("restaurant/search", "template", Measurement.of(() -> newUri(ApiEndpoint.RESTAURANT_SEARCH, searchParams),
+                                                              iterations, WARM_UP_ROUNDS, rounds));
+        print("restaurant/%s/menu", "URIBuilder", Measurement.of(() -> oldUri(ApiEndpoint.RESTAURANT_MENU, null, RESTAURANT),
+                                                                 iterations, WARM_UP_ROUNDS, rounds));
+        print("restaurant/%s/menu", "template", Measurement.of(() -> newUri(ApiEndpoint.RESTAURANT_MENU, null, RESTAURANT),
+                                                               iterations, WARM_UP_ROUNDS, rounds));
+    }
+
+    private static void check(ApiEndpoint endpoint, List<NameValuePair> queryParams, String... urlParams) throws Exception {
+        URI before = oldUri(endpoint, new ArrayList<>(queryParams), urlParams);
+        URI after = newUri(endpoint, queryParams, urlParams);
+
+        if( !before.equals(after) ) {
+            throw new IllegalStateException("The URIs differ:\n\t" + before + "\n\t" + after);
+        }
+    }
+
+    private static void print(String request, String builder, Measurement measurement) {
+        System.out.printf("%-20s %-12s %10.2f %10d%n", request, builder, measurement.getMicrosPerOp(), measurement.getBytesPerOp());
+    }
+
+    /**
+     * Builds a request URI as EatStreetRequestor.makeGetRequest did before
+     * endpoint templates
+     */
+    private static URI oldUri(ApiEndpoint endpoint, List<NameValuePair> queryParams, String... urlParams) throws Exception {
+        if( queryParams == null ) {
+            queryParams = new ArrayList<>();
+        }
+        else {
+            queryParams = new ArrayList<>(queryParams);
+        }
+
+        queryParams.add(new BasicNameValuePair("access-token", ACCESS_TOKEN));
+
+        String endpointPath = String.format(endpoint.toString(), (Object[]) urlParams);
+
+        return new URIBuilder()
+               .setScheme("https")
+               .setHost(EatStreetRequestor.EAT_STREET_API_URL)
+               .setPath(endpointPath)
+               .setParameters(queryParams)
+               .build();
+    }
+
+    /**
+     * Builds a request URI as EatStreetRequestor.makeGetRequest does now
+     */
+    private static URI newUri(ApiEndpoint endpoint, List<NameValuePair> queryParams, String... urlParams) {
+        RequestUriBuilder uriBuilder = endpoint.getTemplate().newUri(urlParams);
+
+        if( queryParams != null ) {
+            for(NameValuePair param : queryParams) {
+                uriBuilder.addParameter(param.getName(), param.getValue());
+            }
+        }
+
+        return uriBuilder.addEncodedParameter("access-token", ENCODED_ACCESS_TOKEN).build();
+    }
+}
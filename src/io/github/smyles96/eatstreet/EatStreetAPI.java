@@ -1,11 +1,17 @@
 package io.github.smyles96.eatstreet;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
@@ -18,15 +24,22 @@ import io.github.smyles96.eatstreet.model.menu.CustomizationGroup;
 import io.github.smyles96.eatstreet.model.menu.MenuCategory;
 import io.github.smyles96.eatstreet.model.menu.MenuItem;
 import io.github.smyles96.eatstreet.model.order.Order;
+import io.github.smyles96.eatstreet.model.order.OrderHistory;
 import io.github.smyles96.eatstreet.model.order.OrderCustomizationChoice;
 import io.github.smyles96.eatstreet.model.order.OrderItem;
 import io.github.smyles96.eatstreet.model.order.OrderStatus;
 import io.github.smyles96.eatstreet.model.order.PaymentMethod;
 import io.github.smyles96.eatstreet.model.restaurant.OrderType;
+import io.github.smyles96.eatstreet.model.restaurant.MenuPrefetcher;
 import io.github.smyles96.eatstreet.model.restaurant.Restaurant;
 import io.github.smyles96.eatstreet.model.user.Address;
 import io.github.smyles96.eatstreet.model.user.CreditCard;
 import io.github.smyles96.eatstreet.model.user.User;
+import io.github.smyles96.eatstreet.util.cache.DiskStore;
+import io.github.smyles96.eatstreet.util.cache.LastKnownGood;
+import io.github.smyles96.eatstreet.util.cache.RefreshingCache;
+import io.github.smyles96.eatstreet.util.cache.StaleList;
+import io.github.smyles96.eatstreet.util.codec.ModelCodec;
 import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
 import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
 import io.github.smyles96.eatstreet.util.json.JsonConverter;
@@ -169,7 +182,27 @@ import io.github.smyles96.eatstreet.util.json.JsonConverter;
  */
 public class EatStreetAPI {
     
+    // Restaurant details shared by every EatStreetAPI object. Details are fresh
+    // for 30 minutes and served for up to 6 hours more while refreshed, for at
+    // most 1024 restaurants
+    private static final RefreshingCache<String, Restaurant> RESTAURANT_CACHE =
+        new RefreshingCache<>("restaurant", EatStreetAPI::fetchRestaurant, 30, 6 * 60, TimeUnit.MINUTES, 2, 1024);
+    
+    // The last results of each restaurant search, served if the EatStreet API fails
+    private static final LastKnownGood<String, Restaurant> SEARCH_FALLBACK = new LastKnownGood<>(ApiEndpoint.RESTAURANT_SEARCH, 256);
+    
+    // How long the cached user profile is used before it is re-fetched
+    private static volatile long userTtlNanos = TimeUnit.MINUTES.toNanos(10);
+    
+    // The current user's profile, kept up to date by the account methods.
+    // A cached User is never changed; each change swaps in a new one. The
+    // load in progress, if any, is shared by every caller waiting for it.
+    // Guarded by this object
     private User apiUser;
+    private String apiUserKey;
+    private long apiUserLoadedAt;
+    private CompletableFuture<User> apiUserLoad;
+    private String apiUserLoadKey;
     
     /**
      * Creates an object to access the EatStreet Public API.
@@ -209,6 +242,18 @@ public class EatStreetAPI {
      */
     public void setUserApiKey(String apiKey) {
         EatStreetRequestor.setUserApiKey(apiKey);
+        this.invalidateUser();
+    }
+    
+    /**
+     * Sets how long a user profile loaded by {@link #getUser()} is used before
+     * it is re-fetched from the EatStreet API. Defaults to 10 minutes
+     * 
+     * @param duration The time to use the profile for
+     * @param unit The unit of the duration
+     */
+    public static void setUserCacheTtl(long duration, TimeUnit unit) {
+        userTtlNanos = unit.toNanos(duration);
     }
     
     /**
@@ -295,10 +340,15 @@ public class EatStreetAPI {
         try(Reader response = EatStreetRequestor.makePostRequest(ApiEndpoint.UPDATE_USER, jsonParams, EatStreetRequestor.getUserApiKey())) {
             // Parse the response as a JSON object
             JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
-            JsonConverter.populate(json, User.class, apiUser);
             
             // Check if an API key was returned (indicating successful update)
-            return (json.get("apiKey") != null);
+            boolean updated = (json.get("apiKey") != null);
+            
+            if( updated ) {
+                this.cacheUser(json);
+            }
+            
+            return updated;
         }
         catch (IOException e) {
             throw new EatStreetApiException("Unable to close the HTTP response object");
@@ -308,26 +358,166 @@ public class EatStreetAPI {
     /**
      * Gets a user's info from the EatStreet API.
      * 
+     * The user is loaded once and then kept up to date by the other account
+     * methods of this object (adding or removing addresses and cards, updating
+     * the user), so those calls don't re-fetch it. The user is re-fetched once
+     * it is older than the cache TTL (see {@link #setUserCacheTtl(long, TimeUnit)}),
+     * after {@link #invalidateUser()}, or when the user api key changes.
+     * Concurrent callers share one fetch, and no lock is held while it runs.
+     * 
+     * The returned User is a snapshot: it is never changed by this object.
+     * Changes made through the account methods replace the cached User, so
+     * call this method again to see them
+     * 
      * @return A User object containing the user's information
      * 
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
     public User getUser() throws EatStreetApiException {
-        // Perform lazy loading
-        if( apiUser == null ) {
-            try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.GET_USER, null, EatStreetRequestor.getUserApiKey())) {
-                // Get the JSON object response
-                JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
-                
-                return JsonConverter.fromJson(json, User.class);
+        String userApiKey = EatStreetRequestor.getUserApiKey();
+        CompletableFuture<User> load;
+        boolean loading = false;
+        
+        synchronized( this ) {
+            if( apiUser != null && Objects.equals(userApiKey, apiUserKey) && System.nanoTime() - apiUserLoadedAt <= userTtlNanos ) {
+                return apiUser;
             }
-            catch(IOException e) {
-                throw new EatStreetApiException("Unable to close the HTTP response object");
+            
+            // Join the load in progress for the same user, or start one
+            if( apiUserLoad == null || !Objects.equals(userApiKey, apiUserLoadKey) ) {
+                apiUserLoad = new CompletableFuture<>();
+                apiUserLoadKey = userApiKey;
+                loading = true;
+            }
+            
+            load = apiUserLoad;
+        }
+        
+        if( loading ) {
+            this.loadUser(userApiKey, load);
+        }
+        
+        try {
+            return load.join();
+        }
+        catch(CompletionException e) {
+            if( e.getCause() instanceof EatStreetApiException ) {
+                throw (EatStreetApiException) e.getCause();
+            }
+            
+            throw e;
+        }
+    }
+    
+    /**
+     * Fetches a user from the EatStreet API and caches it, unless the cached
+     * user was invalidated or replaced while it was being fetched
+     */
+    private void loadUser(String userApiKey, CompletableFuture<User> load) {
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.GET_USER, null, userApiKey)) {
+            // Get the JSON object response
+            User user = JsonConverter.fromJson(JsonParser.parseReader(response).getAsJsonObject(), User.class);
+            
+            synchronized( this ) {
+                if( apiUserLoad == load ) {
+                    apiUser = user;
+                    apiUserKey = userApiKey;
+                    apiUserLoadedAt = System.nanoTime();
+                    apiUserLoad = null;
+                }
             }
+            
+            load.complete(user);
+        }
+        catch(IOException e) {
+            this.failUserLoad(load, new EatStreetApiException("Unable to close the HTTP response object"));
+        }
+        catch(EatStreetApiException | RuntimeException e) {
+            this.failUserLoad(load, e);
+        }
+    }
+    
+    private void failUserLoad(CompletableFuture<User> load, Exception failure) {
+        synchronized( this ) {
+            if( apiUserLoad == load ) {
+                apiUserLoad = null;
+            }
+        }
+        
+        load.completeExceptionally(failure);
+    }
+    
+    /**
+     * Discards the cached user, so the next call that needs it fetches it
+     * from the EatStreet API again
+     */
+    public synchronized void invalidateUser() {
+        apiUser = null;
+        apiUserKey = null;
+        apiUserLoad = null;
+    }
+    
+    /**
+     * Stores a user returned by the EatStreet API in place of the cached one.
+     * Fields missing from the response are kept from the cached user, if it
+     * is the same user
+     */
+    private void cacheUser(JsonObject json) {
+        String userApiKey = EatStreetRequestor.getUserApiKey();
+        User current;
+        
+        synchronized( this ) {
+            current = Objects.equals(userApiKey, apiUserKey) ? apiUser : null;
+        }
+        
+        User user = (current != null) ? copyOf(current) : JsonConverter.fromJson(json, User.class);
+        if( current != null ) {
+            JsonConverter.populate(json, User.class, user);
+        }
+        
+        this.replaceUser(current, user, userApiKey);
+    }
+    
+    /**
+     * Swaps in a changed copy of the cached user. If the cached user was
+     * replaced or invalidated meanwhile, neither change can be trusted to
+     * include the other, so the user is discarded and fetched again when
+     * next needed
+     */
+    private synchronized void replaceUser(User expected, User user, String userApiKey) {
+        if( apiUser == expected && (expected == null || Objects.equals(userApiKey, apiUserKey)) ) {
+            apiUser = user;
+            apiUserKey = userApiKey;
+            apiUserLoadedAt = System.nanoTime();
         }
         else {
-            return apiUser;
+            this.invalidateUser();
         }
+        
+        // A load that started before the change may not include it
+        apiUserLoad = null;
+    }
+    
+    /**
+     * Applies an account change to a copy of the current user, and swaps the
+     * copy in once the change succeeds. No lock is held during the change
+     */
+    private <T> T changeUser(UserChange<T> change) throws EatStreetApiException {
+        User current = this.getUser();
+        User user = copyOf(current);
+        
+        T result = change.apply(user);
+        this.replaceUser(current, user, EatStreetRequestor.getUserApiKey());
+        
+        return result;
+    }
+    
+    /**
+     * An account change made through a User
+     */
+    @FunctionalInterface
+    private interface UserChange<T> {
+        T apply(User user) throws EatStreetApiException;
     }
     
     /**
@@ -341,7 +531,7 @@ public class EatStreetAPI {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public Address addAddress(Address newAddress) throws EatStreetApiException {
-        return this.getUser().addAddress(newAddress);
+        return this.changeUser(user -> user.addAddress(newAddress));
     }
     
     /**
@@ -354,7 +544,7 @@ public class EatStreetAPI {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public boolean removeAddress(Address addressToRemove) throws EatStreetApiException {
-        return this.getUser().removeAddress(addressToRemove);
+        return this.changeUser(user -> user.removeAddress(addressToRemove));
     }
     
     /**
@@ -368,7 +558,7 @@ public class EatStreetAPI {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public CreditCard addCard(CreditCard cardToAdd) throws EatStreetApiException {
-        return this.getUser().addCard(cardToAdd);
+        return this.changeUser(user -> user.addCard(cardToAdd));
     }
     
     /**
@@ -381,7 +571,7 @@ public class EatStreetAPI {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public boolean removeCard(CreditCard cardToRemove) throws EatStreetApiException {
-        return this.getUser().removeCard(cardToRemove);
+        return this.changeUser(user -> user.removeCard(cardToRemove));
     }
     
     /**
@@ -395,6 +585,20 @@ public class EatStreetAPI {
         return this.getUser().getOrderHistory(true);
     }
     
+    /**
+     * Get the details of a restaurant. Details are cached and refreshed in the
+     * background once they expire (see {@link #getRestaurantCache()})
+     * 
+     * @param restaurantApiKey The api key of the restaurant
+     * 
+     * @return The restaurant
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs
+     */
+    public Restaurant getRestaurant(String restaurantApiKey) throws EatStreetApiException {
+        return RESTAURANT_CACHE.get(restaurantApiKey);
+    }
+    
     /**
      * Find nearby restaurants
      * 
@@ -403,7 +607,8 @@ public class EatStreetAPI {
      * @param radius The delivery radius (in miles)
      * @param extraSearchTerms Variable number of String arguments containing extra terms to filter restaurants by
      * 
-     * @return A list of restaurants matching the search criteria
+     * @return A list of restaurants matching the search criteria, or a {@link StaleList}
+     *         of the last results of the same search if the EatStreet API is failing
      * 
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
@@ -419,7 +624,8 @@ public class EatStreetAPI {
      * @param radius The delivery radius (in miles)
      * @param extraSearchTerms Variable number of String arguments containing extra terms to filter restaurants by
      * 
-     * @return A list of restaurants matching the search criteria
+     * @return A list of restaurants matching the search criteria, or a {@link StaleList}
+     *         of the last results of the same search if the EatStreet API is failing
      * 
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
@@ -436,18 +642,29 @@ public class EatStreetAPI {
         }
         
         // Attempt to parse the JSON from the response stream. This is wrapped in a try-with block
-        // to ensure that "response" is closed no matter if an exception arises or not
-        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_SEARCH, getParams)) {
-            // The JSON returned by the search restaurant end point contains the data for the restaurants
-            // within a nested JSON array with name "restaurants". Since the other data in the JSON is
-            // unneeded, the JSON is first manually parsed to get the array, then passed to GSON to
-            // parse the Restaurant objects
-            JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
-            return Arrays.asList(JsonConverter.fromJson(json.getAsJsonArray("restaurants"), Restaurant[].class));
-        }
-        catch(IOException e) {
-            throw new EatStreetApiException("Unable to close the HTTP response object");
+        // to ensure that "response" is closed no matter if an exception arises or not. If the
+        // EatStreet API is failing, the last results of the same search may be served instead
+        List<Restaurant> results = SEARCH_FALLBACK.fetch(getParams.toString(), () -> {
+            try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_SEARCH, getParams)) {
+                // The JSON returned by the search restaurant end point contains the data for the restaurants
+                // within a nested JSON array with name "restaurants". Since the other data in the JSON is
+                // unneeded, the JSON is first manually parsed to get the array, then passed to GSON to
+                // parse the Restaurant objects
+                JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
+                return Arrays.asList(JsonConverter.fromJson(json.getAsJsonArray("restaurants"), Restaurant[].class));
+            }
+            catch(IOException e) {
+                throw new EatStreetApiException("Unable to close the HTTP response object");
+            }
+        });
+        
+        // Warm the menu cache with the menus users are likely to open next
+        MenuPrefetcher prefetcher = MenuPrefetcher.getActive();
+        if( prefetcher != null ) {
+            prefetcher.searched(results);
         }
+        
+        return results;
     }
     
     /**
@@ -459,7 +676,8 @@ public class EatStreetAPI {
      * @param radius The delivery radius (in miles)
      * @param extraSearchTerms Variable number of String arguments containing extra terms to filter restaurants by
      * 
-     * @return A list of restaurants matching the search criteria
+     * @return A list of restaurants matching the search criteria, or a {@link StaleList}
+     *         of the last results of the same search if the EatStreet API is failing
      * 
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
@@ -477,17 +695,115 @@ public class EatStreetAPI {
         }
         
         // Attempt to parse the JSON from the response stream. This is wrapped in a try-with block
-        // to ensure that "response" is closed no matter if an exception arises or not
-        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_SEARCH, getParams)) {
-            // The JSON returned by the search restaurant end point contains the data for the restaurants
-            // within a nested JSON array with name "restaurants". Since the other data in the JSON is
-            // unneeded, the JSON is first manually parsed to get the array, then passed to GSON to
-            // parse the Restaurant objects
+        // to ensure that "response" is closed no matter if an exception arises or not. If the
+        // EatStreet API is failing, the last results of the same search may be served instead
+        List<Restaurant> results = SEARCH_FALLBACK.fetch(getParams.toString(), () -> {
+            try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_SEARCH, getParams)) {
+                // The JSON returned by the search restaurant end point contains the data for the restaurants
+                // within a nested JSON array with name "restaurants". Since the other data in the JSON is
+                // unneeded, the JSON is first manually parsed to get the array, then passed to GSON to
+                // parse the Restaurant objects
+                JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
+                return Arrays.asList(JsonConverter.fromJson(json.getAsJsonArray("restaurants"), Restaurant[].class));
+            }
+            catch(IOException e) {
+                throw new EatStreetApiException("Unable to close the response reader");
+            }
+        });
+        
+        // Warm the menu cache with the menus users are likely to open next
+        MenuPrefetcher prefetcher = MenuPrefetcher.getActive();
+        if( prefetcher != null ) {
+            prefetcher.searched(results);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Keeps restaurant menus, item customizations and details on local disk in addition to memory,
+     * so that a restarted process serves them without re-fetching them from
+     * the EatStreet API. Users' order histories are kept on disk as well (see
+     * {@link OrderHistory#enablePersistence(Path)}). Stored values are discarded once they are older than
+     * the caches' stale window. The stores are flushed and closed when the JVM
+     * shuts down.
+     * 
+     * @param directory The directory to keep the cache files in
+     * 
+     * @throws EatStreetApiException If the cache files could not be opened or created
+     */
+    public static synchronized void enablePersistentCache(Path directory) throws EatStreetApiException {
+        if( RESTAURANT_CACHE.getDiskStore() != null ) {
+            return;
+        }
+        
+        // Stores opened so far are closed again if a later one fails to open
+        List<Closeable> opened = new ArrayList<>();
+        
+        try {
+            DiskStore<List<MenuCategory>> menus = DiskStore.open(directory, "menus",
+                ModelCodec.listOf(MenuCategory.class), 70, TimeUnit.MINUTES);
+            opened.add(menus);
+            DiskStore<List<CustomizationGroup>> customizations = DiskStore.open(directory, "customizations",
+                ModelCodec.listOf(CustomizationGroup.class), 70, TimeUnit.MINUTES);
+            opened.add(customizations);
+            DiskStore<Restaurant> restaurants = DiskStore.open(directory, "restaurants",
+                ModelCodec.of(Restaurant.class), 6 * 60 + 30, TimeUnit.MINUTES);
+            opened.add(restaurants);
+            
+            OrderHistory.enablePersistence(directory);
+            opened.add(OrderHistory::closePersistence);
+            
+            Restaurant.getMenuCache().setDiskStore(menus);
+            MenuItem.getCustomizationCache().setDiskStore(customizations);
+            RESTAURANT_CACHE.setDiskStore(restaurants);
+            
+            // Records written since the last flush are recovered on the next start
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(opened), "eatstreet-cache-shutdown"));
+        }
+        catch(IOException e) {
+            closeQuietly(opened);
+            throw new EatStreetApiException(String.format("Unable to open the persistent cache in %s:\n\t%s", directory, e.getMessage()));
+        }
+    }
+    
+    private static void closeQuietly(List<Closeable> stores) {
+        for(Closeable store : stores) {
+            try {
+                store.close();
+            }
+            catch(IOException e) {
+                // The other stores are still closed
+            }
+        }
+    }
+    
+    /**
+     * Copies a user, with copies of its saved addresses and cards
+     */
+    private static User copyOf(User user) {
+        return JsonConverter.fromJson(JsonConverter.toJsonObject(user), User.class);
+    }
+    
+    /**
+     * Gets the cache of restaurant details used by {@link #getRestaurant(String)}
+     * 
+     * @return The restaurant cache, keyed by restaurant api key
+     */
+    public static RefreshingCache<String, Restaurant> getRestaurantCache() {
+        return RESTAURANT_CACHE;
+    }
+    
+    private static Restaurant fetchRestaurant(String restaurantApiKey) throws EatStreetApiException {
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_DETAILS, null, restaurantApiKey)) {
+            // The restaurant's details are nested within a JSON object with name "restaurant"
             JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
-            return Arrays.asList(JsonConverter.fromJson(json.getAsJsonArray("restaurants"), Restaurant[].class));
+            JsonObject restaurant = json.has("restaurant") ? json.getAsJsonObject("restaurant") : json;
+            
+            return JsonConverter.fromJson(restaurant, Restaurant.class);
         }
         catch(IOException e) {
-            throw new EatStreetApiException("Unable to close the response reader");
+            throw new EatStreetApiException("Unable to close the HTTP response object");
         }
     }
 }
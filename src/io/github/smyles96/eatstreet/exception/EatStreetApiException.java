@@ -1,15 +1,292 @@
 package io.github.smyles96.eatstreet.exception;
 
+import java.io.InterruptedIOException;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+
+/**
+ * The exception thrown when a request to the EatStreet API fails.
+ *
+ * Besides its message, an exception carries the kind of failure, the
+ * endpoint that was requested, the HTTP status and EatStreet error code
+ * returned by the server (if any) and whether retrying the request may
+ * succeed, so callers can branch on a failure without matching its message:
+ * <pre>{@code
+ * catch(EatStreetApiException e) {
+ *     if( e.isRetryable() ) { ... }
+ *     else if( e.getKind() == EatStreetApiException.Kind.CLIENT_ERROR ) { ... }
+ * }
+ * }</pre>
+ *
+ * The message is only formatted when it is first read. Known upstream
+ * failures (error responses, expired deadlines, exhausted capacity) can
+ * also be created without a stack trace (see {@link #setStacklessKnownErrors(boolean)}),
+ * which keeps a storm of them cheap when the server is struggling.
+ */
 public class EatStreetApiException extends Exception {
-    
+
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The kinds of failure a request can end with
+     */
+    public enum Kind {
+        // Any failure not covered below
+        GENERAL,
+
+        // The server answered with a 4xx status, or the client refused to
+        // send a request the server would reject
+        CLIENT_ERROR,
+
+        // The server answered with any other status besides 200
+        SERVER_ERROR,
+
+        // The server's response had no body
+        EMPTY_RESPONSE,
+
+        // The request's deadline expired before it could be completed
+        DEADLINE_EXCEEDED,
+
+        // No connection or dispatch slot became available in time
+        NO_CAPACITY,
+
+        // Connecting or reading the response timed out
+        TIMEOUT,
+
+        // Any other IO failure while sending the request
+        IO_ERROR,
+
+        // The request may or may not have been completed, and only the
+        // server can tell which
+        IN_DOUBT
+    }
+
+    /**
+     * The error code used when the server did not return one
+     */
+    public static final int NO_ERROR_CODE = -1;
+
+    /* STATIC FIELDS */
+    private static volatile boolean stacklessKnownErrors = false;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Kind kind;
+    private final ApiEndpoint endpoint;
+    private final int httpStatus;
+    private final int errorCode;
+    private final String serverMessage;
+    private final boolean retryable;
+
+    // The message is formatted from these on first use
+    private final String messageFormat;
+    private final Object[] messageArgs;
+    private transient String message;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
     /**
      * Create a new EatStreetApiException object with a specified error message
      * @param message The error message
      */
     public EatStreetApiException(String message) {
-        super(message);
+        this(Kind.GENERAL, null, 0, NO_ERROR_CODE, null, false, null, true, message);
+    }
+
+    /**
+     * Create a new EatStreetApiException object describing a failed request
+     *
+     * @param kind The kind of failure
+     * @param endpoint The endpoint that was requested (may be null)
+     * @param httpStatus The HTTP status returned by the server, or 0 if there was no response
+     * @param errorCode The EatStreet error code returned by the server, or {@link #NO_ERROR_CODE}
+     * @param serverMessage The error message returned by the server (may be null)
+     * @param retryable Whether retrying the request may succeed
+     * @param cause The failure that caused this one (may be null)
+     * @param writableStackTrace Whether the stack trace is captured; known failures
+     *                           that are handled by branching on their kind don't need one
+     * @param messageFormat The format of the error message
+     * @param messageArgs The arguments of the message format, formatted only when the message is read
+     */
+    protected EatStreetApiException(Kind kind, ApiEndpoint endpoint, int httpStatus, int errorCode, String serverMessage,
+                                    boolean retryable, Throwable cause, boolean writableStackTrace, String messageFormat, Object... messageArgs) {
+        super(null, cause, true, writableStackTrace);
+
+        this.kind = kind;
+        this.endpoint = endpoint;
+        this.httpStatus = httpStatus;
+        this.errorCode = errorCode;
+        this.serverMessage = serverMessage;
+        this.retryable = retryable;
+        this.messageFormat = messageFormat;
+        this.messageArgs = messageArgs;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public ApiEndpoint getEndpoint() {
+        return this.endpoint;
+    }
+
+    public int getHttpStatus() {
+        return this.httpStatus;
+    }
+
+    public int getErrorCode() {
+        return this.errorCode;
+    }
+
+    public String getServerMessage() {
+        return this.serverMessage;
+    }
+
+    public boolean isRetryable() {
+        return this.retryable;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public String getMessage() {
+        if( message == null && messageFormat != null ) {
+            message = (messageArgs == null || messageArgs.length == 0)
+                      ? messageFormat
+                      : String.format(messageFormat, messageArgs);
+        }
+
+        return message;
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Sets whether known upstream failures (error responses, expired deadlines
+     * and exhausted capacity) are created without a stack trace. Off by default
+     *
+     * @param stackless true to skip capturing stack traces for known failures
+     */
+    public static void setStacklessKnownErrors(boolean stackless) {
+        stacklessKnownErrors = stackless;
+    }
+
+    /**
+     * Creates the exception for an error response from the server
+     *
+     * @param endpoint The endpoint that was requested
+     * @param httpStatus The HTTP status of the response
+     * @param errorCode The EatStreet error code in the response body, or {@link #NO_ERROR_CODE}
+     * @param serverMessage The error message in the response body (may be null)
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException errorResponse(ApiEndpoint endpoint, int httpStatus, int errorCode, String serverMessage) {
+        boolean clientError = httpStatus >= 400 && httpStatus <= 499;
+
+        // Server side failures and rate limiting are usually transient
+        boolean retryable = httpStatus >= 500 || httpStatus == 429;
+
+        if( errorCode != NO_ERROR_CODE ) {
+            return new EatStreetApiException(clientError ? Kind.CLIENT_ERROR : Kind.SERVER_ERROR, endpoint, httpStatus, errorCode,
+                serverMessage, retryable, null, !stacklessKnownErrors,
+                "Received error code [%d] from the EatStreet server.\nServer error message: [%s]", errorCode, serverMessage);
+        }
+
+        return new EatStreetApiException(clientError ? Kind.CLIENT_ERROR : Kind.SERVER_ERROR, endpoint, httpStatus, errorCode,
+            serverMessage, retryable, null, !stacklessKnownErrors, "Receieved error code [%d]", httpStatus);
+    }
+
+    /**
+     * Creates the exception for a request the client refuses to send because
+     * the server would reject it, or be misled by it
+     *
+     * @param endpoint The endpoint that would have been requested
+     * @param reason Why the request was refused
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException clientError(ApiEndpoint endpoint, String reason) {
+        return new EatStreetApiException(Kind.CLIENT_ERROR, endpoint, 0, NO_ERROR_CODE, null, false, null, true,
+            "The request was refused before it was sent:\n\t%s", reason);
+    }
+
+    /**
+     * Creates the exception for a response without a body
+     *
+     * @param endpoint The endpoint that was requested
+     * @param httpStatus The HTTP status of the response
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException emptyResponse(ApiEndpoint endpoint, int httpStatus) {
+        return new EatStreetApiException(Kind.EMPTY_RESPONSE, endpoint, httpStatus, NO_ERROR_CODE, null, false, null, true,
+            "The server response did not contain any JSON data to parse");
+    }
+
+    /**
+     * Creates the exception for a request whose deadline expired before it could be completed
+     *
+     * @param endpoint The endpoint that was requested
+     * @param request A description of the request
+     * @param remainingMillis The time that was left before the deadline
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException deadlineExceeded(ApiEndpoint endpoint, String request, long remainingMillis) {
+        return new EatStreetApiException(Kind.DEADLINE_EXCEEDED, endpoint, 0, NO_ERROR_CODE, null, false, null, !stacklessKnownErrors,
+            "The deadline for the %s request expired or is too close to complete it (%dms remaining)", request, remainingMillis);
+    }
+
+    /**
+     * Creates the exception for a request that found no capacity to be sent with
+     *
+     * @param endpoint The endpoint that was requested
+     * @param method The request method
+     * @param reason Why no capacity was available
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException noCapacity(ApiEndpoint endpoint, Object method, String reason) {
+        return new EatStreetApiException(Kind.NO_CAPACITY, endpoint, 0, NO_ERROR_CODE, null, true, null, !stacklessKnownErrors,
+            "An IO error occurred when making the %s request:\n\t%s", method, reason);
+    }
+
+    /**
+     * Creates the exception for a request that may or may not have been completed
+     *
+     * @param endpoint The endpoint that was requested
+     * @param reason Why the outcome is unknown
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException inDoubt(ApiEndpoint endpoint, String reason) {
+        return new EatStreetApiException(Kind.IN_DOUBT, endpoint, 0, NO_ERROR_CODE, null, false, null, true,
+            "The outcome of the request is unknown:\n\t%s", reason);
+    }
+
+    /**
+     * Creates the exception for an IO failure while sending a request or reading its response
+     *
+     * @param endpoint The endpoint that was requested
+     * @param method The request method
+     * @param cause The IO failure
+     *
+     * @return The exception
+     */
+    public static EatStreetApiException ioError(ApiEndpoint endpoint, Object method, Exception cause) {
+        // Socket and connect timeouts are interrupted IO
+        Kind kind = (cause instanceof InterruptedIOException) ? Kind.TIMEOUT : Kind.IO_ERROR;
+
+        return new EatStreetApiException(kind, endpoint, 0, NO_ERROR_CODE, null, true, cause, true,
+            "An IO error occurred when making the %s request:\n\t%s", method, cause.getMessage());
     }
-    
 }
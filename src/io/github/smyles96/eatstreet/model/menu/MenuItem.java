@@ -1,9 +1,21 @@
 package io.github.smyles96.eatstreet.model.menu;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
 import io.github.smyles96.eatstreet.model.EatStreetModel;
 import io.github.smyles96.eatstreet.model.restaurant.Restaurant;
+import io.github.smyles96.eatstreet.util.cache.RefreshingCache;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.json.JsonConverter;
 
 /**
  * This model class represents an item on a restaurant's menu.
@@ -24,6 +36,13 @@ public class MenuItem extends EatStreetModel implements Serializable {
     
     private static final long serialVersionUID = 1L;
     
+    /* STATIC FIELDS */
+    
+    // Customizations of items loaded on demand, shared by all MenuItem objects.
+    // They are kept as long as menus are, for at most 4096 items
+    private static final RefreshingCache<String, List<CustomizationGroup>> CUSTOMIZATION_CACHE =
+        new RefreshingCache<>("customizations", MenuItem::fetchCustomizationGroups, 10, 60, TimeUnit.MINUTES, 2, 4096);
+    
     /*
      * INSTANCE VARIABLES
      */
@@ -70,6 +89,14 @@ public class MenuItem extends EatStreetModel implements Serializable {
         this.basePrice = basePrice;
     }
 
+    /**
+     * Gets the customization groups of the item as included in its menu. They
+     * are null if the menu was loaded without customizations (see
+     * {@link Restaurant#setLazyCustomizations(boolean)}); use
+     * {@link #loadCustomizationGroups()} to get them either way
+     * 
+     * @return The customization groups, or null if they weren't loaded
+     */
     public List<CustomizationGroup> getCustomizationGroups() {
         return customizationGroups;
     }
@@ -82,6 +109,23 @@ public class MenuItem extends EatStreetModel implements Serializable {
      * INSTANCE METHODS
      */
     
+    /**
+     * Gets the customization groups of the item, loading them from the
+     * EatStreet API if its menu was loaded without them. Loaded customizations
+     * are cached and shared by every MenuItem object with the same api key
+     * 
+     * @return The customization groups
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs
+     */
+    public List<CustomizationGroup> loadCustomizationGroups() throws EatStreetApiException {
+        if( customizationGroups != null ) {
+            return customizationGroups;
+        }
+        
+        return CUSTOMIZATION_CACHE.get(this.getApiKey());
+    }
+    
     /**
      * Return a String representation of the MenuItem. The format is:
      *     "[Base Price] [Item Name] (Item API Key)"
@@ -120,4 +164,35 @@ public class MenuItem extends EatStreetModel implements Serializable {
         
         return false;
     }
+    
+    /* STATIC METHODS */
+    
+    /**
+     * Gets the cache of item customizations used by {@link #loadCustomizationGroups()}
+     * 
+     * @return The customization cache, keyed by menu item api key
+     */
+    public static RefreshingCache<String, List<CustomizationGroup>> getCustomizationCache() {
+        return CUSTOMIZATION_CACHE;
+    }
+    
+    /**
+     * Retrieves the customization groups of a menu item from the EatStreet API
+     * 
+     * @param menuItemApiKey The api key of the menu item
+     * 
+     * @return The customization groups, read-only as they are shared between callers
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs
+     */
+    private static List<CustomizationGroup> fetchCustomizationGroups(String menuItemApiKey) throws EatStreetApiException {
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.CUSTOMIZATIONS, null, menuItemApiKey)) {
+            JsonArray json = JsonParser.parseReader(response).getAsJsonArray();
+            
+            return Collections.unmodifiableList(Arrays.asList(JsonConverter.fromJson(json, CustomizationGroup[].class)));
+        }
+        catch (IOException e) {
+            throw new EatStreetApiException("Unable to close the HTTP response object");
+        }
+    }
 }
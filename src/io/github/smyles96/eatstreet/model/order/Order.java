@@ -310,6 +310,16 @@ public class Order extends EatStreetModel implements Serializable {
     public void setTotal(Double total) {
         this.total = total;
     }
+    
+    /**
+     * Gets the total recorded for the order by the EatStreet API, without
+     * recalculating it from the order's items
+     * 
+     * @return The recorded total, or null if none was recorded
+     */
+    Double getRecordedTotal() {
+        return total;
+    }
 
     public List<OrderItem> getItems() {
         return items;
@@ -356,7 +366,20 @@ public class Order extends EatStreetModel implements Serializable {
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
     public List<OrderStatus> getOrderStatus() throws EatStreetApiException {
-        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.ORDER_STATUS, null, this.getApiKey())) {
+        return fetchOrderStatus(this.getApiKey());
+    }
+    
+    /**
+     * Get the statuses of an order by its api key
+     * 
+     * @param orderApiKey The api key of the order
+     * 
+     * @return The statuses of the order
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs
+     */
+    static List<OrderStatus> fetchOrderStatus(String orderApiKey) throws EatStreetApiException {
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.ORDER_STATUS, null, orderApiKey)) {
             // Parse the response as a JSON object
             JsonArray json = JsonParser.parseReader(response).getAsJsonArray();
             
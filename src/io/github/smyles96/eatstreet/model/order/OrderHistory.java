@@ -0,0 +1,715 @@
+package io.github.smyles96.eatstreet.model.order;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.model.user.CreditCard;
+import io.github.smyles96.eatstreet.util.cache.DiskStore;
+import io.github.smyles96.eatstreet.util.codec.ModelCodec;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.json.JsonConverter;
+
+/**
+ * A user's order history, kept locally and synced incrementally with the
+ * EatStreet API.
+ *
+ * Each sync streams the user's ORDER_HISTORY response one order at a time and
+ * fingerprints each order's JSON with a SHA-256 digest. Only orders that are new or whose JSON
+ * changed since the last sync are converted to Order objects and stored;
+ * unchanged orders are skipped after being read. Orders are keyed by their api
+ * key and listed newest first by datePlaced.
+ *
+ * The history is read through a lazily loaded view: orders are loaded a page
+ * at a time as they are accessed, and only a few pages are held in memory.
+ * When persistence is enabled (see {@link #enablePersistence(Path)}) orders
+ * are kept on disk and survive restarts, so a frequent customer's history is
+ * never held in memory in full. Without persistence, only the newest 500
+ * orders of each user are kept, in their compact binary form, and the
+ * history lists only those. Card details other than the card's nickname and
+ * last four digits are never stored.
+ *
+ * A view keeps listing the orders of its sync: an order a later sync no
+ * longer returns is only dropped from storage once no view lists it. An order
+ * that can't be read back from disk is listed with only its api key and
+ * datePlaced, and is stored again by the next sync.
+ *
+ * Paging through a user's history:
+ * <pre>{@code
+ * OrderHistory history = OrderHistory.forUser(api.getUserApiKey());
+ * history.sync();
+ *
+ * List<Order> firstPage = history.getPage(0, 20);
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public final class OrderHistory {
+
+    /**
+     * The ordered keys of a user's orders, with the date and JSON fingerprint
+     * of each. Never modified once created
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new String[0], new int[0], new long[0]);
+
+        final String[] keys;
+        final int[] dates;
+        final long[] fingerprints;
+        private volatile Set<String> keySet;
+
+        Snapshot(String[] keys, int[] dates, long[] fingerprints) {
+            this.keys = keys;
+            this.dates = dates;
+            this.fingerprints = fingerprints;
+        }
+
+        Set<String> keySet() {
+            Set<String> set = keySet;
+            if( set == null ) {
+                set = new HashSet<>(Arrays.asList(keys));
+                keySet = set;
+            }
+            return set;
+        }
+
+        Map<String, Long> fingerprintsByKey() {
+            Map<String, Long> byKey = new HashMap<>(keys.length * 2);
+            for(int i = 0; i < keys.length; i++) {
+                byKey.put(keys[i], fingerprints[i]);
+            }
+            return byKey;
+        }
+    }
+
+    /**
+     * Stores snapshots as a count followed by (date, fingerprint, key) entries
+     */
+    private static final class SnapshotCodec implements DiskStore.Codec<Snapshot> {
+        @Override
+        public int getSchemaVersion() {
+            return 2;
+        }
+
+        @Override
+        public byte[] encode(Snapshot snapshot) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + snapshot.keys.length * 28);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(snapshot.keys.length);
+            for(int i = 0; i < snapshot.keys.length; i++) {
+                out.writeInt(snapshot.dates[i]);
+                out.writeLong(snapshot.fingerprints[i]);
+                out.writeUTF(snapshot.keys[i]);
+            }
+
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Snapshot decode(ByteBuffer buffer) throws IOException {
+            try {
+                int count = buffer.getInt();
+                if( count < 0 || count > buffer.remaining() / 14 ) {
+                    throw new IOException("Invalid order history count: " + count);
+                }
+
+                String[] keys = new String[count];
+                int[] dates = new int[count];
+                long[] fingerprints = new long[count];
+
+                for(int i = 0; i < count; i++) {
+                    dates[i] = buffer.getInt();
+                    fingerprints[i] = buffer.getLong();
+
+                    byte[] key = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(key);
+                    keys[i] = new String(key, StandardCharsets.UTF_8);
+                }
+
+                return new Snapshot(keys, dates, fingerprints);
+            }
+            catch(RuntimeException e) {
+                throw new IOException("Invalid stored order history", e);
+            }
+        }
+    }
+
+    /**
+     * A read-only list of the orders of one snapshot, loaded a page at a time
+     */
+    private final class View extends AbstractList<Order> implements RandomAccess {
+        private final Snapshot snapshot;
+        private final Map<Integer, Order[]> pages = new LinkedHashMap<Integer, Order[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Order[]> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+
+        View(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Order get(int index) {
+            if( index < 0 || index >= snapshot.keys.length ) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + snapshot.keys.length);
+            }
+
+            int page = index / PAGE_SIZE;
+            Order[] orders;
+
+            synchronized( pages ) {
+                orders = pages.get(page);
+            }
+
+            if( orders == null ) {
+                int from = page * PAGE_SIZE;
+                int to = Math.min(from + PAGE_SIZE, snapshot.keys.length);
+
+                orders = new Order[to - from];
+                for(int i = from; i < to; i++) {
+                    orders[i - from] = load(snapshot.keys[i], snapshot.dates[i]);
+                }
+
+                synchronized( pages ) {
+                    pages.put(page, orders);
+                }
+            }
+
+            return orders[index % PAGE_SIZE];
+        }
+
+        @Override
+        public int size() {
+            return snapshot.keys.length;
+        }
+    }
+
+    /**
+     * A snapshot replaced by a sync, which views may still list, and the keys
+     * it listed that the sync dropped
+     */
+    private static final class Retired {
+        final WeakReference<Snapshot> snapshot;
+        final Set<String> dropped;
+
+        Retired(Snapshot snapshot, Set<String> dropped) {
+            this.snapshot = new WeakReference<>(snapshot);
+            this.dropped = dropped;
+        }
+    }
+
+    /* STATIC FIELDS */
+
+    // Orders loaded and kept together by a view, and the pages a view keeps
+    private static final int PAGE_SIZE = 25;
+    private static final int CACHED_PAGES = 4;
+
+    // Orders rarely change once placed, so stored histories are kept for a year
+    private static final long STORE_TTL_DAYS = 365;
+
+    // The newest orders of each user kept when persistence is off
+    private static final int MAX_MEMORY_ORDERS = 500;
+    private static final ModelCodec<Order> ORDER_CODEC = ModelCodec.of(Order.class);
+
+    // The histories handed out, least recently used first. Guarded by OrderHistory.class
+    private static final int MAX_HISTORIES = 256;
+    private static final Map<String, OrderHistory> HISTORIES = new LinkedHashMap<String, OrderHistory>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrderHistory> eldest) {
+            return size() > MAX_HISTORIES;
+        }
+    };
+
+    // Orders of every user, keyed by "user api key:order api key", and each
+    // user's snapshot, keyed by user api key. Null unless persistence is enabled
+    private static DiskStore<Order> orderStore;
+    private static DiskStore<Snapshot> snapshotStore;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final String userApiKey;
+    private final DiskStore<Order> orders;
+    private final DiskStore<Snapshot> snapshots;
+    private final Map<String, byte[]> memory = new ConcurrentHashMap<>();
+    private final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot snapshot;
+
+    // Guarded by this
+    private final List<Retired> retired = new ArrayList<>();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private OrderHistory(String userApiKey, DiskStore<Order> orders, DiskStore<Snapshot> snapshots) {
+        this.userApiKey = userApiKey;
+        this.orders = orders;
+        this.snapshots = snapshots;
+
+        Snapshot stored = null;
+        if( snapshots != null ) {
+            try {
+                stored = snapshots.get(userApiKey);
+            }
+            catch(IOException e) {
+                // An unreadable snapshot is rebuilt by the next sync
+            }
+        }
+
+        this.snapshot = (stored != null) ? stored : Snapshot.EMPTY;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public String getUserApiKey() {
+        return userApiKey;
+    }
+
+    /**
+     * Gets the number of orders in the history as of the last sync
+     *
+     * @return The number of orders
+     */
+    public int size() {
+        return snapshot.keys.length;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets the orders of the history as of the last sync, newest first. The
+     * list is read-only and loads its orders as they are accessed; later syncs
+     * don't change which orders it lists
+     *
+     * @return The orders
+     */
+    public List<Order> getOrders() {
+        return new View(snapshot);
+    }
+
+    /**
+     * Gets one page of the history as of the last sync, newest first
+     *
+     * @param page The index of the page, starting from 0
+     * @param pageSize The number of orders in a page
+     *
+     * @return The orders of the page, which is empty past the end of the history
+     */
+    public List<Order> getPage(int page, int pageSize) {
+        if( page < 0 || pageSize < 1 ) {
+            throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+        }
+
+        Snapshot current = snapshot;
+        long from = (long) page * pageSize;
+        if( from >= current.keys.length ) {
+            return Collections.emptyList();
+        }
+
+        int to = (int) Math.min(from + pageSize, current.keys.length);
+        List<Order> result = new ArrayList<>(to - (int) from);
+        for(int i = (int) from; i < to; i++) {
+            result.add(load(current.keys[i], current.dates[i]));
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Syncs the history with the EatStreet API, storing only the orders that
+     * are new or changed since the last sync and dropping orders that are no
+     * longer returned once no view lists them
+     *
+     * @return The synced orders, as by {@link #getOrders()}
+     *
+     * @throws EatStreetApiException If the request is unable to be made or was corrupted
+     */
+    public synchronized List<Order> sync() throws EatStreetApiException {
+        Snapshot previousSnapshot = snapshot;
+        Map<String, Long> known = previousSnapshot.fingerprintsByKey();
+
+        List<String> keys = new ArrayList<>(known.size() + 8);
+        List<Integer> dates = new ArrayList<>(known.size() + 8);
+        List<Long> fingerprints = new ArrayList<>(known.size() + 8);
+        MessageDigest digest = sha256();
+
+        // Without persistence, changed orders wait as JSON until it is known
+        // which of them are among the newest kept
+        Map<String, String> staged = new HashMap<>();
+
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.ORDER_HISTORY, null, userApiKey)) {
+            JsonReader json = new JsonReader(response);
+            json.beginArray();
+
+            while( json.hasNext() ) {
+                JsonElement element = JsonParser.parseReader(json);
+                if( !element.isJsonObject() ) {
+                    continue;
+                }
+
+                JsonObject order = element.getAsJsonObject();
+                String key = keyOf(order);
+                if( key == null ) {
+                    continue;
+                }
+
+                String orderJson = order.toString();
+                long fingerprint = fingerprint(digest, orderJson);
+                Long previous = known.get(key);
+
+                if( previous == null || previous != fingerprint || !isStored(key) ) {
+                    if( orders != null ) {
+                        store(key, JsonConverter.fromJson(order, Order.class));
+                    }
+                    else {
+                        staged.put(key, orderJson);
+                    }
+                }
+
+                JsonElement datePlaced = order.get("datePlaced");
+                keys.add(key);
+                dates.add((datePlaced == null || datePlaced.isJsonNull()) ? 0 : datePlaced.getAsInt());
+                fingerprints.add(fingerprint);
+            }
+
+            json.endArray();
+        }
+        catch(IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new EatStreetApiException("Unable to read the order history:\n\t" + e.getMessage());
+        }
+
+        Snapshot synced = sort(keys, dates, fingerprints);
+        if( orders == null ) {
+            synced = newest(synced, MAX_MEMORY_ORDERS);
+
+            for(String key : synced.keys) {
+                String orderJson = staged.get(key);
+                if( orderJson != null ) {
+                    store(key, JsonConverter.GSON.fromJson(orderJson, Order.class));
+                }
+            }
+        }
+
+        if( snapshots != null ) {
+            try {
+                snapshots.put(userApiKey, synced);
+            }
+            catch(IOException e) {
+                throw new EatStreetApiException("Unable to store the order history:\n\t" + e.getMessage());
+            }
+        }
+
+        // Orders the sync dropped are discarded once no view lists them
+        Set<String> dropped = new HashSet<>(known.keySet());
+        dropped.removeAll(synced.keySet());
+        if( !dropped.isEmpty() ) {
+            retired.add(new Retired(previousSnapshot, dropped));
+        }
+
+        snapshot = synced;
+        discardUnlisted();
+
+        return new View(synced);
+    }
+
+    /**
+     * Discards the dropped orders of snapshots no view lists any more, unless
+     * the current snapshot or another live one still lists them
+     */
+    private void discardUnlisted() {
+        List<Snapshot> live = new ArrayList<>();
+        live.add(snapshot);
+        for(Retired entry : retired) {
+            Snapshot listed = entry.snapshot.get();
+            if( listed != null ) {
+                live.add(listed);
+            }
+        }
+
+        for(Iterator<Retired> it = retired.iterator(); it.hasNext();) {
+            Retired entry = it.next();
+            if( entry.snapshot.get() != null ) {
+                continue;
+            }
+
+            for(String key : entry.dropped) {
+                if( live.stream().noneMatch(listed -> listed.keySet().contains(key)) ) {
+                    discard(key);
+                }
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Loads an order listed by a snapshot. An order that can't be read is
+     * listed with only its key and date, and stored again by the next sync
+     */
+    private Order load(String key, int datePlaced) {
+        try {
+            Order order;
+            if( orders == null ) {
+                byte[] encoded = memory.get(key);
+                order = (encoded == null) ? null : ORDER_CODEC.decode(ByteBuffer.wrap(encoded));
+            }
+            else {
+                order = orders.get(storeKey(key));
+            }
+
+            if( order != null ) {
+                return order;
+            }
+        }
+        catch(IOException e) {
+            // Listed without its details below
+        }
+
+        unreadable.add(key);
+
+        Order placeholder = new Order();
+        placeholder.setApiKey(key);
+        placeholder.setDatePlaced(datePlaced);
+        return placeholder;
+    }
+
+    private boolean isStored(String key) {
+        if( unreadable.contains(key) ) {
+            return false;
+        }
+
+        return (orders == null) ? memory.containsKey(key) : orders.getStoredAt(storeKey(key)) >= 0;
+    }
+
+    private void store(String key, Order order) throws EatStreetApiException {
+        order.setCard(withoutSecrets(order.getCard()));
+
+        try {
+            if( orders == null ) {
+                memory.put(key, ORDER_CODEC.encode(order));
+            }
+            else {
+                orders.put(storeKey(key), order);
+            }
+        }
+        catch(IOException e) {
+            throw new EatStreetApiException("Unable to store the order history:\n\t" + e.getMessage());
+        }
+
+        unreadable.remove(key);
+    }
+
+    private void discard(String key) {
+        if( orders == null ) {
+            memory.remove(key);
+        }
+        else {
+            orders.remove(storeKey(key));
+        }
+    }
+
+    private String storeKey(String key) {
+        return userApiKey + ':' + key;
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Gets the local order history of a user, creating it if needed. The
+     * histories of the 256 most recently used users are kept; an older one is
+     * created again (from disk, if persistence is enabled) when next needed
+     *
+     * @param userApiKey The user's api key
+     *
+     * @return The user's order history
+     */
+    public static synchronized OrderHistory forUser(String userApiKey) {
+        OrderHistory history = HISTORIES.get(userApiKey);
+
+        if( history == null ) {
+            history = new OrderHistory(userApiKey, orderStore, snapshotStore);
+            HISTORIES.put(userApiKey, history);
+        }
+
+        return history;
+    }
+
+    /**
+     * Keeps order histories on local disk instead of in memory, so they survive
+     * restarts and only the orders being read are loaded. Histories obtained
+     * before this call are discarded
+     *
+     * @param directory The directory to keep the history files in
+     *
+     * @throws IOException If the history files could not be opened or created
+     */
+    public static synchronized void enablePersistence(Path directory) throws IOException {
+        if( orderStore != null ) {
+            return;
+        }
+
+        DiskStore<Order> orders = DiskStore.open(directory, "orders", ModelCodec.of(Order.class), STORE_TTL_DAYS, TimeUnit.DAYS);
+        DiskStore<Snapshot> snapshots;
+        try {
+            snapshots = DiskStore.open(directory, "order-history", new SnapshotCodec(), STORE_TTL_DAYS, TimeUnit.DAYS);
+        }
+        catch(IOException e) {
+            orders.close();
+            throw e;
+        }
+
+        orderStore = orders;
+        snapshotStore = snapshots;
+        HISTORIES.clear();
+    }
+
+    /**
+     * Flushes and closes the order history files opened by {@link #enablePersistence(Path)}
+     *
+     * @throws IOException If the files could not be written
+     */
+    public static synchronized void closePersistence() throws IOException {
+        if( orderStore == null ) {
+            return;
+        }
+
+        try {
+            orderStore.close();
+        }
+        finally {
+            snapshotStore.close();
+            orderStore = null;
+            snapshotStore = null;
+            HISTORIES.clear();
+        }
+    }
+
+    private static String keyOf(JsonObject order) {
+        JsonElement key = order.get("apiKey");
+        if( key == null || key.isJsonNull() ) {
+            key = order.get("id");
+        }
+
+        return (key == null || key.isJsonNull()) ? null : key.getAsString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the first 8 bytes of the SHA-256 digest of an order's JSON
+     */
+    private static long fingerprint(MessageDigest digest, String orderJson) {
+        byte[] hash = digest.digest(orderJson.getBytes(StandardCharsets.UTF_8));
+
+        return ByteBuffer.wrap(hash).getLong();
+    }
+
+    /**
+     * Copies the parts of a card that identify it to the user, leaving out
+     * its number, cvv, expiration and cardholder details
+     */
+    private static CreditCard withoutSecrets(CreditCard card) {
+        if( card == null ) {
+            return null;
+        }
+
+        CreditCard stripped = new CreditCard(card.getNickname(), null, null, null, card.getLastFour(), null, null, null);
+        stripped.setApiKey(card.getApiKey());
+
+        return stripped;
+    }
+
+    /**
+     * Keeps the first entries of a sorted snapshot
+     */
+    private static Snapshot newest(Snapshot sorted, int count) {
+        if( sorted.keys.length <= count ) {
+            return sorted;
+        }
+
+        return new Snapshot(Arrays.copyOf(sorted.keys, count), Arrays.copyOf(sorted.dates, count), Arrays.copyOf(sorted.fingerprints, count));
+    }
+
+    /**
+     * Orders entries newest first, then by key
+     */
+    private static Snapshot sort(List<String> keys, List<Integer> dates, List<Long> fingerprints) {
+        Integer[] order = new Integer[keys.size()];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> dates.get(i)).reversed().thenComparing(i -> keys.get(i)));
+
+        // Keep the last entry of a key the response repeats
+        Map<String, Integer> last = new HashMap<>(order.length * 2);
+        for(int i = 0; i < order.length; i++) {
+            last.put(keys.get(i), i);
+        }
+
+        String[] sortedKeys = new String[last.size()];
+        int[] sortedDates = new int[last.size()];
+        long[] sortedFingerprints = new long[last.size()];
+        int count = 0;
+
+        for(Integer i : order) {
+            if( last.get(keys.get(i)) == i.intValue() ) {
+                sortedKeys[count] = keys.get(i);
+                sortedDates[count] = dates.get(i);
+                sortedFingerprints[count] = fingerprints.get(i);
+                count++;
+            }
+        }
+
+        return new Snapshot(sortedKeys, sortedDates, sortedFingerprints);
+    }
+}
@@ -0,0 +1,529 @@
+package io.github.smyles96.eatstreet.model.order;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * A read-only index over a user's order history for reporting: spend over a
+ * date range, spend per month, and the most ordered restaurants and items.
+ *
+ * Orders are held as columns of primitive arrays sorted by datePlaced, with
+ * restaurant and item api keys replaced by dictionary codes and running
+ * totals of spend, so range queries are binary searches and aggregations are
+ * a single pass over the orders in range. Dates are in the units the
+ * EatStreet API uses for datePlaced (seconds since the epoch), and ranges
+ * include their start and exclude their end.
+ *
+ * The static methods aggregate many users' indexes in parallel.
+ *
+ * Finding a user's most ordered restaurants:
+ * <pre>{@code
+ * OrderHistoryIndex index = OrderHistoryIndex.build(api.getOrderHistory());
+ *
+ * List<OrderHistoryIndex.Aggregate> top = index.topRestaurants(Integer.MIN_VALUE, Integer.MAX_VALUE, 5);
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public final class OrderHistoryIndex {
+
+    /**
+     * The number of orders and the spend of one restaurant or item
+     */
+    public static final class Aggregate {
+        private final String apiKey;
+        private final String name;
+        private int count;
+        private double spend;
+
+        Aggregate(String apiKey, String name, int count, double spend) {
+            this.apiKey = apiKey;
+            this.name = name;
+            this.count = count;
+            this.spend = spend;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        /**
+         * Gets the name of the item, or null for restaurants (orders don't
+         * record restaurant names)
+         *
+         * @return The name
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getSpend() {
+            return spend;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s): %d, %.2f", apiKey, name, count, spend);
+        }
+    }
+
+    /* STATIC FIELDS */
+    private static final Comparator<Aggregate> MOST_ORDERED =
+        Comparator.comparingInt(Aggregate::getCount).reversed()
+                  .thenComparing(Comparator.comparingDouble(Aggregate::getSpend).reversed())
+                  .thenComparing(Aggregate::getApiKey, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /*
+     * INSTANCE VARIABLES
+     */
+
+    // One entry per order, sorted by date
+    private final int[] dates;
+    private final double[] totals;
+    private final int[] restaurants;
+
+    // cumulativeTotals[i] is the spend of the orders before i
+    private final double[] cumulativeTotals;
+
+    // The items of order i are items[itemOffsets[i]] to items[itemOffsets[i + 1] - 1]
+    private final int[] itemOffsets;
+    private final int[] items;
+    private final double[] itemPrices;
+
+    private final String[] restaurantKeys;
+    private final String[] itemKeys;
+    private final String[] itemNames;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private OrderHistoryIndex(int[] dates, double[] totals, int[] restaurants, int[] itemOffsets, int[] items,
+                              double[] itemPrices, String[] restaurantKeys, String[] itemKeys, String[] itemNames) {
+        this.dates = dates;
+        this.totals = totals;
+        this.restaurants = restaurants;
+        this.itemOffsets = itemOffsets;
+        this.items = items;
+        this.itemPrices = itemPrices;
+        this.restaurantKeys = restaurantKeys;
+        this.itemKeys = itemKeys;
+        this.itemNames = itemNames;
+
+        this.cumulativeTotals = new double[totals.length + 1];
+        for(int i = 0; i < totals.length; i++) {
+            cumulativeTotals[i + 1] = cumulativeTotals[i] + totals[i];
+        }
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Gets the number of indexed orders
+     *
+     * @return The number of orders
+     */
+    public int size() {
+        return dates.length;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Counts the orders placed within a date range
+     *
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     *
+     * @return The number of orders
+     */
+    public int count(int from, int to) {
+        return Math.max(0, lowerIndex(to) - lowerIndex(from));
+    }
+
+    /**
+     * Sums the totals of the orders placed within a date range
+     *
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     *
+     * @return The total spend
+     */
+    public double totalSpend(int from, int to) {
+        int start = lowerIndex(from);
+        int end = lowerIndex(to);
+
+        return (end > start) ? cumulativeTotals[end] - cumulativeTotals[start] : 0;
+    }
+
+    /**
+     * Sums the totals of the orders placed in each month
+     *
+     * @param zone The time zone that months are in
+     *
+     * @return The spend per month, for each month from the first order to the last
+     */
+    public SortedMap<YearMonth, Double> spendByMonth(ZoneId zone) {
+        return spendByMonth(Collections.singletonList(this), zone);
+    }
+
+    /**
+     * Finds the restaurants ordered from most within a date range
+     *
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     * @param limit The maximum number of restaurants to return
+     *
+     * @return The restaurants, most orders first
+     */
+    public List<Aggregate> topRestaurants(int from, int to, int limit) {
+        Map<String, Aggregate> aggregates = new HashMap<>();
+        aggregateRestaurants(aggregates, from, to);
+
+        return top(aggregates.values(), limit);
+    }
+
+    /**
+     * Finds the items ordered most within a date range, by menu item api key
+     *
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     * @param limit The maximum number of items to return
+     *
+     * @return The items, most ordered first
+     */
+    public List<Aggregate> topItems(int from, int to, int limit) {
+        Map<String, Aggregate> aggregates = new HashMap<>();
+        aggregateItems(aggregates, from, to);
+
+        return top(aggregates.values(), limit);
+    }
+
+    private void aggregateRestaurants(Map<String, Aggregate> into, int from, int to) {
+        int start = lowerIndex(from);
+        int end = lowerIndex(to);
+
+        int[] counts = new int[restaurantKeys.length];
+        double[] spend = new double[restaurantKeys.length];
+
+        for(int i = start; i < end; i++) {
+            counts[restaurants[i]]++;
+            spend[restaurants[i]] += totals[i];
+        }
+
+        for(int code = 0; code < counts.length; code++) {
+            if( counts[code] > 0 ) {
+                add(into, restaurantKeys[code], null, counts[code], spend[code]);
+            }
+        }
+    }
+
+    private void aggregateItems(Map<String, Aggregate> into, int from, int to) {
+        int start = lowerIndex(from);
+        int end = lowerIndex(to);
+
+        int[] counts = new int[itemKeys.length];
+        double[] spend = new double[itemKeys.length];
+
+        if( end > start ) {
+            for(int i = itemOffsets[start]; i < itemOffsets[end]; i++) {
+                counts[items[i]]++;
+                spend[items[i]] += itemPrices[i];
+            }
+        }
+
+        for(int code = 0; code < counts.length; code++) {
+            if( counts[code] > 0 ) {
+                add(into, itemKeys[code], itemNames[code], counts[code], spend[code]);
+            }
+        }
+    }
+
+    /**
+     * Adds the spend between consecutive boundaries to spend[i]
+     */
+    private void addSpendBetween(int[] boundaries, double[] spend) {
+        int start = lowerIndex(boundaries[0]);
+
+        for(int i = 0; i < spend.length; i++) {
+            int end = lowerIndex(boundaries[i + 1]);
+            spend[i] += cumulativeTotals[end] - cumulativeTotals[start];
+            start = end;
+        }
+    }
+
+    /**
+     * The index of the first order placed at or after a date
+     */
+    private int lowerIndex(int date) {
+        int low = 0;
+        int high = dates.length;
+
+        while( low < high ) {
+            int middle = (low + high) >>> 1;
+            if( dates[middle] < date ) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Builds an index over orders. The orders are read once, in order, so a
+     * lazily loaded history (see {@link OrderHistory}) is never held in full
+     *
+     * @param orders The orders to index
+     *
+     * @return The index
+     */
+    public static OrderHistoryIndex build(List<Order> orders) {
+        int count = orders.size();
+
+        int[] dates = new int[count];
+        double[] totals = new double[count];
+        int[] restaurants = new int[count];
+        int[] itemCounts = new int[count];
+        List<int[]> orderItems = new ArrayList<>(count);
+        List<double[]> orderItemPrices = new ArrayList<>(count);
+
+        Map<String, Integer> restaurantCodes = new HashMap<>();
+        Map<String, Integer> itemCodes = new HashMap<>();
+        List<String> itemNames = new ArrayList<>();
+
+        int index = 0;
+        for(Order order : orders) {
+            dates[index] = (order.getDatePlaced() != null) ? order.getDatePlaced() : 0;
+            restaurants[index] = code(restaurantCodes, order.getRestaurantApiKey());
+
+            List<OrderItem> items = (order.getItems() != null) ? order.getItems() : Collections.emptyList();
+            int[] codes = new int[items.size()];
+            double[] prices = new double[items.size()];
+            double itemTotal = 0;
+
+            for(int i = 0; i < codes.length; i++) {
+                OrderItem item = items.get(i);
+
+                int before = itemCodes.size();
+                codes[i] = code(itemCodes, item.getApiKey());
+                if( itemCodes.size() > before ) {
+                    itemNames.add(item.getName());
+                }
+
+                prices[i] = priceOf(item);
+                itemTotal += prices[i];
+            }
+
+            Double recorded = order.getRecordedTotal();
+            totals[index] = (recorded != null) ? recorded : itemTotal;
+            itemCounts[index] = codes.length;
+            orderItems.add(codes);
+            orderItemPrices.add(prices);
+            index++;
+        }
+
+        // Sort the orders by date, then lay the columns out in that order
+        Integer[] byDate = new Integer[count];
+        for(int i = 0; i < count; i++) {
+            byDate[i] = i;
+        }
+        Arrays.sort(byDate, Comparator.comparingInt(i -> dates[i]));
+
+        int[] sortedDates = new int[count];
+        double[] sortedTotals = new double[count];
+        int[] sortedRestaurants = new int[count];
+        int[] itemOffsets = new int[count + 1];
+
+        for(int i = 0; i < count; i++) {
+            itemOffsets[i + 1] = itemOffsets[i] + itemCounts[byDate[i]];
+        }
+
+        int[] items = new int[itemOffsets[count]];
+        double[] itemPrices = new double[itemOffsets[count]];
+
+        for(int i = 0; i < count; i++) {
+            int original = byDate[i];
+
+            sortedDates[i] = dates[original];
+            sortedTotals[i] = totals[original];
+            sortedRestaurants[i] = restaurants[original];
+            System.arraycopy(orderItems.get(original), 0, items, itemOffsets[i], itemCounts[original]);
+            System.arraycopy(orderItemPrices.get(original), 0, itemPrices, itemOffsets[i], itemCounts[original]);
+        }
+
+        return new OrderHistoryIndex(sortedDates, sortedTotals, sortedRestaurants, itemOffsets, items, itemPrices,
+                                     keys(restaurantCodes), keys(itemCodes), itemNames.toArray(new String[0]));
+    }
+
+    /**
+     * Builds an index over a user's order history as of its last sync
+     *
+     * @param history The order history
+     *
+     * @return The index
+     */
+    public static OrderHistoryIndex build(OrderHistory history) {
+        return build(history.getOrders());
+    }
+
+    /**
+     * Sums the totals of the orders placed within a date range across many
+     * users' indexes, in parallel
+     *
+     * @param indexes The indexes
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     *
+     * @return The total spend
+     */
+    public static double totalSpend(Collection<OrderHistoryIndex> indexes, int from, int to) {
+        return indexes.parallelStream().mapToDouble(index -> index.totalSpend(from, to)).sum();
+    }
+
+    /**
+     * Sums the totals of the orders placed in each month across many users'
+     * indexes, in parallel
+     *
+     * @param indexes The indexes
+     * @param zone The time zone that months are in
+     *
+     * @return The spend per month
+     */
+    public static SortedMap<YearMonth, Double> spendByMonth(Collection<OrderHistoryIndex> indexes, ZoneId zone) {
+        SortedMap<YearMonth, Double> result = new TreeMap<>();
+
+        int first = indexes.stream().filter(index -> index.dates.length > 0).mapToInt(index -> index.dates[0]).min().orElse(0);
+        int last = indexes.stream().filter(index -> index.dates.length > 0).mapToInt(index -> index.dates[index.dates.length - 1]).max().orElse(-1);
+        if( last < first ) {
+            return result;
+        }
+
+        // The month boundaries are computed once and shared by every index
+        YearMonth firstMonth = YearMonth.from(Instant.ofEpochSecond(first).atZone(zone));
+        YearMonth lastMonth = YearMonth.from(Instant.ofEpochSecond(last).atZone(zone));
+        int months = (int) firstMonth.until(lastMonth, ChronoUnit.MONTHS) + 1;
+
+        int[] boundaries = new int[months + 1];
+        for(int i = 0; i <= months; i++) {
+            boundaries[i] = clamp(firstMonth.plusMonths(i).atDay(1).atStartOfDay(zone).toEpochSecond());
+        }
+
+        double[] spend = indexes.parallelStream().collect(() -> new double[months], (sums, index) -> index.addSpendBetween(boundaries, sums), (a, b) -> {
+            for(int i = 0; i < months; i++) {
+                a[i] += b[i];
+            }
+        });
+
+        for(int i = 0; i < months; i++) {
+            result.put(firstMonth.plusMonths(i), spend[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the restaurants ordered from most within a date range across many
+     * users' indexes, in parallel
+     *
+     * @param indexes The indexes
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     * @param limit The maximum number of restaurants to return
+     *
+     * @return The restaurants, most orders first
+     */
+    public static List<Aggregate> topRestaurants(Collection<OrderHistoryIndex> indexes, int from, int to, int limit) {
+        return top(indexes.parallelStream().collect(HashMap::new, (into, index) -> index.aggregateRestaurants(into, from, to), OrderHistoryIndex::merge).values(), limit);
+    }
+
+    /**
+     * Finds the items ordered most within a date range across many users'
+     * indexes, in parallel
+     *
+     * @param indexes The indexes
+     * @param from The start of the range
+     * @param to The end of the range (exclusive)
+     * @param limit The maximum number of items to return
+     *
+     * @return The items, most ordered first
+     */
+    public static List<Aggregate> topItems(Collection<OrderHistoryIndex> indexes, int from, int to, int limit) {
+        return top(indexes.parallelStream().collect(HashMap::new, (into, index) -> index.aggregateItems(into, from, to), OrderHistoryIndex::merge).values(), limit);
+    }
+
+    private static void add(Map<String, Aggregate> into, String apiKey, String name, int count, double spend) {
+        Aggregate existing = into.get(apiKey);
+
+        if( existing == null ) {
+            into.put(apiKey, new Aggregate(apiKey, name, count, spend));
+        }
+        else {
+            existing.count += count;
+            existing.spend += spend;
+        }
+    }
+
+    private static void merge(Map<String, Aggregate> into, Map<String, Aggregate> from) {
+        for(Aggregate aggregate : from.values()) {
+            add(into, aggregate.apiKey, aggregate.name, aggregate.count, aggregate.spend);
+        }
+    }
+
+    private static List<Aggregate> top(Collection<Aggregate> aggregates, int limit) {
+        return aggregates.stream().sorted(MOST_ORDERED).limit(Math.max(0, limit)).collect(Collectors.toList());
+    }
+
+    private static int code(Map<String, Integer> codes, String key) {
+        Integer code = codes.get(key);
+        if( code == null ) {
+            code = codes.size();
+            codes.put(key, code);
+        }
+        return code;
+    }
+
+    private static String[] keys(Map<String, Integer> codes) {
+        String[] keys = new String[codes.size()];
+        codes.forEach((key, code) -> keys[code] = key);
+        return keys;
+    }
+
+    private static double priceOf(OrderItem item) {
+        if( item.getTotalPrice() != null ) {
+            return item.getTotalPrice();
+        }
+        return (item.getBasePrice() != null) ? item.getBasePrice() : 0;
+    }
+
+    private static int clamp(long date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date));
+    }
+}
@@ -0,0 +1,756 @@
+package io.github.smyles96.eatstreet.model.order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.model.restaurant.Restaurant;
+import io.github.smyles96.eatstreet.model.user.CreditCard;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.io.Journal;
+import io.github.smyles96.eatstreet.util.json.JsonConverter;
+
+/**
+ * A durable queue of orders waiting to be sent to their restaurants.
+ *
+ * An order is written to a local journal (a write-ahead log) and synced to
+ * disk before {@link #submit(Order, long, TimeUnit)} returns, so an accepted
+ * order survives the process dying. Concurrent submissions share their disk
+ * syncs. Worker threads drain the queue at most at the configured rate and
+ * concurrency, and record each attempt and outcome in the journal. A send
+ * is retried with backoff only when it provably did not place the order (no
+ * capacity was available to send it, or the server rate limited it); any
+ * other failure, such as a timeout, may have placed the order and fails the
+ * submission.
+ *
+ * When the queue is reopened, orders that were never sent, or whose sends
+ * provably did not place them, are queued again. An order whose send was in
+ * flight when the process died may already be placed, so it is never sent
+ * again: its submission completes with an IN_DOUBT EatStreetApiException,
+ * and it stays in the journal (holding its place in the queue) until it is
+ * reconciled, for example against the user's order history (see
+ * {@link io.github.smyles96.eatstreet.model.user.User#getOrderHistory()}),
+ * and {@link #resolve(String, boolean)} records what happened to it.
+ *
+ * The queue holds at most its capacity of unfinished orders. Producers block
+ * while it is full and get a NO_CAPACITY EatStreetApiException if no room
+ * frees up in time; {@link #getRemainingCapacity()} lets them slow down
+ * before that.
+ *
+ * Orders paid by card must use a card saved with the EatStreet API. The
+ * journal keeps only the card's api key, nickname and last four digits, never
+ * its cardholder or security details. It still holds the order's contact
+ * details, so it should be kept in a directory only the application can read.
+ *
+ * Queueing an order:
+ * <pre>{@code
+ * OrderQueue queue = OrderQueue.open(Paths.get("orders"), "outbound", 1000, 5, 4);
+ *
+ * OrderQueue.Submission submission = queue.submit(order, 2, TimeUnit.SECONDS);
+ * Order placed = submission.getResult().get();
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class OrderQueue implements Closeable {
+
+    /**
+     * An order accepted by the queue
+     */
+    public static final class Submission {
+        private final String idempotencyKey;
+        private final String restaurantApiKey;
+        private final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        Submission(String idempotencyKey, String restaurantApiKey) {
+            this.idempotencyKey = idempotencyKey;
+            this.restaurantApiKey = restaurantApiKey;
+        }
+
+        /**
+         * Gets the key that identifies the order across attempts and restarts
+         *
+         * @return The idempotency key
+         */
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+
+        public String getRestaurantApiKey() {
+            return restaurantApiKey;
+        }
+
+        /**
+         * Gets the outcome of sending the order: the sent order, or an
+         * EatStreetApiException if it failed for good
+         *
+         * @return The result
+         */
+        public CompletableFuture<Order> getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * A queued order and the state of its delivery
+     */
+    private static final class Entry implements Delayed {
+        final Submission submission;
+        final byte[] record;
+        final String orderJson;
+        final String phone;
+        final String firstName;
+        final String lastName;
+        int attempts;
+        long readyAt;
+
+        // Guarded by pending. A send was started and its outcome is not known
+        // yet; in doubt if that send was lost with a previous process
+        boolean inFlight;
+        boolean inDoubt;
+
+        Entry(Submission submission, byte[] record, String orderJson, String phone, String firstName, String lastName) {
+            this.submission = submission;
+            this.record = record;
+            this.orderJson = orderJson;
+            this.phone = phone;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Entry) other).readyAt);
+        }
+    }
+
+    /* STATIC FIELDS */
+
+    // Journal record types
+    private static final byte QUEUED = 1;
+    private static final byte STARTED = 2;
+    private static final byte SENT = 3;
+    private static final byte FAILED = 4;
+    private static final byte NOT_PLACED = 5;
+
+    // The journal is rewritten with only the unfinished orders once it has
+    // grown past this, or past twice its size after the last rewrite
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Journal journal;
+    private final Semaphore capacity;
+    private final DelayQueue<Entry> ready = new DelayQueue<>();
+    private final ExecutorService workers;
+    private final long sendIntervalNanos;
+    private volatile int maxAttempts = 5;
+
+    // Guarded by pending
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private long compactAt = COMPACTION_THRESHOLD;
+
+    // Guarded by this
+    private long nextSendAt;
+    private boolean closed;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private OrderQueue(Journal journal, List<Entry> recovered, int capacity, double ordersPerSecond, int maxConcurrent) {
+        this.journal = journal;
+        this.capacity = new Semaphore(capacity - recovered.size(), true);
+        this.sendIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ordersPerSecond);
+
+        for(Entry entry : recovered) {
+            pending.put(entry.submission.idempotencyKey, entry);
+
+            if( entry.inDoubt ) {
+                entry.submission.result.completeExceptionally(EatStreetApiException.inDoubt(ApiEndpoint.SEND_ORDER,
+                    "The order was being sent when the queue last stopped, and may have been placed"));
+                continue;
+            }
+
+            entry.readyAt = System.nanoTime();
+            ready.add(entry);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "eatstreet-order-queue-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for(int i = 0; i < maxConcurrent; i++) {
+            workers.execute(this::drain);
+        }
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Sets how many times an order is sent before a transient failure is
+     * final. Defaults to 5
+     *
+     * @param maxAttempts The most attempts per order
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if( maxAttempts < 1 ) {
+            throw new IllegalArgumentException("At least one attempt is required");
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets the number of orders accepted and not yet finished
+     *
+     * @return The number of unfinished orders
+     */
+    public int getPendingCount() {
+        synchronized( pending ) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Gets how many more orders the queue accepts before producers block
+     *
+     * @return The remaining capacity, which is 0 or less when full
+     */
+    public int getRemainingCapacity() {
+        return capacity.availablePermits();
+    }
+
+    /**
+     * Gets the submission of an unfinished order, such as one queued again
+     * when the queue was reopened
+     *
+     * @param idempotencyKey The order's idempotency key
+     *
+     * @return The submission, or null if the order is finished or unknown
+     */
+    public Submission getSubmission(String idempotencyKey) {
+        synchronized( pending ) {
+            Entry entry = pending.get(idempotencyKey);
+            return (entry == null) ? null : entry.submission;
+        }
+    }
+
+    /**
+     * Gets the submissions of every unfinished order, oldest first, including
+     * the orders in doubt
+     *
+     * @return The submissions
+     */
+    public List<Submission> getPendingSubmissions() {
+        List<Submission> submissions = new ArrayList<>();
+
+        synchronized( pending ) {
+            pending.values().forEach(entry -> submissions.add(entry.submission));
+        }
+
+        return submissions;
+    }
+
+    /**
+     * Gets the submissions of the orders whose sends were in flight when the
+     * queue last stopped, oldest first. They are not sent again until
+     * {@link #resolve(String, boolean)} records whether they were placed
+     *
+     * @return The submissions in doubt
+     */
+    public List<Submission> getInDoubtSubmissions() {
+        List<Submission> submissions = new ArrayList<>();
+
+        synchronized( pending ) {
+            pending.values().stream().filter(entry -> entry.inDoubt).forEach(entry -> submissions.add(entry.submission));
+        }
+
+        return submissions;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Queues an order to be sent to its restaurant (see
+     * {@link Order#getRestaurantApiKey()}). The order is sent for the current
+     * user unless its recipient is set. Once this returns the order is on
+     * disk and will be sent even if the process restarts
+     *
+     * @param order The order
+     * @param timeout The longest time to wait for room in the queue
+     * @param unit The unit of the timeout
+     *
+     * @return The submission, holding the order's idempotency key and result
+     *
+     * @throws EatStreetApiException If the queue stayed full, or the order could not be written
+     */
+    public Submission submit(Order order, long timeout, TimeUnit unit) throws EatStreetApiException {
+        if( order.getRestaurantApiKey() == null ) {
+            throw new EatStreetApiException("An order needs a restaurant api key to be queued");
+        }
+
+        // Only a saved card's api key is written to the journal
+        if( PaymentMethod.CARD.toString().equals(order.getPayment())
+            && (order.getCard() == null || order.getCard().getApiKey() == null || order.getCard().getApiKey().isEmpty()) ) {
+            throw new EatStreetApiException("An order paid by card needs a saved card to be queued");
+        }
+
+        try {
+            if( !capacity.tryAcquire(timeout, unit) ) {
+                throw EatStreetApiException.noCapacity(ApiEndpoint.SEND_ORDER, "POST",
+                    String.format("The order queue is full (%d orders pending)", getPendingCount()));
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EatStreetApiException.noCapacity(ApiEndpoint.SEND_ORDER, "POST", "Interrupted while waiting for room in the order queue");
+        }
+
+        Submission submission = new Submission(UUID.randomUUID().toString(), order.getRestaurantApiKey());
+        String recipient = (order.getRecipientApiKey() != null) ? order.getRecipientApiKey() : EatStreetRequestor.getUserApiKey();
+
+        try {
+            Entry entry = queued(submission, recipient, order);
+
+            synchronized( pending ) {
+                if( closed() ) {
+                    throw new IOException("The order queue is closed");
+                }
+
+                journal.append(entry.record, false);
+                pending.put(submission.idempotencyKey, entry);
+            }
+
+            // Synced outside the lock, so concurrent submissions share one sync
+            journal.sync();
+
+            entry.readyAt = System.nanoTime();
+            ready.add(entry);
+
+            return submission;
+        }
+        catch(IOException e) {
+            synchronized( pending ) {
+                pending.remove(submission.idempotencyKey);
+            }
+            capacity.release();
+
+            throw new EatStreetApiException("Unable to write the order to the queue journal:\n\t" + e.getMessage());
+        }
+    }
+
+    /**
+     * Records whether an order in doubt was placed, and frees its place in the
+     * queue. An order that was not placed is not sent again; submit it anew
+     *
+     * @param idempotencyKey The order's idempotency key
+     * @param placed Whether the order was placed
+     *
+     * @throws IOException If the outcome could not be written to the journal
+     */
+    public void resolve(String idempotencyKey, boolean placed) throws IOException {
+        Entry entry;
+
+        synchronized( pending ) {
+            entry = pending.get(idempotencyKey);
+
+            if( entry == null || !entry.inDoubt ) {
+                throw new IllegalArgumentException("No order in doubt has the idempotency key " + idempotencyKey);
+            }
+
+            // Keeps a concurrent resolve of the same order from finishing it twice
+            entry.inDoubt = false;
+        }
+
+        finish(entry, placed ? record(SENT, idempotencyKey, null) : record(FAILED, idempotencyKey, "Resolved as not placed"), true);
+    }
+
+    /**
+     * Stops the workers and closes the journal. Unfinished orders stay in the
+     * journal and are queued again when the queue is reopened
+     *
+     * @throws IOException If the journal could not be synced
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized( this ) {
+            closed = true;
+        }
+
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized( pending ) {
+            journal.close();
+        }
+    }
+
+    private synchronized boolean closed() {
+        return closed;
+    }
+
+    /**
+     * Takes due orders and sends them until the queue is closed
+     */
+    private void drain() {
+        while( !closed() ) {
+            Entry entry;
+
+            try {
+                entry = ready.take();
+                awaitSendSlot();
+            }
+            catch(InterruptedException e) {
+                return;
+            }
+
+            send(entry);
+        }
+    }
+
+    /**
+     * Waits until sending one more order keeps within the rate
+     */
+    private void awaitSendSlot() throws InterruptedException {
+        long sendAt;
+
+        synchronized( this ) {
+            long now = System.nanoTime();
+            sendAt = Math.max(now, nextSendAt);
+            nextSendAt = sendAt + sendIntervalNanos;
+        }
+
+        long wait = sendAt - System.nanoTime();
+        if( wait > 0 ) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void send(Entry entry) {
+        Submission submission = entry.submission;
+        entry.attempts++;
+
+        try {
+            synchronized( pending ) {
+                journal.append(record(STARTED, submission.idempotencyKey, null), false);
+                entry.inFlight = true;
+            }
+        }
+        catch(IOException e) {
+            // Nothing was sent
+            retryOrFail(entry, new EatStreetApiException("Unable to write to the order queue journal:\n\t" + e.getMessage()));
+            return;
+        }
+
+        Order sent;
+        try {
+            Order order = JsonConverter.GSON.fromJson(entry.orderJson, Order.class);
+            order.setPhone(entry.phone);
+            order.setFirstName(entry.firstName);
+            order.setLastName(entry.lastName);
+
+            Restaurant restaurant = new Restaurant();
+            restaurant.setApiKey(submission.restaurantApiKey);
+
+            sent = restaurant.sendOrder(order, submission.idempotencyKey);
+        }
+        catch(EatStreetApiException e) {
+            if( notPlaced(e) ) {
+                notPlaced(entry);
+                retryOrFail(entry, e);
+            }
+            else {
+                fail(entry, e);
+            }
+            return;
+        }
+        catch(RuntimeException e) {
+            // Such as an unreadable response; the order may have been placed
+            fail(entry, new EatStreetApiException("Unable to send the queued order:\n\t" + e));
+            return;
+        }
+
+        try {
+            finish(entry, record(SENT, submission.idempotencyKey, null), true);
+        }
+        catch(IOException e) {
+            // The order was placed; if the outcome never reached the disk it
+            // is sent again after a restart
+        }
+        submission.result.complete(sent);
+    }
+
+    /**
+     * Records that a send did not place its order, so the order is sent again
+     * after a restart rather than left in doubt
+     */
+    private void notPlaced(Entry entry) {
+        synchronized( pending ) {
+            try {
+                journal.append(record(NOT_PLACED, entry.submission.idempotencyKey, null), false);
+                entry.inFlight = false;
+            }
+            catch(IOException ignored) {
+                // The order is in doubt after a restart
+            }
+        }
+    }
+
+    /**
+     * Sends an order that was not placed again after a backoff, unless it is
+     * out of attempts
+     */
+    private void retryOrFail(Entry entry, EatStreetApiException failure) {
+        if( closed() ) {
+            // The order stays in the journal and is sent after a restart
+            return;
+        }
+
+        if( entry.attempts < maxAttempts ) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(1) << Math.min(entry.attempts - 1, 16));
+            entry.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            ready.add(entry);
+            return;
+        }
+
+        fail(entry, failure);
+    }
+
+    private void fail(Entry entry, EatStreetApiException failure) {
+        try {
+            finish(entry, record(FAILED, entry.submission.idempotencyKey, failure.getMessage()), false);
+        }
+        catch(IOException ignored) {
+            // The order is sent again after a restart
+        }
+
+        entry.submission.result.completeExceptionally(failure);
+    }
+
+    /**
+     * Records the final outcome of an order and frees its place in the queue.
+     * The journal is compacted here, as this is where it stops needing records
+     */
+    private void finish(Entry entry, byte[] outcome, boolean sync) throws IOException {
+        try {
+            synchronized( pending ) {
+                pending.remove(entry.submission.idempotencyKey);
+                journal.append(outcome, false);
+
+                if( journal.size() > compactAt ) {
+                    journal.rewrite(live(pending.values()));
+                    compactAt = Math.max(COMPACTION_THRESHOLD, 2 * journal.size());
+                }
+            }
+
+            // Synced outside the lock, so concurrent outcomes share one sync
+            if( sync ) {
+                journal.sync();
+            }
+        }
+        finally {
+            capacity.release();
+        }
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Checks if a failed send provably did not place the order, so it can be
+     * sent again
+     */
+    private static boolean notPlaced(EatStreetApiException e) {
+        return e.getKind() == EatStreetApiException.Kind.NO_CAPACITY || e.getHttpStatus() == 429;
+    }
+
+    /**
+     * Opens a queue, creating its journal if it doesn't exist, and queues
+     * again every order the journal holds that was not finished
+     *
+     * @param directory The directory to keep the journal in
+     * @param name The name of the queue, used to name its journal
+     * @param capacity The most unfinished orders the queue holds
+     * @param ordersPerSecond The most orders sent per second
+     * @param maxConcurrent The most orders sent at once
+     *
+     * @return The queue, with its workers started
+     *
+     * @throws IOException If the journal could not be opened or read
+     */
+    public static OrderQueue open(Path directory, String name, int capacity, double ordersPerSecond, int maxConcurrent) throws IOException {
+        if( capacity <= 0 || ordersPerSecond <= 0 || maxConcurrent <= 0 ) {
+            throw new IllegalArgumentException("Invalid order queue limits");
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        Journal journal = Journal.open(directory.resolve(name + ".journal"), records);
+
+        try {
+            Map<String, Entry> unfinished = new LinkedHashMap<>();
+
+            for(byte[] record : records) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = in.readByte();
+                String key = in.readUTF();
+                Entry entry = unfinished.get(key);
+
+                if( type == QUEUED ) {
+                    unfinished.put(key, read(key, record, in));
+                }
+                else if( type == STARTED && entry != null ) {
+                    entry.attempts++;
+                    entry.inFlight = true;
+                }
+                else if( type == NOT_PLACED && entry != null ) {
+                    entry.inFlight = false;
+                }
+                else if( type == SENT || type == FAILED ) {
+                    unfinished.remove(key);
+                }
+            }
+
+            // A send that never recorded its outcome may have placed its order
+            unfinished.values().forEach(entry -> entry.inDoubt = entry.inFlight);
+
+            // Keep only what is still needed
+            journal.rewrite(live(unfinished.values()));
+
+            return new OrderQueue(journal, new ArrayList<>(unfinished.values()), capacity, ordersPerSecond, maxConcurrent);
+        }
+        catch(IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the records that describe unfinished orders: each order, and the
+     * start of its send if that send's outcome is not known
+     */
+    private static List<byte[]> live(Collection<Entry> unfinished) throws IOException {
+        List<byte[]> live = new ArrayList<>(unfinished.size());
+
+        for(Entry entry : unfinished) {
+            live.add(entry.record);
+
+            if( entry.inFlight ) {
+                live.add(record(STARTED, entry.submission.idempotencyKey, null));
+            }
+        }
+
+        return live;
+    }
+
+    private static Entry queued(Submission submission, String recipient, Order order) throws IOException {
+        order.setRecipientApiKey(recipient);
+
+        // The journal keeps the saved card's api key, never its details
+        CreditCard card = order.getCard();
+        if( card != null ) {
+            CreditCard saved = new CreditCard(card.getNickname(), null, null, null, card.getLastFour(), null, null, null);
+            saved.setApiKey(card.getApiKey());
+            order.setCard(saved);
+        }
+
+        String json;
+        try {
+            json = JsonConverter.GSON.toJson(order);
+        }
+        finally {
+            order.setCard(card);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(QUEUED);
+        out.writeUTF(submission.idempotencyKey);
+        out.writeUTF(submission.restaurantApiKey);
+        writeNullable(out, order.getPhone());
+        writeNullable(out, order.getFirstName());
+        writeNullable(out, order.getLastName());
+
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(jsonBytes.length);
+        out.write(jsonBytes);
+
+        return new Entry(submission, bytes.toByteArray(), json, order.getPhone(), order.getFirstName(), order.getLastName());
+    }
+
+    private static Entry read(String key, byte[] record, DataInputStream in) throws IOException {
+        String restaurantApiKey = in.readUTF();
+        String phone = readNullable(in);
+        String firstName = readNullable(in);
+        String lastName = readNullable(in);
+
+        byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+
+        return new Entry(new Submission(key, restaurantApiKey), record, new String(json, StandardCharsets.UTF_8), phone, firstName, lastName);
+    }
+
+    private static byte[] record(byte type, String key, String detail) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(type);
+        out.writeUTF(key);
+        writeNullable(out, detail);
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if( value != null ) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
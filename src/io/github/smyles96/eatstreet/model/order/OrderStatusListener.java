@@ -0,0 +1,34 @@
+package io.github.smyles96.eatstreet.model.order;
+
+/**
+ * A listener for new statuses of the orders tracked by an OrderStatusPoller.
+ * Each status is delivered once per order, however many times it is polled;
+ * statuses are deduplicated by their status and date, and those found by the
+ * same poll are delivered oldest first.
+ *
+ * Reacting to deliveries:
+ * <pre>{@code
+ * OrderStatusPoller.getShared().addListener((orderApiKey, status) -> {
+ *     if( OrderStatusPoller.isTerminal(status) ) {
+ *         notifyCustomer(orderApiKey, status.getStatus());
+ *     }
+ * });
+ * }</pre>
+ *
+ * Listeners are called on the poller's threads. The statuses of one order are
+ * delivered in order, but different orders may be delivered concurrently, so
+ * listeners must be thread-safe and should return quickly.
+ *
+ * @author smyles96
+ */
+@FunctionalInterface
+public interface OrderStatusListener {
+
+    /**
+     * Called when a poll finds a status of an order that wasn't seen before
+     *
+     * @param orderApiKey The api key of the order
+     * @param status The new status
+     */
+    void statusAdded(String orderApiKey, OrderStatus status);
+}
@@ -0,0 +1,664 @@
+package io.github.smyles96.eatstreet.model.order;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+
+/**
+ * Polls the statuses of many live orders from one place, instead of each
+ * caller polling {@link Order#getOrderStatus()} on its own timer.
+ *
+ * Tracked orders are scheduled on a timing wheel. Each order is polled often
+ * right after it is placed and less often once it is confirmed, and the
+ * interval grows each time a poll finds no change (up to a limit), so the
+ * number of requests follows the number of status changes rather than the
+ * number of orders. An order stops being polled once it reaches a terminal
+ * status, is untracked, is no longer known to the API, or has been tracked
+ * for longer than the tracking limit.
+ * The statuses of an order that stopped being polled by itself stay readable
+ * for the retention period (an hour by default), so its final status can
+ * still be read after polling ends.
+ *
+ * Due polls are released at most at the configured rate and run on a small
+ * pool of daemon threads, so a burst of due orders is spread out rather than
+ * sent at once.
+ *
+ * Listeners (see {@link OrderStatusListener}) receive only the statuses each
+ * poll adds, so consumers never compare status lists themselves. An order's
+ * next poll is scheduled only after its new statuses were delivered, so the
+ * statuses of one order are never delivered concurrently or out of order.
+ *
+ * Tracking an order:
+ * <pre>{@code
+ * OrderStatusPoller poller = OrderStatusPoller.getShared();
+ * poller.track(order.getApiKey());
+ *
+ * // Later
+ * OrderStatus status = poller.getLatestStatus(order.getApiKey());
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class OrderStatusPoller implements Closeable {
+
+    /**
+     * The polling state of one tracked order. Fields are guarded by the
+     * poller's wheel lock, except statuses which is published for readers,
+     * and seen which only the order's (single) poll in flight uses
+     */
+    private static final class Tracked {
+        final String orderApiKey;
+        final long trackedAt;
+        long intervalMillis;
+        int remainingRounds;
+        boolean confirmed;
+        boolean cancelled;
+        long finishedAt;
+        volatile List<OrderStatus> statuses = Collections.emptyList();
+        final Set<String> seen = new HashSet<>();
+
+        Tracked(String orderApiKey, long trackedAt) {
+            this.orderApiKey = orderApiKey;
+            this.trackedAt = trackedAt;
+        }
+    }
+
+    /* STATIC FIELDS */
+
+    // Statuses after which an order never changes again
+    private static final Set<String> TERMINAL_STATUSES = new HashSet<>(Arrays.asList(
+        "DELIVERED", "PICKED_UP", "COMPLETED", "COMPLETE", "CANCELED", "CANCELLED", "REJECTED", "REFUNDED", "FAILED"));
+
+    // Statuses at which an order has been accepted by the restaurant
+    private static final Set<String> CONFIRMED_STATUSES = new HashSet<>(Arrays.asList(
+        "CONFIRMED", "ACCEPTED", "IN_PROGRESS", "PREPARING", "READY", "OUT_FOR_DELIVERY", "DISPATCHED", "EN_ROUTE"));
+
+    private static final long TICK_MILLIS = 250;
+    private static final int WHEEL_SIZE = 512;
+
+    // The most finished orders whose statuses are kept
+    private static final int MAX_FINISHED = 4096;
+
+    private static OrderStatusPoller shared;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final double pollsPerSecond;
+    private final ConcurrentHashMap<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor pollers;
+
+    // Guarded by wheel
+    private final List<Queue<Tracked>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Queue<Tracked> due = new ArrayDeque<>();
+    private long nextTick;
+    private double tokens;
+    private Thread ticker;
+    private boolean closed;
+
+    private volatile long unconfirmedInterval = TimeUnit.SECONDS.toMillis(5);
+    private volatile long unconfirmedMaxInterval = TimeUnit.SECONDS.toMillis(20);
+    private volatile long confirmedInterval = TimeUnit.SECONDS.toMillis(30);
+    private volatile long confirmedMaxInterval = TimeUnit.MINUTES.toMillis(2);
+    private volatile long trackingLimit = TimeUnit.HOURS.toMillis(4);
+    private volatile long retention = TimeUnit.HOURS.toMillis(1);
+
+    // Orders that finished polling, oldest first; guarded by the wheel lock
+    private final Map<String, Tracked> finished = new LinkedHashMap<>();
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final List<OrderStatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new poller. Its thread is started when the first order is tracked
+     *
+     * @param pollsPerSecond The most status requests sent per second
+     * @param maxConcurrentPolls The most status requests in flight at once
+     */
+    public OrderStatusPoller(double pollsPerSecond, int maxConcurrentPolls) {
+        if( pollsPerSecond <= 0 || maxConcurrentPolls <= 0 ) {
+            throw new IllegalArgumentException("Invalid polling limits");
+        }
+
+        this.pollsPerSecond = pollsPerSecond;
+
+        for(int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pollers = new ThreadPoolExecutor(maxConcurrentPolls, maxConcurrentPolls, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "eatstreet-status-poll-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.pollers.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Sets the polling intervals of orders. An order is polled at the base
+     * interval of its phase after each status change, and the interval grows
+     * by half after each poll without a change, up to the phase's maximum
+     *
+     * @param unconfirmed The base interval before the restaurant confirms the order
+     * @param unconfirmedMax The longest interval before the order is confirmed
+     * @param confirmed The base interval once the order is confirmed
+     * @param confirmedMax The longest interval once the order is confirmed
+     * @param unit The unit of the intervals
+     */
+    public void setIntervals(long unconfirmed, long unconfirmedMax, long confirmed, long confirmedMax, TimeUnit unit) {
+        if( unconfirmed <= 0 || unconfirmedMax < unconfirmed || confirmed <= 0 || confirmedMax < confirmed ) {
+            throw new IllegalArgumentException("Invalid polling intervals");
+        }
+
+        this.unconfirmedInterval = unit.toMillis(unconfirmed);
+        this.unconfirmedMaxInterval = unit.toMillis(unconfirmedMax);
+        this.confirmedInterval = unit.toMillis(confirmed);
+        this.confirmedMaxInterval = unit.toMillis(confirmedMax);
+    }
+
+    /**
+     * Sets how long an order is polled before it is dropped even if it never
+     * reached a terminal status. Defaults to 4 hours
+     *
+     * @param duration The tracking limit
+     * @param unit The unit of the duration
+     */
+    public void setTrackingLimit(long duration, TimeUnit unit) {
+        this.trackingLimit = unit.toMillis(duration);
+    }
+
+    /**
+     * Sets how long the statuses of an order stay readable after it stops
+     * being polled because it reached a terminal status or the tracking limit.
+     * At most the 4096 most recently finished orders are kept
+     *
+     * @param duration The retention period
+     * @param unit The unit of the duration
+     */
+    public void setRetention(long duration, TimeUnit unit) {
+        this.retention = unit.toMillis(duration);
+    }
+
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    public long getPollCount() {
+        return polls.sum();
+    }
+
+    public long getChangeCount() {
+        return changes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Starts polling the statuses of an order. The first poll is made on the
+     * next tick. Tracking an order that is already tracked has no effect
+     *
+     * @param orderApiKey The api key of the order
+     */
+    public void track(String orderApiKey) {
+        Tracked order = new Tracked(orderApiKey, System.nanoTime());
+        order.intervalMillis = unconfirmedInterval;
+
+        synchronized( wheel ) {
+            if( closed ) {
+                throw new IllegalStateException("The poller is closed");
+            }
+            if( tracked.putIfAbsent(orderApiKey, order) != null ) {
+                return;
+            }
+            finished.remove(orderApiKey);
+
+            schedule(order, 0);
+            startTicker();
+        }
+    }
+
+    /**
+     * Stops polling the statuses of an order
+     *
+     * @param orderApiKey The api key of the order
+     */
+    public void untrack(String orderApiKey) {
+        Tracked order = tracked.remove(orderApiKey);
+
+        if( order != null ) {
+            synchronized( wheel ) {
+                order.cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for the new statuses of every tracked order
+     *
+     * @param listener The listener
+     */
+    public void addListener(OrderStatusListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener The listener
+     */
+    public void removeListener(OrderStatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Checks whether an order is being polled
+     *
+     * @param orderApiKey The api key of the order
+     *
+     * @return true if the order is polled
+     */
+    public boolean isTracking(String orderApiKey) {
+        return tracked.containsKey(orderApiKey);
+    }
+
+    /**
+     * Checks whether an order stopped being polled by itself (it reached a
+     * terminal status or the tracking limit) within the retention period
+     *
+     * @param orderApiKey The api key of the order
+     *
+     * @return true if the order's final statuses are retained
+     */
+    public boolean isFinished(String orderApiKey) {
+        synchronized( wheel ) {
+            return finishedOrder(orderApiKey) != null;
+        }
+    }
+
+    /**
+     * Gets the statuses of a tracked order as of its last poll, or the final
+     * statuses of an order that finished within the retention period
+     *
+     * @param orderApiKey The api key of the order
+     *
+     * @return The statuses, which are empty if the order is not tracked or
+     *         retained, or has not been polled yet
+     */
+    public List<OrderStatus> getStatuses(String orderApiKey) {
+        Tracked order = tracked.get(orderApiKey);
+
+        if( order == null ) {
+            synchronized( wheel ) {
+                order = finishedOrder(orderApiKey);
+            }
+        }
+
+        return (order == null) ? Collections.<OrderStatus>emptyList() : order.statuses;
+    }
+
+    /**
+     * Gets the latest status of a tracked order as of its last poll, or the
+     * final status of an order that finished within the retention period
+     *
+     * @param orderApiKey The api key of the order
+     *
+     * @return The latest status, or null if the order is not tracked or
+     *         retained, or has not been polled yet
+     */
+    public OrderStatus getLatestStatus(String orderApiKey) {
+        return latest(getStatuses(orderApiKey));
+    }
+
+    /**
+     * Stops polling every order and stops the poller's threads
+     */
+    @Override
+    public void close() {
+        synchronized( wheel ) {
+            closed = true;
+            tracked.clear();
+            finished.clear();
+            wheel.forEach(Queue::clear);
+            due.clear();
+            wheel.notifyAll();
+        }
+
+        pollers.shutdownNow();
+    }
+
+    /**
+     * Stops polling an order and retains its statuses. Must hold the wheel lock
+     */
+    private void finish(Tracked order) {
+        tracked.remove(order.orderApiKey, order);
+        order.cancelled = true;
+
+        order.finishedAt = System.nanoTime();
+        finished.remove(order.orderApiKey);
+        finished.put(order.orderApiKey, order);
+
+        Iterator<Tracked> oldest = finished.values().iterator();
+        while( oldest.hasNext() ) {
+            Tracked next = oldest.next();
+
+            if( finished.size() <= MAX_FINISHED && !expired(next) ) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Gets a finished order if it is still retained. Must hold the wheel lock
+     */
+    private Tracked finishedOrder(String orderApiKey) {
+        Tracked order = finished.get(orderApiKey);
+
+        if( order != null && expired(order) ) {
+            finished.remove(orderApiKey);
+            return null;
+        }
+
+        return order;
+    }
+
+    private boolean expired(Tracked finishedOrder) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - finishedOrder.finishedAt) > retention;
+    }
+
+    /**
+     * Schedules an order to be polled after a delay. Must hold the wheel lock
+     */
+    private void schedule(Tracked order, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+
+        order.remainingRounds = (int) ((ticks - 1) / WHEEL_SIZE);
+        wheel.get((int) ((nextTick + ticks - 1) % WHEEL_SIZE)).add(order);
+    }
+
+    /**
+     * Starts the ticker thread if it isn't running. Must hold the wheel lock
+     */
+    private void startTicker() {
+        if( ticker != null ) {
+            return;
+        }
+
+        ticker = new Thread(this::runTicker, "eatstreet-status-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private void runTicker() {
+        synchronized( wheel ) {
+            // Ticks are timed from when tick 0 would have been, so a restarted ticker resumes right away
+            long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(nextTick * TICK_MILLIS);
+
+            while( !closed ) {
+                long wait = TimeUnit.NANOSECONDS.toMillis(start - System.nanoTime()) + nextTick * TICK_MILLIS;
+
+                if( wait > 0 ) {
+                    try {
+                        wheel.wait(wait);
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+
+                advance();
+
+                // The thread stops once nothing is tracked and is restarted by track()
+                if( tracked.isEmpty() && due.isEmpty() ) {
+                    ticker = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the orders due on the current tick to the due queue and releases
+     * as many due polls as the rate allows. Must hold the wheel lock
+     */
+    private void advance() {
+        Iterator<Tracked> slot = wheel.get((int) (nextTick % WHEEL_SIZE)).iterator();
+        nextTick++;
+
+        while( slot.hasNext() ) {
+            Tracked order = slot.next();
+
+            if( order.cancelled ) {
+                slot.remove();
+            }
+            else if( order.remainingRounds > 0 ) {
+                order.remainingRounds--;
+            }
+            else {
+                slot.remove();
+                due.add(order);
+            }
+        }
+
+        // Polls not released on this tick wait for the next one, in order
+        tokens = Math.min(tokens + pollsPerSecond * TICK_MILLIS / 1000.0, Math.max(1, pollsPerSecond));
+
+        while( tokens >= 1 && !due.isEmpty() ) {
+            Tracked order = due.poll();
+            if( order.cancelled ) {
+                continue;
+            }
+
+            tokens--;
+            pollers.execute(() -> poll(order));
+        }
+    }
+
+    private void poll(Tracked order) {
+        List<OrderStatus> current = null;
+        List<OrderStatus> added = Collections.emptyList();
+        long delay;
+
+        try {
+            current = Order.fetchOrderStatus(order.orderApiKey);
+            added = unseen(order, current);
+            polls.increment();
+        }
+        catch(EatStreetApiException | RuntimeException e) {
+            polls.increment();
+            failures.increment();
+
+            // Orders the API doesn't know stop being polled, but their last
+            // statuses are retained; other failures are retried later
+            if( e instanceof EatStreetApiException && ((EatStreetApiException) e).getHttpStatus() == 404 ) {
+                synchronized( wheel ) {
+                    if( !order.cancelled && !closed ) {
+                        finish(order);
+                    }
+                }
+                return;
+            }
+        }
+
+        synchronized( wheel ) {
+            if( order.cancelled || closed ) {
+                return;
+            }
+
+            if( current == null ) {
+                // Back off after a failure as if nothing changed
+                delay = grow(order);
+            }
+            else if( !added.isEmpty() ) {
+                changes.increment();
+                order.statuses = Collections.unmodifiableList(new ArrayList<>(current));
+
+                String status = normalize(latest(current));
+                if( TERMINAL_STATUSES.contains(status) ) {
+                    finish(order);
+                    delay = -1;
+                }
+                else {
+                    order.confirmed |= CONFIRMED_STATUSES.contains(status);
+                    order.intervalMillis = order.confirmed ? confirmedInterval : unconfirmedInterval;
+                    delay = order.intervalMillis;
+                }
+            }
+            else {
+                delay = grow(order);
+            }
+
+            if( delay >= 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - order.trackedAt) > trackingLimit ) {
+                finish(order);
+                delay = -1;
+            }
+
+        }
+
+        // The order's next poll is only scheduled once its statuses have been
+        // delivered, so listeners receive an order's statuses one poll at a
+        // time and in order
+        for(OrderStatus status : added) {
+            for(OrderStatusListener listener : listeners) {
+                try {
+                    listener.statusAdded(order.orderApiKey, status);
+                }
+                catch(RuntimeException e) {
+                    // A failing listener must not stop the order from being polled
+                }
+            }
+        }
+
+        if( delay >= 0 ) {
+            synchronized( wheel ) {
+                if( !order.cancelled && !closed ) {
+                    schedule(order, delay);
+                    startTicker();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the statuses of a poll that weren't seen by earlier polls of the
+     * order, by status and date, and marks them seen
+     */
+    private static List<OrderStatus> unseen(Tracked order, List<OrderStatus> statuses) {
+        List<OrderStatus> added = new ArrayList<>(2);
+
+        for(OrderStatus status : statuses) {
+            if( order.seen.add(status.getStatus() + '@' + dateOf(status)) ) {
+                added.add(status);
+            }
+        }
+
+        added.sort(Comparator.comparingInt(OrderStatusPoller::dateOf));
+        return added;
+    }
+
+    /**
+     * Grows the interval of an order that didn't change. Must hold the wheel lock
+     */
+    private long grow(Tracked order) {
+        long max = order.confirmed ? confirmedMaxInterval : unconfirmedMaxInterval;
+        order.intervalMillis = Math.min(max, order.intervalMillis + order.intervalMillis / 2);
+
+        return order.intervalMillis;
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Gets the poller shared by the library, which sends at most 5 status
+     * requests per second with at most 4 in flight
+     *
+     * @return The shared poller
+     */
+    public static synchronized OrderStatusPoller getShared() {
+        if( shared == null ) {
+            shared = new OrderStatusPoller(5, 4);
+        }
+
+        return shared;
+    }
+
+    /**
+     * Checks whether a status means the order will not change again
+     *
+     * @param status The status
+     *
+     * @return true if the status is terminal
+     */
+    public static boolean isTerminal(OrderStatus status) {
+        return TERMINAL_STATUSES.contains(normalize(status));
+    }
+
+    /**
+     * Gets the most recent of a list of statuses
+     */
+    static OrderStatus latest(List<OrderStatus> statuses) {
+        OrderStatus latest = null;
+
+        for(OrderStatus status : statuses) {
+            if( latest == null || dateOf(status) >= dateOf(latest) ) {
+                latest = status;
+            }
+        }
+
+        return latest;
+    }
+
+    private static int dateOf(OrderStatus status) {
+        return (status.getDate() != null) ? status.getDate() : 0;
+    }
+
+    private static String normalize(OrderStatus status) {
+        if( status == null || status.getStatus() == null ) {
+            return "";
+        }
+
+        return status.getStatus().trim().toUpperCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+    }
+}
@@ -0,0 +1,361 @@
+package io.github.smyles96.eatstreet.model.order;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.model.menu.Customization;
+import io.github.smyles96.eatstreet.model.menu.CustomizationGroup;
+import io.github.smyles96.eatstreet.model.menu.MenuCategory;
+import io.github.smyles96.eatstreet.model.menu.MenuItem;
+import io.github.smyles96.eatstreet.model.restaurant.OrderType;
+import io.github.smyles96.eatstreet.model.restaurant.Restaurant;
+import io.github.smyles96.eatstreet.model.user.CreditCard;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.Deadline;
+import io.github.smyles96.eatstreet.util.http.RequestPriority;
+
+/**
+ * Validates batches of orders, such as the orders of a catering cart, with
+ * their restaurants concurrently.
+ *
+ * Each order is first checked locally: it must name a restaurant, an order
+ * method and payment method, hold items, and have an address when delivered
+ * and a usable card when paid by card. Orders that fail a local check are
+ * never sent, and the rest are validated with
+ * {@link Restaurant#validateOrder(Order)}, at most a given number at once per
+ * batch and at most 8 at once across all batches, on a shared pool. The
+ * validations run under the deadline and request priority of the calling
+ * thread.
+ * Whether the items and customization choices are on the menu is left to the
+ * EatStreet API, since the cached menu may be out of date;
+ * {@link #precheck(Order, List)} can still be used to warn about them early.
+ *
+ * Validating a cart:
+ * <pre>{@code
+ * List<CompletableFuture<Order>> results = OrderValidator.validateAll(orders, 8);
+ *
+ * // Each result completes as soon as its order is validated
+ * results.forEach(result -> result.whenComplete((order, error) -> {
+ *     if( error != null ) {
+ *         System.out.println(error.getMessage());
+ *     }
+ * }));
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public final class OrderValidator {
+
+    /**
+     * An order waiting to be validated, and its result
+     */
+    private static final class Check {
+        private final Order order;
+        private final CompletableFuture<Order> result;
+
+        private Check(Order order, CompletableFuture<Order> result) {
+            this.order = order;
+            this.result = result;
+        }
+    }
+
+    /* STATIC FIELDS */
+
+    // Orders are validated on one small pool shared by every batch; its
+    // threads exit when idle
+    private static final int VALIDATOR_THREADS = 8;
+    private static final int MAX_QUEUED_BATCHES = 1024;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadPoolExecutor VALIDATOR = newValidator();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private OrderValidator() {}
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Validates a batch of orders concurrently. Each order is filled with its
+     * prices as it is validated, as by {@link Restaurant#validateOrder(Order)}
+     *
+     * @param orders The orders to validate
+     * @param maxConcurrent The most orders validated at once
+     *
+     * @return The result of each order, in the order given. A result completes
+     *         with its validated order, or exceptionally with an
+     *         EatStreetApiException if the order is invalid or couldn't be
+     *         validated
+     */
+    public static List<CompletableFuture<Order>> validateAll(List<Order> orders, int maxConcurrent) {
+        if( maxConcurrent < 1 ) {
+            throw new IllegalArgumentException("At least one order must be validated at a time");
+        }
+
+        Deadline deadline = Deadline.current();
+        RequestPriority priority = RequestPriority.current();
+
+        List<CompletableFuture<Order>> results = new ArrayList<>(orders.size());
+        Queue<Check> queue = new ConcurrentLinkedQueue<>();
+
+        for(Order order : orders) {
+            CompletableFuture<Order> result = new CompletableFuture<>();
+            results.add(result);
+
+            // Orders failing the local checks are never queued
+            List<String> problems = precheck(order);
+            if( !problems.isEmpty() ) {
+                result.completeExceptionally(invalid(order, problems));
+            }
+            else {
+                queue.add(new Check(order, result));
+            }
+        }
+
+        // Each worker validates the batch's orders one after another, so the
+        // batch never has more than maxConcurrent validations in flight
+        int workers = Math.min(maxConcurrent, queue.size());
+
+        for(int i = 0; i < workers; i++) {
+            try {
+                VALIDATOR.execute(() -> validateQueued(queue, deadline, priority));
+            }
+            catch(RejectedExecutionException e) {
+                // The workers already started validate the rest of the batch
+                if( i == 0 ) {
+                    failQueued(queue);
+                }
+                break;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Checks an order for problems that can be found without the EatStreet
+     * API or the restaurant's menu
+     *
+     * @param order The order to check
+     *
+     * @return A description of each problem found; empty if there are none
+     */
+    public static List<String> precheck(Order order) {
+        List<String> problems = new ArrayList<>();
+
+        if( order.getRestaurantApiKey() == null ) {
+            problems.add("The order has no restaurant");
+        }
+
+        if( order.getItems() == null || order.getItems().isEmpty() ) {
+            problems.add("The order has no items");
+        }
+
+        if( order.getMethod() == null ) {
+            problems.add("The order has no method");
+        }
+        else if( order.getMethod().equals(OrderType.DELIVERY.toString()) ) {
+            if( order.getAddress() == null ) {
+                problems.add("A delivery order needs an address");
+            }
+        }
+        else if( !order.getMethod().equals(OrderType.PICKUP.toString()) ) {
+            problems.add("Unknown order method: " + order.getMethod());
+        }
+
+        if( order.getPayment() == null ) {
+            problems.add("The order has no payment method");
+        }
+        else if( order.getPayment().equals(PaymentMethod.CARD.toString()) ) {
+            problems.addAll(checkCard(order.getCard()));
+        }
+        else if( !order.getPayment().equals(PaymentMethod.CASH.toString()) ) {
+            problems.add("Unknown payment method: " + order.getPayment());
+        }
+
+        if( order.getTip() != null && order.getTip() < 0 ) {
+            problems.add("The tip can't be negative");
+        }
+
+        return problems;
+    }
+
+    /**
+     * Checks that an order's items and customization choices are on its
+     * restaurant's menu. The menu from {@link Restaurant#getMenu()} may be
+     * served from the cache up to an hour old, so a problem found here is a
+     * warning; only the EatStreet API can say the order is invalid
+     *
+     * @param order The order to check
+     * @param menu The menu of the order's restaurant
+     *
+     * @return A description of each problem found; empty if there are none
+     */
+    public static List<String> precheck(Order order, List<MenuCategory> menu) {
+        List<String> problems = new ArrayList<>();
+        if( order.getItems() == null ) {
+            return problems;
+        }
+
+        Map<String, MenuItem> menuItems = new HashMap<>();
+        for(MenuCategory category : menu) {
+            if( category.getItems() != null ) {
+                category.getItems().forEach(item -> menuItems.put(item.getApiKey(), item));
+            }
+        }
+
+        for(OrderItem item : order.getItems()) {
+            MenuItem menuItem = menuItems.get(item.getApiKey());
+
+            if( menuItem == null ) {
+                problems.add(String.format("%s (%s) is not on the menu", item.getName(), item.getApiKey()));
+                continue;
+            }
+
+            // Choices can only be checked on a menu that includes them
+            if( item.getCustomizationChoices() == null || item.getCustomizationChoices().isEmpty()
+                || menuItem.getCustomizationGroups() == null ) {
+                continue;
+            }
+
+            Set<String> choices = choicesOf(menuItem);
+            for(OrderCustomizationChoice choice : item.getCustomizationChoices()) {
+                if( !choices.contains(choice.getApiKey()) ) {
+                    problems.add(String.format("%s (%s) is not a choice for %s", choice.getDetails(), choice.getApiKey(), item.getName()));
+                }
+            }
+        }
+
+        return problems;
+    }
+
+    /**
+     * Checks that a card payment can be made with a card: either a card saved
+     * with the EatStreet API, or a new card with its number, cvv and
+     * expiration date
+     */
+    private static List<String> checkCard(CreditCard card) {
+        List<String> problems = new ArrayList<>();
+
+        if( card == null ) {
+            problems.add("A card payment needs a card");
+            return problems;
+        }
+
+        // A saved card is charged by its api key alone
+        if( !isBlank(card.getApiKey()) ) {
+            return problems;
+        }
+
+        if( isBlank(card.getCardNumber()) ) {
+            problems.add("A new card needs a card number");
+        }
+
+        if( isBlank(card.getCvv()) ) {
+            problems.add("A new card needs a cvv");
+        }
+
+        if( isBlank(card.getExpirationMonth()) || isBlank(card.getExpirationYear()) ) {
+            problems.add("A new card needs an expiration date");
+        }
+
+        return problems;
+    }
+
+    /**
+     * Validates an order with the EatStreet API
+     */
+    private static Order validate(Order order) throws EatStreetApiException {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setApiKey(order.getRestaurantApiKey());
+
+        return restaurant.validateOrder(order);
+    }
+
+    private static void validateQueued(Queue<Check> queue, Deadline deadline, RequestPriority priority) {
+        Deadline.Scope deadlineScope = (deadline == null) ? null : deadline.activate();
+        RequestPriority.Scope priorityScope = (priority == null) ? null : priority.activate();
+
+        try {
+            Check check;
+            while( (check = queue.poll()) != null ) {
+                try {
+                    check.result.complete(validate(check.order));
+                }
+                catch(EatStreetApiException | RuntimeException e) {
+                    check.result.completeExceptionally(e);
+                }
+            }
+        }
+        finally {
+            if( priorityScope != null ) {
+                priorityScope.close();
+            }
+            if( deadlineScope != null ) {
+                deadlineScope.close();
+            }
+        }
+    }
+
+    private static void failQueued(Queue<Check> queue) {
+        Check check;
+        while( (check = queue.poll()) != null ) {
+            check.result.completeExceptionally(EatStreetApiException.noCapacity(ApiEndpoint.VALIDATE_ORDER, "POST",
+                "Too many order validations are queued"));
+        }
+    }
+
+    private static ThreadPoolExecutor newValidator() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(VALIDATOR_THREADS, VALIDATOR_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_QUEUED_BATCHES), runnable -> {
+                Thread thread = new Thread(runnable, "eatstreet-order-validator-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static Set<String> choicesOf(MenuItem menuItem) {
+        Set<String> choices = new HashSet<>();
+
+        for(CustomizationGroup group : menuItem.getCustomizationGroups()) {
+            if( group.getCustomizations() == null ) {
+                continue;
+            }
+
+            for(Customization customization : group.getCustomizations()) {
+                if( customization.getCustomizationChoices() != null ) {
+                    customization.getCustomizationChoices().forEach(choice -> choices.add(choice.getApiKey()));
+                }
+            }
+        }
+
+        return choices;
+    }
+
+    private static EatStreetApiException invalid(Order order, List<String> problems) {
+        return EatStreetApiException.clientError(ApiEndpoint.VALIDATE_ORDER, String.format("The order for restaurant %s is invalid:\n\t%s",
+                                                 order.getRestaurantApiKey(), String.join("\n\t", problems)));
+    }
+}
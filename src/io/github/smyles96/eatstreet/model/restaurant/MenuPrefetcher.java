@@ -0,0 +1,317 @@
+package io.github.smyles96.eatstreet.model.restaurant;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import io.github.smyles96.eatstreet.util.cache.StaleList;
+import io.github.smyles96.eatstreet.util.http.Deadline;
+import io.github.smyles96.eatstreet.util.http.RequestPriority;
+
+/**
+ * Fetches the menus of the top results of each restaurant search in the
+ * background, so that opening one of them is usually served from the menu
+ * cache.
+ *
+ * Prefetching is opt-in: once a prefetcher is made active, every search made
+ * with EatStreetAPI#findRestaurants prefetches the menus of its top K
+ * results at {@link RequestPriority#PREFETCH} priority, so prefetches never
+ * delay interactive requests. Prefetches run on a small pool of their own,
+ * shared by every prefetcher, and the oldest waiting prefetches are dropped
+ * when searches come in faster than their menus can be fetched. Menus already
+ * in the cache are not fetched again, and searches served stale while the
+ * EatStreet API is failing are not prefetched for.
+ *
+ * K adapts to how users actually browse. Each menu opened with
+ * {@link Restaurant#getMenu()} is matched to the rank it had in a recent
+ * search, and the prefetcher keeps the rate at which each rank is opened per
+ * search (decayed, so recent behavior counts most). K is the deepest rank
+ * opened at least the minimum click rate of the time, between 1 and the
+ * maximum K. Until enough searches are seen the initial K is used.
+ * <pre>{@code
+ * MenuPrefetcher.setActive(new MenuPrefetcher(3, 8, 0.1));
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class MenuPrefetcher {
+
+    /**
+     * A restaurant from a recent search, and whether its menu was prefetched
+     */
+    private static final class Ranked {
+        final int rank;
+        final boolean prefetched;
+
+        Ranked(int rank, boolean prefetched) {
+            this.rank = rank;
+            this.prefetched = prefetched;
+        }
+    }
+
+    /* STATIC FIELDS */
+    private static volatile MenuPrefetcher active;
+
+    // The weight kept by past searches at each new search
+    private static final double DECAY = 0.99;
+
+    // Searches seen before K adapts
+    private static final int WARM_UP_SEARCHES = 20;
+
+    // Restaurants of recent searches remembered to match opened menus with
+    private static final int RECENT_RESULTS = 1024;
+
+    private static final int FETCH_CONCURRENCY = 2;
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+
+    // The most prefetch batches waiting for a thread; older ones are dropped
+    private static final int MAX_QUEUED_FETCHES = 64;
+    private static final AtomicInteger FETCH_THREAD_COUNT = new AtomicInteger();
+    private static final ThreadPoolExecutor FETCHER = newFetcher();
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final int initialK;
+    private final int maxK;
+    private final double minClickRate;
+
+    // Guarded by this
+    private final double[] clicks;
+    private double searches;
+    private long searchCount;
+    private int k;
+
+    // Guarded by recent
+    private final Map<String, Ranked> recent = new LinkedHashMap<String, Ranked>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Ranked> eldest) {
+            return size() > RECENT_RESULTS;
+        }
+    };
+
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder openedPrefetched = new LongAdder();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new prefetcher
+     *
+     * @param initialK The number of top results prefetched until enough searches are seen
+     * @param maxK The most top results ever prefetched
+     * @param minClickRate The rate at which a rank must be opened per search to be prefetched
+     */
+    public MenuPrefetcher(int initialK, int maxK, double minClickRate) {
+        if( maxK < 1 || initialK < 1 || initialK > maxK || minClickRate <= 0 || minClickRate > 1 ) {
+            throw new IllegalArgumentException("Invalid prefetch limits");
+        }
+
+        this.initialK = initialK;
+        this.maxK = maxK;
+        this.minClickRate = minClickRate;
+        this.clicks = new double[maxK];
+        this.k = initialK;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Gets the number of top results currently prefetched per search
+     *
+     * @return K
+     */
+    public synchronized int getK() {
+        return k;
+    }
+
+    /**
+     * Gets the rate at which the result at a rank is opened per search
+     *
+     * @param rank The rank, starting at 1
+     *
+     * @return The decayed click-through rate of the rank
+     */
+    public synchronized double getClickRate(int rank) {
+        return (rank < 1 || rank > maxK || searches == 0) ? 0 : clicks[rank - 1] / searches;
+    }
+
+    /**
+     * Gets the number of menus prefetched
+     *
+     * @return The number of menus prefetched
+     */
+    public long getPrefetchCount() {
+        return prefetched.sum();
+    }
+
+    /**
+     * Gets the number of menus opened from recent search results
+     *
+     * @return The number of menus opened
+     */
+    public long getOpenCount() {
+        return opened.sum();
+    }
+
+    /**
+     * Gets the number of menus opened from recent search results that had
+     * been prefetched
+     *
+     * @return The number of prefetched menus opened
+     */
+    public long getPrefetchHitCount() {
+        return openedPrefetched.sum();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Records the results of a search and prefetches the menus of its top K
+     *
+     * @param results The results, best ranked first
+     */
+    public void searched(List<Restaurant> results) {
+        if( results.isEmpty() || results instanceof StaleList ) {
+            return;
+        }
+
+        int prefetchCount;
+        synchronized( this ) {
+            searches = searches * DECAY + 1;
+            for(int rank = 0; rank < maxK; rank++) {
+                clicks[rank] *= DECAY;
+            }
+
+            searchCount++;
+            adaptK();
+            prefetchCount = Math.min(k, results.size());
+        }
+
+        List<String> apiKeys = new ArrayList<>(prefetchCount);
+        synchronized( recent ) {
+            for(int rank = 0; rank < Math.min(maxK, results.size()); rank++) {
+                String apiKey = results.get(rank).getApiKey();
+                recent.put(apiKey, new Ranked(rank, rank < prefetchCount));
+
+                if( rank < prefetchCount ) {
+                    apiKeys.add(apiKey);
+                }
+            }
+        }
+
+        // The batch is bound by its own timeout alone, not by the deadline of
+        // the search that triggered it
+        Deadline.Scope deadlineScope = Deadline.clear();
+        RequestPriority.Scope scope = RequestPriority.PREFETCH.activate();
+        try {
+            Restaurant.fetchMenus(apiKeys, FETCH_CONCURRENCY, FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS, FETCHER);
+        }
+        finally {
+            scope.close();
+            deadlineScope.close();
+        }
+        prefetched.add(apiKeys.size());
+    }
+
+    /**
+     * Records that a restaurant's menu was opened, and adapts K to the rank
+     * it had in a recent search
+     *
+     * @param restaurantApiKey The api key of the restaurant
+     */
+    public void opened(String restaurantApiKey) {
+        Ranked ranked;
+        synchronized( recent ) {
+            // A menu counts as a click-through only the first time it is opened
+            ranked = recent.remove(restaurantApiKey);
+        }
+
+        if( ranked == null ) {
+            return;
+        }
+
+        opened.increment();
+        if( ranked.prefetched ) {
+            openedPrefetched.increment();
+        }
+
+        synchronized( this ) {
+            clicks[ranked.rank] += 1;
+            adaptK();
+        }
+    }
+
+    /**
+     * Sets K to the deepest rank opened at least the minimum click rate of
+     * the time, once enough searches are seen
+     */
+    private void adaptK() {
+        if( searchCount < WARM_UP_SEARCHES ) {
+            return;
+        }
+
+        int deepest = 1;
+        for(int rank = 0; rank < maxK; rank++) {
+            if( clicks[rank] / searches >= minClickRate ) {
+                deepest = rank + 1;
+            }
+        }
+
+        k = deepest;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("MenuPrefetcher [k=%d, initialK=%d, maxK=%d, searches=%d, prefetched=%d, opened=%d, hits=%d]",
+                             k, initialK, maxK, searchCount, getPrefetchCount(), getOpenCount(), getPrefetchHitCount());
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Makes a prefetcher prefetch for every restaurant search
+     *
+     * @param prefetcher The prefetcher, or null to stop prefetching
+     */
+    public static void setActive(MenuPrefetcher prefetcher) {
+        active = prefetcher;
+    }
+
+    /**
+     * Gets the prefetcher that prefetches for every restaurant search
+     *
+     * @return The active prefetcher, or null if prefetching is off
+     */
+    public static MenuPrefetcher getActive() {
+        return active;
+    }
+
+    private static ThreadPoolExecutor newFetcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(FETCH_CONCURRENCY, FETCH_CONCURRENCY, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_FETCHES), runnable -> {
+                Thread thread = new Thread(runnable, "eatstreet-menu-prefetch-" + FETCH_THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+}
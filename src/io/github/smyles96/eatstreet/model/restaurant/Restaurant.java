@@ -1,14 +1,32 @@
 package io.github.smyles96.eatstreet.model.restaurant;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import com.google.gson.JsonArray;
@@ -18,11 +36,19 @@ import com.google.gson.JsonParser;
 import io.github.smyles96.eatstreet.exception.EatStreetApiException;
 import io.github.smyles96.eatstreet.model.EatStreetModel;
 import io.github.smyles96.eatstreet.model.menu.MenuCategory;
+import io.github.smyles96.eatstreet.model.menu.MenuItem;
 import io.github.smyles96.eatstreet.model.order.Order;
 import io.github.smyles96.eatstreet.model.user.Address;
+import io.github.smyles96.eatstreet.util.cache.LastKnownGood;
+import io.github.smyles96.eatstreet.util.cache.RefreshingCache;
+import io.github.smyles96.eatstreet.util.cache.StaleList;
 import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+import io.github.smyles96.eatstreet.util.http.Deadline;
+import io.github.smyles96.eatstreet.util.http.EatStreetRequest;
 import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
+import io.github.smyles96.eatstreet.util.http.RequestPriority;
 import io.github.smyles96.eatstreet.util.json.JsonConverter;
+import io.github.smyles96.eatstreet.util.json.JsonStreamEntity;
 
 /**
  * This model class represents a restaurant on the EatStreet API.
@@ -72,9 +98,66 @@ import io.github.smyles96.eatstreet.util.json.JsonConverter;
  * @author smyles96
  */
 public class Restaurant extends EatStreetModel implements Serializable {
+
+    /**
+     * An order sent under an idempotency key: the digest of the body it was
+     * sent with, and the outcome of the send
+     */
+    private static final class Submission {
+        private final byte[] bodyDigest;
+        private final CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        
+        private Submission(byte[] bodyDigest) {
+            this.bodyDigest = bodyDigest;
+        }
+    }
     
     private static final long serialVersionUID = 1L;
     
+    /* STATIC FIELDS */
+    
+    // Menus of every restaurant, shared by all Restaurant objects. Menus are
+    // fresh for 10 minutes and served for up to an hour more while refreshed.
+    // Menus loaded without customizations are keyed apart (see menuKey). At
+    // most the 256 most recently used menus are kept in memory
+    private static final RefreshingCache<String, List<MenuCategory>> MENU_CACHE =
+        new RefreshingCache<>("menu", Restaurant::fetchMenu, 10, 60, TimeUnit.MINUTES, 2, 256);
+    
+    // The last menus retrieved, served if the EatStreet API fails while a
+    // menu is too old to be served from the cache
+    private static final LastKnownGood<String, MenuCategory> MENU_FALLBACK = new LastKnownGood<>(ApiEndpoint.RESTAURANT_MENU, 1024);
+    
+    // Recent order submissions by idempotency key: the response of a sent
+    // order, the final rejection of a failed one, or the pending result of
+    // one being sent, each with the digest of the body it was sent with. The
+    // least recently used are dropped first
+    private static final int SUBMISSION_TABLE_SIZE = 1024;
+    private static final Map<String, Submission> SUBMISSIONS =
+        new LinkedHashMap<String, Submission>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Submission> eldest) {
+                return size() > SUBMISSION_TABLE_SIZE;
+            }
+        };
+    
+    // How many times a send is attempted when no capacity was available to
+    // send it with, and the delay before the first retry (doubled for each retry)
+    private static final int SEND_ATTEMPTS = 3;
+    private static final long SEND_RETRY_DELAY_MILLIS = 250;
+    
+    // Menus fetched by fetchMenus are fetched on one small pool shared by
+    // every caller; its threads exit when idle
+    private static final int MENU_FETCH_THREADS = 8;
+    private static final int MAX_QUEUED_MENU_FETCHES = 1024;
+    private static final AtomicInteger MENU_FETCH_THREAD_COUNT = new AtomicInteger();
+    private static final ThreadPoolExecutor MENU_FETCHER = newMenuFetcher();
+    
+    // Whether menus are loaded without their items' customizations
+    private static volatile boolean lazyCustomizations = false;
+    private static final String LAZY_MENU_SUFFIX = "#lazy";
+    
     /*
      * INSTANCE VARIABLES
      */
@@ -106,8 +189,6 @@ public class Restaurant extends EatStreetModel implements Serializable {
     private String timezone;
     private List<DeliveryZone> zones;
     
-    private transient List<MenuCategory> menu;
-    
     /*
      * CONSTRUCTOR(S)
      */
@@ -345,30 +426,26 @@ public class Restaurant extends EatStreetModel implements Serializable {
     }
     
     /**
-     * Get the menu for the restaurant
+     * Get the menu for the restaurant. Menus are cached and shared by every
+     * Restaurant object with the same api key (see {@link #getMenuCache()}).
+     * If the EatStreet API is failing, the last menu retrieved may be returned
+     * as a {@link StaleList}
      * 
      * @return A List of MenuCategory objects representing the menu
      * 
      * @throws EatStreetApiException If a connection or parsing error occurs
      */
     public List<MenuCategory> getMenu() throws EatStreetApiException {
-        // If the menu is null, it needs to be retrieved from the EatStreet API
-        if( menu == null ) {
-            // Add query parameter to include item customization information
-            List<NameValuePair> getParams = new ArrayList<>();
-            getParams.add( new BasicNameValuePair("includeCustomizations", "true") );
-            
-            try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_MENU, getParams, this.getApiKey())) {
-                JsonArray json = JsonParser.parseReader(response).getAsJsonArray();
-                menu = Arrays.asList(JsonConverter.fromJson(json, MenuCategory[].class));
-            }
-            catch (IOException e) {
-                throw new EatStreetApiException("Unable to close the HTTP response object");
-            }
-            
+        String apiKey = this.getApiKey();
+        
+        MenuPrefetcher prefetcher = MenuPrefetcher.getActive();
+        if( prefetcher != null ) {
+            prefetcher.opened(apiKey);
         }
         
-        return menu;
+        String menuKey = menuKey(apiKey);
+        
+        return MENU_FALLBACK.fetch(menuKey, () -> MENU_CACHE.get(menuKey));
     }
     
     
@@ -412,7 +489,8 @@ public class Restaurant extends EatStreetModel implements Serializable {
     }
     
     /**
-     * Send an order to this restaurant
+     * Send an order to this restaurant. The send is never retried; see
+     * {@link #sendOrder(Order, String)} to send under an idempotency key
      * 
      * @param order The order to send to the restaurant
      * 
@@ -424,33 +502,126 @@ public class Restaurant extends EatStreetModel implements Serializable {
         return this.sendOrderToApi(order, false);
     }
     
-    private Order sendOrderToApi(Order order, boolean validateOrder) throws EatStreetApiException {
-        // The send order REST endpoint requires a recipient json object within
-        // the request's json payload; this parameter specifies the user making
-        // the order.
-        JsonObject recipientParameter = new JsonObject();
-        recipientParameter.addProperty("apiKey", EatStreetRequestor.getUserApiKey());
+    /**
+     * Send an order to this restaurant under a client generated idempotency
+     * key, which identifies the order across every attempt to send it from
+     * this process.
+     * 
+     * Sending with a key used recently in this process returns the stored
+     * outcome instead of sending again: the order is filled from the stored
+     * response, or the stored rejection (a 4xx response) is thrown. A send
+     * with a key that is still being sent waits for its outcome. A key is
+     * only ever used for one order: sending a different order (one whose
+     * request body differs) with a key used recently fails with a
+     * {@link EatStreetApiException.Kind#CLIENT_ERROR} and sends nothing.
+     * 
+     * The key never leaves this process; the EatStreet API has no way of
+     * recognizing a resent order. Only sends that provably never left this
+     * process (no capacity was available to send them with) are retried
+     * automatically. After any other failure, such as a timeout, the order
+     * may or may not have been placed: nothing is stored, and a resend with
+     * the same key may place the order twice
+     * 
+     * @param order The order to send to the restaurant
+     * @param idempotencyKey A key unique to this order, such as a random UUID
+     * 
+     * @return The sent order
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs,
+     *         or the key was used recently for a different order
+     */
+    public Order sendOrder(Order order, String idempotencyKey) throws EatStreetApiException {
+        if( idempotencyKey == null || idempotencyKey.isEmpty() ) {
+            throw new IllegalArgumentException("An idempotency key is required");
+        }
         
-        // Add optional parameters to the recipient object
-        String phone = order.getPhone();
-        String firstName = order.getFirstName();
-        String lastName = order.getLastName();
-        if(phone != null) { recipientParameter.addProperty("phone", phone); }
-        if(firstName != null) { recipientParameter.addProperty("firstName", firstName); }
-        if(lastName != null) { recipientParameter.addProperty("lastName", lastName); }
+        HttpEntity payload = this.orderPayload(order);
+        byte[] bodyDigest = digest(payload);
         
-        // Create the order json
-        order.setRestaurantApiKey(this.getApiKey());
-        JsonObject jsonPayload = JsonConverter.toJsonObject(order);
-        jsonPayload.add("recipient", recipientParameter);
+        Submission submission;
+        Submission existing;
+        
+        synchronized( SUBMISSIONS ) {
+            existing = SUBMISSIONS.get(idempotencyKey);
+            submission = (existing != null) ? existing : new Submission(bodyDigest);
+            
+            if( existing == null ) {
+                SUBMISSIONS.put(idempotencyKey, submission);
+            }
+        }
+        
+        if( existing != null ) {
+            if( !MessageDigest.isEqual(existing.bodyDigest, bodyDigest) ) {
+                throw EatStreetApiException.clientError(ApiEndpoint.SEND_ORDER,
+                    "The idempotency key " + idempotencyKey + " was already used for a different order");
+            }
+            
+            JsonObject response = awaitSubmission(existing.result);
+            
+            JsonConverter.populate(response, Order.class, order);
+            return order;
+        }
         
+        try {
+            for(int attempt = 1; ; attempt++) {
+                try {
+                    this.sendOrderToApi(order, false, payload, submission.result);
+                    return order;
+                }
+                catch(EatStreetApiException e) {
+                    if( e.getKind() != EatStreetApiException.Kind.NO_CAPACITY || attempt >= SEND_ATTEMPTS ) {
+                        throw e;
+                    }
+                    
+                    Thread.sleep(SEND_RETRY_DELAY_MILLIS << (attempt - 1));
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            EatStreetApiException interrupted = new EatStreetApiException("Interrupted while retrying the order");
+            
+            forgetSubmission(idempotencyKey, submission, interrupted);
+            throw interrupted;
+        }
+        catch(EatStreetApiException e) {
+            // Only a rejection by the server is kept; after any other failure
+            // the order may or may not have been placed, or may be sent later
+            if( e.getKind() == EatStreetApiException.Kind.CLIENT_ERROR && !e.isRetryable() ) {
+                submission.result.completeExceptionally(e);
+            }
+            else {
+                forgetSubmission(idempotencyKey, submission, e);
+            }
+            
+            throw e;
+        }
+        catch(RuntimeException e) {
+            forgetSubmission(idempotencyKey, submission, e);
+            throw e;
+        }
+    }
+    
+    private Order sendOrderToApi(Order order, boolean validateOrder) throws EatStreetApiException {
+        return this.sendOrderToApi(order, validateOrder, this.orderPayload(order), null);
+    }
+    
+    private Order sendOrderToApi(Order order, boolean validateOrder, HttpEntity jsonPayload, CompletableFuture<JsonObject> submission) throws EatStreetApiException {
         // Select the endpoint to send the request to
         ApiEndpoint endpoint = validateOrder ? ApiEndpoint.VALIDATE_ORDER : ApiEndpoint.SEND_ORDER;
         
-        try(Reader response = EatStreetRequestor.makePostRequest(endpoint, jsonPayload.toString())) {
+        EatStreetRequest request = EatStreetRequestor.createPostRequest(endpoint, jsonPayload);
+        
+        try(Reader response = EatStreetRequestor.execute(request)) {
             // Parse the response as a JSON object
             JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
             
+            // Store the response before filling the order, so waiting and
+            // later sends with the same key can be filled from it
+            if( submission != null ) {
+                submission.complete(json);
+            }
+            
             // Fill the price fields in the order using the response json
             JsonConverter.populate(json, Order.class, order);
             return order;
@@ -460,6 +631,34 @@ public class Restaurant extends EatStreetModel implements Serializable {
         }
     }
     
+    /**
+     * Creates the json payload of an order sent to this restaurant
+     */
+    private HttpEntity orderPayload(Order order) {
+        // The send order REST endpoint requires a recipient json object within
+        // the request's json payload; this parameter specifies the user making
+        // the order (the order's recipient if set, else the current user). It
+        // is appended to the order json as the body is streamed.
+        String userApiKey = (order.getRecipientApiKey() != null) ? order.getRecipientApiKey() : EatStreetRequestor.getUserApiKey();
+        String phone = order.getPhone();
+        String firstName = order.getFirstName();
+        String lastName = order.getLastName();
+        
+        // Create the order json
+        order.setRestaurantApiKey(this.getApiKey());
+        return JsonStreamEntity.of(order, writer -> {
+            writer.name("recipient").beginObject();
+            writer.name("apiKey").value(userApiKey);
+            
+            // Add optional parameters to the recipient object
+            if(phone != null) { writer.name("phone").value(phone); }
+            if(firstName != null) { writer.name("firstName").value(firstName); }
+            if(lastName != null) { writer.name("lastName").value(lastName); }
+            
+            writer.endObject();
+        });
+    }
+    
     /**
      * Get string representation of this restaurant
      */
@@ -497,4 +696,302 @@ public class Restaurant extends EatStreetModel implements Serializable {
         
         return false;
     }
+    
+    /* STATIC METHODS */
+    
+    /**
+     * Waits for the outcome of a send with the same idempotency key
+     */
+    private static JsonObject awaitSubmission(CompletableFuture<JsonObject> submission) throws EatStreetApiException {
+        try {
+            return submission.join();
+        }
+        catch(CompletionException e) {
+            if( e.getCause() instanceof EatStreetApiException ) {
+                throw (EatStreetApiException) e.getCause();
+            }
+            
+            throw new EatStreetApiException("Unable to send the order:\n\t" + e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Removes a send that did not finish with a final outcome from the
+     * submission table, and passes its failure to those waiting on it
+     */
+    private static void forgetSubmission(String idempotencyKey, Submission submission, Exception failure) {
+        synchronized( SUBMISSIONS ) {
+            SUBMISSIONS.remove(idempotencyKey, submission);
+        }
+        
+        submission.result.completeExceptionally(failure);
+    }
+    
+    /**
+     * Computes the SHA-256 digest of a request body, as it would be sent
+     */
+    private static byte[] digest(HttpEntity payload) throws EatStreetApiException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            
+            payload.writeTo(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    digest.update((byte) b);
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    digest.update(b, off, len);
+                }
+            });
+            
+            return digest.digest();
+        }
+        catch(NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        catch(IOException e) {
+            throw new EatStreetApiException("Unable to serialize the order:\n\t" + e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the menus of several restaurants at once (see
+     * {@link #fetchMenus(Collection, int, long, TimeUnit)}), waiting until all
+     * are retrieved or the time is up
+     * 
+     * @param restaurants The restaurants
+     * @param maxConcurrent The most menus fetched from the EatStreet API at once
+     * @param timeout The longest time to spend on all the menus
+     * @param unit The unit of the timeout
+     * 
+     * @return The menus retrieved in time, keyed by restaurant api key in the
+     *         order of the restaurants given. Restaurants whose menu couldn't
+     *         be retrieved are left out
+     */
+    public static Map<String, List<MenuCategory>> getMenus(Collection<Restaurant> restaurants, int maxConcurrent, long timeout, TimeUnit unit) {
+        List<String> apiKeys = restaurants.stream().map(Restaurant::getApiKey).collect(Collectors.toList());
+        Map<String, CompletableFuture<List<MenuCategory>>> results = fetchMenus(apiKeys, maxConcurrent, timeout, unit);
+        
+        // Every fetch gives up by the deadline; this wait is only a backstop
+        try {
+            CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).get(timeout, unit);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException | TimeoutException e) {
+            // Whatever was retrieved is returned
+        }
+        
+        Map<String, List<MenuCategory>> menus = new LinkedHashMap<>();
+        results.forEach((apiKey, result) -> {
+            if( result.isDone() && !result.isCompletedExceptionally() ) {
+                menus.put(apiKey, result.join());
+            }
+        });
+        
+        return menus;
+    }
+    
+    /**
+     * Fetches the menus of several restaurants concurrently, such as those of
+     * the top results of a restaurant search.
+     * 
+     * Menus that can be served from the menu cache are returned at once; only
+     * the missing ones are fetched, at most a given number at a time (and at
+     * most 8 at a time across all callers, on a shared pool). All the
+     * fetches share one deadline (the earlier of the timeout and any deadline
+     * active on the calling thread), and the request priority of the calling
+     * thread. As with {@link #getMenu()}, the last menu retrieved may be
+     * returned as a {@link StaleList} if the EatStreet API is failing
+     * 
+     * @param restaurantApiKeys The api keys of the restaurants
+     * @param maxConcurrent The most menus fetched from the EatStreet API at once
+     * @param timeout The longest time to spend on all the menus
+     * @param unit The unit of the timeout
+     * 
+     * @return The menu of each restaurant, keyed by api key in the order given.
+     *         Each completes as soon as its menu is retrieved, or exceptionally
+     *         with an EatStreetApiException
+     */
+    public static Map<String, CompletableFuture<List<MenuCategory>>> fetchMenus(Collection<String> restaurantApiKeys, int maxConcurrent, long timeout, TimeUnit unit) {
+        return fetchMenus(restaurantApiKeys, maxConcurrent, timeout, unit, MENU_FETCHER);
+    }
+    
+    /**
+     * Fetches the menus of several restaurants concurrently on the given pool,
+     * as by {@link #fetchMenus(Collection, int, long, TimeUnit)}
+     */
+    static Map<String, CompletableFuture<List<MenuCategory>>> fetchMenus(Collection<String> restaurantApiKeys, int maxConcurrent, long timeout, TimeUnit unit,
+                                                                         ThreadPoolExecutor executor) {
+        if( maxConcurrent < 1 ) {
+            throw new IllegalArgumentException("At least one menu must be fetched at a time");
+        }
+        
+        Deadline deadline = Deadline.after(timeout, unit).min(Deadline.current());
+        RequestPriority priority = RequestPriority.current();
+        
+        Map<String, CompletableFuture<List<MenuCategory>>> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        
+        for(String apiKey : restaurantApiKeys) {
+            if( results.containsKey(apiKey) ) {
+                continue;
+            }
+            
+            List<MenuCategory> cached = MENU_CACHE.getIfServable(menuKey(apiKey));
+            results.put(apiKey, (cached != null) ? CompletableFuture.completedFuture(cached) : new CompletableFuture<>());
+            
+            if( cached == null ) {
+                missing.add(apiKey);
+            }
+        }
+        
+        if( missing.isEmpty() ) {
+            return results;
+        }
+        
+        // Each worker fetches the batch's menus one after another, so the
+        // batch never has more than maxConcurrent fetches in flight
+        Queue<String> queue = new ConcurrentLinkedQueue<>(missing);
+        int workers = Math.min(maxConcurrent, missing.size());
+        
+        for(int i = 0; i < workers; i++) {
+            try {
+                executor.execute(() -> fetchQueuedMenus(queue, results, deadline, priority));
+            }
+            catch(RejectedExecutionException e) {
+                // The workers already started fetch the rest of the batch
+                if( i == 0 ) {
+                    failQueuedMenus(queue, results);
+                }
+                break;
+            }
+        }
+        
+        return results;
+    }
+    
+    private static void fetchQueuedMenus(Queue<String> queue, Map<String, CompletableFuture<List<MenuCategory>>> results,
+                                         Deadline deadline, RequestPriority priority) {
+        Deadline.Scope deadlineScope = deadline.activate();
+        RequestPriority.Scope priorityScope = (priority == null) ? null : priority.activate();
+        
+        try {
+            String apiKey;
+            while( (apiKey = queue.poll()) != null ) {
+                CompletableFuture<List<MenuCategory>> result = results.get(apiKey);
+                String menuKey = menuKey(apiKey);
+                
+                try {
+                    result.complete(MENU_FALLBACK.fetch(menuKey, () -> MENU_CACHE.get(menuKey)));
+                }
+                catch(EatStreetApiException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }
+        finally {
+            if( priorityScope != null ) {
+                priorityScope.close();
+            }
+            deadlineScope.close();
+        }
+    }
+    
+    private static void failQueuedMenus(Queue<String> queue, Map<String, CompletableFuture<List<MenuCategory>>> results) {
+        String apiKey;
+        while( (apiKey = queue.poll()) != null ) {
+            results.get(apiKey).completeExceptionally(EatStreetApiException.noCapacity(ApiEndpoint.RESTAURANT_MENU, "GET",
+                "Too many menu fetches are queued"));
+        }
+    }
+    
+    private static ThreadPoolExecutor newMenuFetcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MENU_FETCH_THREADS, MENU_FETCH_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_QUEUED_MENU_FETCHES), runnable -> {
+                Thread thread = new Thread(runnable, "eatstreet-menu-fetch-" + MENU_FETCH_THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        
+        return executor;
+    }
+    
+    /**
+     * Sets whether menus are loaded without their items' customizations.
+     * 
+     * Customizations make up most of a menu, and users look at the
+     * customizations of only a few items. When lazy, a menu holds only its
+     * categories and items (their customization groups are null), which makes
+     * it much smaller to download and parse; the customizations of an item are
+     * loaded when needed with {@link MenuItem#loadCustomizationGroups()}, and
+     * cached. Menus of either kind are cached (in memory, on disk and as last
+     * good results) apart from each other, so a menu of the other kind is
+     * never served
+     * 
+     * @param lazy true to load customizations on demand, false to load them with the menu
+     */
+    public static void setLazyCustomizations(boolean lazy) {
+        lazyCustomizations = lazy;
+    }
+    
+    public static boolean isLazyCustomizations() {
+        return lazyCustomizations;
+    }
+    
+    /**
+     * Gets the cache of restaurant menus used by {@link #getMenu()}
+     * 
+     * @return The menu cache, keyed by restaurant api key; menus loaded without
+     *         customizations are keyed by the api key followed by "#lazy"
+     */
+    public static RefreshingCache<String, List<MenuCategory>> getMenuCache() {
+        return MENU_CACHE;
+    }
+    
+    /**
+     * Gets the key a restaurant's menu is cached under in the current mode.
+     * The mode is part of the key, so a load that started in the other mode
+     * can only ever cache its menu under that mode's key
+     */
+    private static String menuKey(String restaurantApiKey) {
+        return lazyCustomizations ? restaurantApiKey + LAZY_MENU_SUFFIX : restaurantApiKey;
+    }
+    
+    /**
+     * Retrieves a restaurant's menu from the EatStreet API
+     * 
+     * @param menuKey The api key of the restaurant, followed by "#lazy" to
+     *                retrieve the menu without customizations
+     * 
+     * @return The menu's categories
+     * 
+     * @throws EatStreetApiException If a connection or parsing error occurs
+     */
+    private static List<MenuCategory> fetchMenu(String menuKey) throws EatStreetApiException {
+        boolean lazy = menuKey.endsWith(LAZY_MENU_SUFFIX);
+        String restaurantApiKey = lazy ? menuKey.substring(0, menuKey.length() - LAZY_MENU_SUFFIX.length()) : menuKey;
+        
+        // Item customization information is included unless it is loaded on
+        // demand per item
+        List<NameValuePair> getParams = new ArrayList<>();
+        getParams.add( new BasicNameValuePair("includeCustomizations", Boolean.toString(!lazy)) );
+        
+        try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.RESTAURANT_MENU, getParams, restaurantApiKey)) {
+            JsonArray json = JsonParser.parseReader(response).getAsJsonArray();
+            
+            // The menu is shared between callers, so it is made read-only
+            List<MenuCategory> menu = Collections.unmodifiableList(Arrays.asList(JsonConverter.fromJson(json, MenuCategory[].class)));
+            
+            return MENU_FALLBACK.record(menuKey, menu);
+        }
+        catch (IOException e) {
+            throw new EatStreetApiException("Unable to close the HTTP response object");
+        }
+    }
 }
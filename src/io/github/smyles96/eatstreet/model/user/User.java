@@ -3,9 +3,8 @@ package io.github.smyles96.eatstreet.model.user;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import com.google.gson.JsonArray;
+import org.apache.http.HttpEntity;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -13,9 +12,13 @@ import com.google.gson.annotations.SerializedName;
 import io.github.smyles96.eatstreet.exception.EatStreetApiException;
 import io.github.smyles96.eatstreet.model.EatStreetModel;
 import io.github.smyles96.eatstreet.model.order.Order;
+import io.github.smyles96.eatstreet.model.order.OrderHistory;
+import io.github.smyles96.eatstreet.util.cache.LastKnownGood;
+import io.github.smyles96.eatstreet.util.cache.StaleList;
 import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
 import io.github.smyles96.eatstreet.util.http.EatStreetRequestor;
 import io.github.smyles96.eatstreet.util.json.JsonConverter;
+import io.github.smyles96.eatstreet.util.json.JsonStreamEntity;
 
 /**
  * This model class represents a user on EatStreet.
@@ -24,6 +27,12 @@ import io.github.smyles96.eatstreet.util.json.JsonConverter;
  */
 public class User extends EatStreetModel {
     
+    /* STATIC FIELDS */
+    
+    // The last order history retrieved for each user api key, served if the
+    // EatStreet API fails while the history is being refreshed
+    private static final LastKnownGood<String, Order> ORDER_HISTORY_FALLBACK = new LastKnownGood<>(ApiEndpoint.ORDER_HISTORY, 256);
+    
     /*
      * INSTANCE VARIABLES
      */
@@ -161,7 +170,12 @@ public class User extends EatStreetModel {
      * is stored locally after being retrieved for the first time, after that
      * the locally stored order history list is returned. Calling this method
      * with refresh set to true will force a call to the EatStreet API to update
-     * the locally stored order history.
+     * the locally stored order history. Only orders that are new or changed
+     * since the last refresh are converted and stored (see {@link OrderHistory}),
+     * and the returned list loads its orders as they are accessed.
+     * 
+     * If the EatStreet API is failing, the last order history retrieved may be
+     * returned as a {@link StaleList}.
      * 
      * @param refresh Whether to refresh the user's current order history
      * 
@@ -172,13 +186,9 @@ public class User extends EatStreetModel {
     public List<Order> getOrderHistory(boolean refresh) throws EatStreetApiException {
         if( orderHistory == null || refresh ) {
             // Call the EatStreet API to get this user's order history
-            try(Reader response = EatStreetRequestor.makeGetRequest(ApiEndpoint.ORDER_HISTORY, null, EatStreetRequestor.getUserApiKey())) {
-                JsonArray json = JsonParser.parseReader(response).getAsJsonArray();
-                orderHistory = Arrays.asList(JsonConverter.fromJson(json, Order[].class));
-            }
-            catch (IOException e) {
-                throw new EatStreetApiException("Unable to close the HTTP response object");
-            }
+            String userApiKey = EatStreetRequestor.getUserApiKey();
+            
+            orderHistory = ORDER_HISTORY_FALLBACK.fetch(userApiKey, OrderHistory.forUser(userApiKey)::sync);
         }
         
         return orderHistory;
@@ -206,7 +216,7 @@ public class User extends EatStreetModel {
             }
         }
         
-        try(Reader response = EatStreetRequestor.makePostRequest(ApiEndpoint.ADD_ADDRESS, JsonConverter.toJson(newAddress), EatStreetRequestor.getUserApiKey())) {
+        try(Reader response = EatStreetRequestor.makePostRequest(ApiEndpoint.ADD_ADDRESS, JsonStreamEntity.of(newAddress), EatStreetRequestor.getUserApiKey())) {
             // Parse the response as a JSON object
             JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
             
@@ -266,10 +276,9 @@ public class User extends EatStreetModel {
         }
         
         // When adding a card, the card number must be included
-        JsonObject cardData = JsonConverter.toJsonObject(cardToAdd);
-        cardData.addProperty("cardNumber", cardToAdd.getCardNumber());
+        HttpEntity cardData = JsonStreamEntity.of(cardToAdd, writer -> writer.name("cardNumber").value(cardToAdd.getCardNumber()));
         
-        try(Reader response = EatStreetRequestor.makePostRequest(ApiEndpoint.ADD_CARD, cardData.toString(), EatStreetRequestor.getUserApiKey())) {
+        try(Reader response = EatStreetRequestor.makePostRequest(ApiEndpoint.ADD_CARD, cardData, EatStreetRequestor.getUserApiKey())) {
             // Parse the response as a JSON object
             JsonObject json = JsonParser.parseReader(response).getAsJsonObject();
             
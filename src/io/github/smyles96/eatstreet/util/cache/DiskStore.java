@@ -0,0 +1,667 @@
+package io.github.smyles96.eatstreet.util.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent key-value store on local disk, used as a second tier behind a
+ * {@link RefreshingCache} so a restarted process starts with warm data
+ * instead of re-fetching every menu and restaurant from the EatStreet API.
+ *
+ * Values are appended to a data file as binary records and read back through
+ * a read-only memory mapping of that file, so reading a value only decodes
+ * the bytes of that one record. An index file maps each key to its record.
+ * It is written when the store is flushed or closed; records appended after
+ * the last flush are recovered on startup by scanning the end of the data
+ * file, and a record torn by a crash is cut off. Removing a value appends a
+ * tombstone record (with no value and a stored-at time of -1), so a removal
+ * is as durable as a put without waiting for the index to be written.
+ *
+ * The mapping grows geometrically ahead of the data, so a run of puts and
+ * reads remaps the file a logarithmic number of times. Growing the mapping
+ * extends the data file with zeros, which are cut off when the store is
+ * closed, or on startup after a crash.
+ *
+ * On startup both files are checked against the store's format and the
+ * codec's schema version (a mismatch discards the store) and records older
+ * than the time-to-live are dropped. Space taken by replaced and expired
+ * records is reclaimed by compacting the data file.
+ *
+ * <pre>
+ * data file:  magic | format version | schema version | record*
+ * record:     length | key length | key (UTF-8) | stored-at millis | value
+ * index file: magic | format version | schema version | data length covered | count | entry*
+ * entry:      key length | key (UTF-8) | value offset | value length | stored-at millis
+ * </pre>
+ *
+ * @param <V> The type of the stored values
+ *
+ * @author smyles96
+ */
+public class DiskStore<V> implements Closeable {
+
+    /**
+     * Turns values into bytes and back
+     *
+     * @param <V> The type of the values
+     */
+    public interface Codec<V> {
+
+        /**
+         * Gets the version of the encoding. Stores written with another
+         * version are discarded when opened
+         *
+         * @return The schema version
+         */
+        int getSchemaVersion();
+
+        /**
+         * Encodes a value
+         *
+         * @param value The value
+         *
+         * @return The encoded bytes
+         *
+         * @throws IOException If the value cannot be encoded
+         */
+        byte[] encode(V value) throws IOException;
+
+        /**
+         * Decodes a value
+         *
+         * @param buffer The encoded bytes, from its position to its limit. The
+         *               buffer may be a view of a memory-mapped file
+         *
+         * @return The value
+         *
+         * @throws IOException If the bytes are not a valid encoding
+         */
+        V decode(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Where a value is stored in the data file
+     */
+    private static final class Location {
+        final long offset;
+        final int length;
+        final long storedAt;
+        final int recordSize;
+
+        Location(long offset, int length, long storedAt, int recordSize) {
+            this.offset = offset;
+            this.length = length;
+            this.storedAt = storedAt;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /* STATIC FIELDS */
+    private static final int MAGIC = 0x45534453; // "ESDS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    // Bytes in a record besides its key and value: length, key length, stored-at
+    private static final int RECORD_OVERHEAD = 4 + 2 + 8;
+
+    // Mappings are limited to 2GB
+    private static final long MAX_DATA_SIZE = Integer.MAX_VALUE;
+
+    // The stored-at time of a tombstone record, which removes its key
+    private static final long TOMBSTONE = -1;
+
+    // The smallest mapping made of a data file
+    private static final long MIN_MAPPING_SIZE = 64 * 1024;
+
+    // Replaced records are reclaimed once they take more space than this and
+    // more than the live records
+    private static final long COMPACTION_THRESHOLD = 8L * 1024 * 1024;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Path dataFile;
+    private final Path indexFile;
+    private final Codec<V> codec;
+    private final long ttlMillis;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long dataSize;
+    private long garbageBytes;
+    private boolean indexDirty;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private DiskStore(Path directory, String name, Codec<V> codec, long ttlMillis) {
+        this.dataFile = directory.resolve(name + ".data");
+        this.indexFile = directory.resolve(name + ".index");
+        this.codec = codec;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Gets the number of stored values
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets when the value of a key was stored
+     *
+     * @param key The key
+     *
+     * @return The time the value was stored in milliseconds since the epoch,
+     *         or -1 if there is no unexpired value
+     */
+    public long getStoredAt(String key) {
+        Location location = index.get(key);
+
+        if( location == null || isExpired(location, System.currentTimeMillis()) ) {
+            return -1;
+        }
+
+        return location.storedAt;
+    }
+
+    /**
+     * Reads the value of a key
+     *
+     * @param key The key
+     *
+     * @return The value, or null if there is no unexpired value
+     *
+     * @throws IOException If the value could not be read or decoded
+     */
+    public V get(String key) throws IOException {
+        ByteBuffer view;
+
+        synchronized( this ) {
+            Location location = index.get(key);
+
+            if( location == null || isExpired(location, System.currentTimeMillis()) ) {
+                return null;
+            }
+
+            view = slice(location.offset, location.length);
+        }
+
+        // Decoded outside the lock; the view stays valid even if the file is compacted
+        return codec.decode(view);
+    }
+
+    /**
+     * Stores the value of a key, replacing any previous value
+     *
+     * @param key The key
+     * @param value The value
+     *
+     * @throws IOException If the value could not be encoded or written
+     */
+    public void put(String key, V value) throws IOException {
+        byte[] valueBytes = codec.encode(value);
+        long storedAt = System.currentTimeMillis();
+        ByteBuffer record = record(key, storedAt, valueBytes);
+        int recordSize = record.remaining();
+
+        synchronized( this ) {
+            long recordOffset = append(record);
+
+            long valueOffset = recordOffset + recordSize - valueBytes.length;
+            Location previous = index.put(key, new Location(valueOffset, valueBytes.length, storedAt, recordSize));
+            if( previous != null ) {
+                garbageBytes += previous.recordSize;
+            }
+
+            indexDirty = true;
+
+            if( garbageBytes > COMPACTION_THRESHOLD && garbageBytes > dataSize - garbageBytes ) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Removes the value of a key. The removal is written to the data file at
+     * once; if that fails, it is only kept once the store is flushed
+     *
+     * @param key The key
+     */
+    public synchronized void remove(String key) {
+        Location previous = index.remove(key);
+        if( previous == null ) {
+            return;
+        }
+
+        garbageBytes += previous.recordSize;
+        indexDirty = true;
+
+        try {
+            ByteBuffer tombstone = record(key, TOMBSTONE, new byte[0]);
+            garbageBytes += tombstone.remaining();
+            append(tombstone);
+        }
+        catch(IOException e) {
+            // The index written by the next flush leaves the key out
+        }
+    }
+
+    /**
+     * Removes every value
+     *
+     * @throws IOException If the files could not be reset
+     */
+    public synchronized void clear() throws IOException {
+        index.clear();
+        reset();
+        saveIndex();
+    }
+
+    /**
+     * Writes the index, so the next start does not need to scan the data file
+     *
+     * @throws IOException If the index could not be written
+     */
+    public synchronized void flush() throws IOException {
+        if( indexDirty ) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Rewrites the data file with only the unexpired values
+     *
+     * @throws IOException If the data file could not be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        Path compacted = dataFile.resolveSibling(dataFile.getFileName() + ".compact");
+
+        Map<String, Location> relocated = new ConcurrentHashMap<>();
+
+        try(FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header(), 0);
+            long position = HEADER_SIZE;
+
+            for(Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if( isExpired(location, now) ) {
+                    continue;
+                }
+
+                // Records are copied whole; the value keeps its place within the record
+                long recordOffset = location.offset + location.length - location.recordSize;
+                writeFully(out, slice(recordOffset, location.recordSize), position);
+
+                long valueOffset = position + location.recordSize - location.length;
+                relocated.put(entry.getKey(), new Location(valueOffset, location.length, location.storedAt, location.recordSize));
+                position += location.recordSize;
+            }
+        }
+
+        channel.close();
+        Files.move(compacted, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = null;
+
+        index.clear();
+        index.putAll(relocated);
+        dataSize = channel.size();
+        garbageBytes = 0;
+
+        saveIndex();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if( !channel.isOpen() ) {
+            return;
+        }
+
+        try {
+            flush();
+
+            // Cut off the zeros the mapping extended the file with
+            channel.truncate(dataSize);
+        }
+        finally {
+            channel.close();
+            mapped = null;
+        }
+    }
+
+    private boolean isExpired(Location location, long now) {
+        return now - location.storedAt >= ttlMillis;
+    }
+
+    /**
+     * Encodes a record
+     */
+    private static ByteBuffer record(String key, long storedAt, byte[] valueBytes) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        if( keyBytes.length > Short.MAX_VALUE ) {
+            throw new IOException("Key too long to store: " + key);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length + valueBytes.length);
+        record.putInt(record.capacity() - 4);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        record.putLong(storedAt);
+        record.put(valueBytes);
+        record.flip();
+
+        return record;
+    }
+
+    /**
+     * Appends a record to the data file. Must hold the store's lock
+     *
+     * @return The offset of the record
+     */
+    private long append(ByteBuffer record) throws IOException {
+        int recordSize = record.remaining();
+
+        if( dataSize + recordSize > MAX_DATA_SIZE ) {
+            throw new IOException("The store " + dataFile + " is full");
+        }
+
+        long recordOffset = dataSize;
+        writeFully(channel, record, recordOffset);
+        dataSize += recordSize;
+
+        return recordOffset;
+    }
+
+    /**
+     * Gets a read-only view of part of the data file, remapping the file if it
+     * has grown past the current mapping. A new mapping is at least twice as
+     * large as the last, so it covers many later appends
+     */
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        if( mapped == null || mapped.capacity() < offset + length ) {
+            long size = Math.max(dataSize, (mapped == null) ? MIN_MAPPING_SIZE : 2L * mapped.capacity());
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_DATA_SIZE));
+        }
+
+        ByteBuffer view = mapped.duplicate();
+        view.limit((int) (offset + length));
+        view.position((int) offset);
+
+        return view.slice();
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(dataFile.getParent());
+        channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataSize = channel.size();
+
+        if( !hasValidHeader(channel) ) {
+            // A new store, or one written in another format
+            reset();
+            return;
+        }
+
+        long covered = loadIndex();
+        scanRecords(covered);
+
+        // Expired records are dropped on startup
+        long now = System.currentTimeMillis();
+        index.entrySet().removeIf(entry -> {
+            if( isExpired(entry.getValue(), now) ) {
+                garbageBytes += entry.getValue().recordSize;
+                return true;
+            }
+            return false;
+        });
+
+        if( garbageBytes > dataSize - garbageBytes ) {
+            compact();
+        }
+    }
+
+    private void reset() throws IOException {
+        channel.truncate(0);
+        writeFully(channel, header(), 0);
+        dataSize = HEADER_SIZE;
+        garbageBytes = 0;
+        mapped = null;
+        indexDirty = true;
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(codec.getSchemaVersion());
+        header.flip();
+
+        return header;
+    }
+
+    private boolean hasValidHeader(FileChannel file) throws IOException {
+        if( file.size() < HEADER_SIZE ) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(file, header, 0);
+        header.flip();
+
+        return header.getInt() == MAGIC && header.getInt() == FORMAT_VERSION && header.getInt() == codec.getSchemaVersion();
+    }
+
+    /**
+     * Reads the index file
+     *
+     * @return The length of the data file the index covers
+     */
+    private long loadIndex() throws IOException {
+        if( !Files.exists(indexFile) ) {
+            return HEADER_SIZE;
+        }
+
+        try(FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if( !hasValidHeader(indexChannel) ) {
+                return HEADER_SIZE;
+            }
+
+            ByteBuffer buffer = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            buffer.position(HEADER_SIZE);
+
+            long covered = buffer.getLong();
+            int count = buffer.getInt();
+
+            // An index newer than the data file belongs to a store that was lost
+            if( covered > dataSize ) {
+                return HEADER_SIZE;
+            }
+
+            for(int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getShort()];
+                buffer.get(key);
+
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                long storedAt = buffer.getLong();
+
+                int recordSize = RECORD_OVERHEAD + key.length + length;
+                index.put(new String(key, StandardCharsets.UTF_8), new Location(offset, length, storedAt, recordSize));
+            }
+
+            long live = index.values().stream().mapToLong(location -> location.recordSize).sum();
+            garbageBytes = covered - HEADER_SIZE - live;
+
+            return covered;
+        }
+        catch(RuntimeException e) {
+            // A truncated or corrupt index; rebuild it from the data file
+            index.clear();
+            garbageBytes = 0;
+
+            return HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Adds the records from a position to the end of the data file to the index
+     */
+    private void scanRecords(long from) throws IOException {
+        if( from >= dataSize ) {
+            return;
+        }
+
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+        long position = from;
+
+        while( position + 4 <= dataSize ) {
+            int remaining = data.getInt((int) position);
+            int recordSize = remaining + 4;
+            if( remaining < RECORD_OVERHEAD - 4 || position + recordSize > dataSize ) {
+                break;
+            }
+
+            int keyLength = data.getShort((int) position + 4);
+            int length = recordSize - RECORD_OVERHEAD - keyLength;
+            if( keyLength < 0 || length < 0 ) {
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            ByteBuffer keyView = data.duplicate();
+            keyView.position((int) position + 6);
+            keyView.get(key);
+
+            long storedAt = data.getLong((int) position + 6 + keyLength);
+            long valueOffset = position + recordSize - length;
+            String keyString = new String(key, StandardCharsets.UTF_8);
+
+            Location previous;
+            if( storedAt == TOMBSTONE ) {
+                previous = index.remove(keyString);
+                garbageBytes += recordSize;
+            }
+            else {
+                previous = index.put(keyString, new Location(valueOffset, length, storedAt, recordSize));
+            }
+
+            if( previous != null ) {
+                garbageBytes += previous.recordSize;
+            }
+
+            position += recordSize;
+        }
+
+        if( position < dataSize ) {
+            // The last record was torn by a crash while it was written
+            channel.truncate(position);
+            dataSize = position;
+        }
+
+        indexDirty = true;
+    }
+
+    private void saveIndex() throws IOException {
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        int size = HEADER_SIZE + 8 + 4;
+        Map<String, byte[]> keys = new HashMap<>();
+        for(String key : index.keySet()) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            keys.put(key, keyBytes);
+            size += 2 + keyBytes.length + 8 + 4 + 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(header());
+        buffer.putLong(dataSize);
+        buffer.putInt(keys.size());
+
+        for(Map.Entry<String, byte[]> key : keys.entrySet()) {
+            Location location = index.get(key.getKey());
+
+            buffer.putShort((short) key.getValue().length);
+            buffer.put(key.getValue());
+            buffer.putLong(location.offset);
+            buffer.putInt(location.length);
+            buffer.putLong(location.storedAt);
+        }
+        buffer.flip();
+
+        try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, buffer, 0);
+        }
+
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexDirty = false;
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Opens a store, creating it if it does not exist
+     *
+     * @param <V> The type of the stored values
+     * @param directory The directory the store's files are kept in
+     * @param name The name of the store, used to name its files
+     * @param codec Encodes and decodes the values
+     * @param timeToLive How long a stored value is kept
+     * @param unit The unit of timeToLive
+     *
+     * @return The open store
+     *
+     * @throws IOException If the store's files could not be opened or created
+     */
+    public static <V> DiskStore<V> open(Path directory, String name, Codec<V> codec, long timeToLive, TimeUnit unit) throws IOException {
+        DiskStore<V> store = new DiskStore<>(directory, name, codec, unit.toMillis(timeToLive));
+
+        synchronized( store ) {
+            store.load();
+        }
+
+        return store;
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while( buffer.hasRemaining() ) {
+            position += file.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while( buffer.hasRemaining() ) {
+            int count = file.read(buffer, position);
+            if( count < 0 ) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += count;
+        }
+    }
+}
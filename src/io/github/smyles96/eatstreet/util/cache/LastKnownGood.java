@@ -0,0 +1,199 @@
+package io.github.smyles96.eatstreet.util.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.util.http.ApiEndpoint;
+
+/**
+ * The last good results of a read endpoint, kept so they can be served when
+ * the EatStreet API is failing. When fetching a fresh result fails with a
+ * transient error (a 5xx or 429 response, a timeout, an IO error, no
+ * capacity, or an expired deadline) the last good result for the same key is
+ * returned as a {@link StaleList} instead, provided it is no older than the
+ * endpoint's maximum staleness. Client errors such as an invalid api key are
+ * always thrown.
+ *
+ * The maximum staleness is configured per endpoint; an endpoint with a
+ * maximum staleness of 0 never serves stale results.
+ * <pre>{@code
+ * LastKnownGood.setMaxStaleness(ApiEndpoint.RESTAURANT_SEARCH, 15, TimeUnit.MINUTES);
+ * }</pre>
+ *
+ * @param <K> The type of the keys results are stored under
+ * @param <E> The type of the result elements
+ *
+ * @author smyles96
+ */
+public class LastKnownGood<K, E> {
+
+    /**
+     * Fetches a fresh result from the EatStreet API
+     *
+     * @param <E> The type of the result elements
+     */
+    @FunctionalInterface
+    public interface Fetcher<E> {
+        List<E> fetch() throws EatStreetApiException;
+    }
+
+    /**
+     * A stored result and when it was retrieved
+     */
+    private static final class Snapshot<E> {
+        final List<E> result;
+        final long retrievedAt;
+
+        Snapshot(List<E> result, long retrievedAt) {
+            this.result = result;
+            this.retrievedAt = retrievedAt;
+        }
+    }
+
+    /* STATIC FIELDS */
+    private static final Map<ApiEndpoint, Long> maxStaleness = Collections.synchronizedMap(new EnumMap<>(ApiEndpoint.class));
+
+    static {
+        maxStaleness.put(ApiEndpoint.RESTAURANT_SEARCH, TimeUnit.HOURS.toMillis(1));
+        maxStaleness.put(ApiEndpoint.RESTAURANT_MENU, TimeUnit.HOURS.toMillis(24));
+        maxStaleness.put(ApiEndpoint.ORDER_HISTORY, TimeUnit.HOURS.toMillis(24));
+    }
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final ApiEndpoint endpoint;
+    private final Map<K, Snapshot<E>> snapshots;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new store of last good results
+     *
+     * @param endpoint The endpoint the results are fetched from
+     * @param capacity The most results kept; the least recently used are dropped first
+     */
+    public LastKnownGood(ApiEndpoint endpoint, int capacity) {
+        this.endpoint = endpoint;
+        this.snapshots = Collections.synchronizedMap(new LinkedHashMap<K, Snapshot<E>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Snapshot<E>> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Fetches a fresh result, or serves the last good result of the key if
+     * fetching fails with a transient error
+     *
+     * @param key The key of the result
+     * @param fetcher Fetches the fresh result
+     *
+     * @return The fresh result, or a StaleList of the last good result
+     *
+     * @throws EatStreetApiException If fetching failed and no recent enough result is stored
+     */
+    public List<E> fetch(K key, Fetcher<E> fetcher) throws EatStreetApiException {
+        List<E> result;
+
+        try {
+            result = fetcher.fetch();
+        }
+        catch(EatStreetApiException e) {
+            Snapshot<E> snapshot = snapshots.get(key);
+
+            if( snapshot == null || !canServeStale(e) ) {
+                throw e;
+            }
+
+            long age = System.currentTimeMillis() - snapshot.retrievedAt;
+            if( age > getMaxStaleness(endpoint) ) {
+                throw e;
+            }
+
+            return new StaleList<>(snapshot.result, age, e);
+        }
+
+        // A result that is already stored (such as a cached menu) keeps the
+        // time it was first retrieved
+        Snapshot<E> snapshot = snapshots.get(key);
+        if( snapshot == null || snapshot.result != result ) {
+            record(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores a good result
+     *
+     * @param key The key of the result
+     * @param result The result
+     *
+     * @return The result
+     */
+    public List<E> record(K key, List<E> result) {
+        snapshots.put(key, new Snapshot<>(result, System.currentTimeMillis()));
+
+        return result;
+    }
+
+    /**
+     * Removes the stored result of a key
+     *
+     * @param key The key
+     */
+    public void invalidate(K key) {
+        snapshots.remove(key);
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Sets how old a stored result of an endpoint may be and still be served
+     *
+     * @param endpoint The endpoint
+     * @param duration The maximum age (0 to never serve stale results)
+     * @param unit The unit of the duration
+     */
+    public static void setMaxStaleness(ApiEndpoint endpoint, long duration, TimeUnit unit) {
+        maxStaleness.put(endpoint, unit.toMillis(duration));
+    }
+
+    /**
+     * Gets how old a stored result of an endpoint may be and still be served
+     *
+     * @param endpoint The endpoint
+     *
+     * @return The maximum age in milliseconds
+     */
+    public static long getMaxStaleness(ApiEndpoint endpoint) {
+        Long configured = maxStaleness.get(endpoint);
+
+        return (configured == null) ? 0 : configured;
+    }
+
+    /**
+     * Checks whether a failure is one a stale result may be served for
+     *
+     * @param e The failure
+     *
+     * @return true for transient upstream failures, false otherwise
+     */
+    public static boolean canServeStale(EatStreetApiException e) {
+        return e.isRetryable() || e.getKind() == EatStreetApiException.Kind.DEADLINE_EXCEEDED;
+    }
+}
@@ -0,0 +1,534 @@
+package io.github.smyles96.eatstreet.util.cache;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.util.http.Deadline;
+import io.github.smyles96.eatstreet.util.http.RequestPriority;
+
+/**
+ * A cache of values loaded from the EatStreet API that are served in a
+ * stale-while-revalidate fashion:
+ * <ul>
+ *   <li>Entries younger than the time-to-live are returned as they are.</li>
+ *   <li>Expired entries still within the stale window are returned at once,
+ *       while a single background task reloads them.</li>
+ *   <li>Entries older than that (and missing entries) are loaded by the
+ *       caller. Concurrent callers for the same key share one load.</li>
+ * </ul>
+ *
+ * Popular entries are refreshed ahead of expiry: once an entry has been read
+ * often enough during its lifetime and has used up most of it, the next read
+ * schedules a background refresh, so hot entries rarely expire at all.
+ *
+ * Background refreshes run on a small pool of daemon threads (bounded by the
+ * refresh concurrency) at {@link RequestPriority#PREFETCH} priority, so they
+ * never compete with interactive requests. A failed refresh keeps the old
+ * entry.
+ *
+ * The cache holds at most a given number of entries, evicting the least
+ * recently used ones past that, and entries too old to be served are dropped
+ * rather than kept until they are read again.
+ *
+ * A {@link DiskStore} can be attached as a second tier. Loaded values are
+ * written through to it, and a key missing from memory is read from disk
+ * (if it is no older than the stale window allows) before it is loaded from
+ * the API, so a restarted process serves warm data right away.
+ *
+ * @param <K> The type of the cache keys
+ * @param <V> The type of the cached values
+ *
+ * @author smyles96
+ */
+public class RefreshingCache<K, V> {
+
+    /**
+     * Loads the value of a key from the EatStreet API
+     *
+     * @param <K> The type of the cache keys
+     * @param <V> The type of the cached values
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+
+        /**
+         * Loads a value
+         *
+         * @param key The key to load
+         *
+         * @return The loaded value
+         *
+         * @throws EatStreetApiException If the value could not be loaded
+         */
+        V load(K key) throws EatStreetApiException;
+    }
+
+    /**
+     * A cached value and what is known about its use
+     */
+    private static final class Entry<V> {
+        final V value;
+        final long loadedAt;
+        final AtomicInteger accesses = new AtomicInteger();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    // The most refreshes waiting for a thread before more are skipped
+    private static final int MAX_PENDING_REFRESHES = 1024;
+
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final String name;
+    private final Loader<K, V> loader;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final Map<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+    private volatile DiskStore<V> diskStore;
+    private volatile long nextSweep;
+
+    private volatile double refreshAheadFraction = 0.8;
+    private volatile int refreshAheadAccesses = 5;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new cache
+     *
+     * @param name The name of the cache, used to name its refresh threads
+     * @param loader Loads values that are missing or need refreshing
+     * @param timeToLive How long a loaded value is fresh
+     * @param staleWindow How long after expiring a value may still be served while it is refreshed
+     * @param unit The unit of timeToLive and staleWindow
+     * @param refreshConcurrency The most background refreshes run at once
+     */
+    public RefreshingCache(String name, Loader<K, V> loader, long timeToLive, long staleWindow, TimeUnit unit, int refreshConcurrency) {
+        this(name, loader, timeToLive, staleWindow, unit, refreshConcurrency, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a new cache
+     *
+     * @param name The name of the cache, used to name its refresh threads
+     * @param loader Loads values that are missing or need refreshing
+     * @param timeToLive How long a loaded value is fresh
+     * @param staleWindow How long after expiring a value may still be served while it is refreshed
+     * @param unit The unit of timeToLive and staleWindow
+     * @param refreshConcurrency The most background refreshes run at once
+     * @param maxEntries The most values kept in memory
+     */
+    public RefreshingCache(String name, Loader<K, V> loader, long timeToLive, long staleWindow, TimeUnit unit,
+                           int refreshConcurrency, int maxEntries) {
+        if( timeToLive <= 0 || staleWindow < 0 || refreshConcurrency <= 0 || maxEntries <= 0 ) {
+            throw new IllegalArgumentException("Invalid cache limits");
+        }
+
+        this.name = name;
+        this.loader = loader;
+        this.ttlNanos = unit.toNanos(timeToLive);
+        this.staleNanos = unit.toNanos(staleWindow);
+        this.nextSweep = System.nanoTime() + ttlNanos;
+
+        // Access ordered, so the least recently used entry is evicted first
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<K, Entry<V>>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, RefreshingCache.Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refresher = new ThreadPoolExecutor(refreshConcurrency, refreshConcurrency, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_PENDING_REFRESHES),
+            runnable -> {
+                Thread thread = new Thread(runnable, "eatstreet-" + name + "-refresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Sets when popular entries are refreshed ahead of expiry
+     *
+     * @param fraction The fraction of the time-to-live after which an entry may be
+     *                 refreshed ahead (0.8 by default; 1 or more disables refresh-ahead)
+     * @param minAccesses The number of reads since it was loaded that make an entry popular (5 by default)
+     */
+    public void setRefreshAhead(double fraction, int minAccesses) {
+        this.refreshAheadFraction = fraction;
+        this.refreshAheadAccesses = minAccesses;
+    }
+
+    /**
+     * Attaches a persistent second tier to the cache
+     *
+     * @param diskStore The store to read missing values from and write loaded
+     *                  values to, or null to detach the current one
+     */
+    public void setDiskStore(DiskStore<V> diskStore) {
+        this.diskStore = diskStore;
+    }
+
+    public DiskStore<V> getDiskStore() {
+        return this.diskStore;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets the value of a key, loading it if it is missing or too old to be served
+     *
+     * @param key The key
+     *
+     * @return The (possibly stale) value
+     *
+     * @throws EatStreetApiException If the value had to be loaded and could not be
+     */
+    public V get(K key) throws EatStreetApiException {
+        V value = getIfServable(key);
+
+        if( value == null ) {
+            misses.increment();
+            return load(key);
+        }
+
+        return value;
+    }
+
+    /**
+     * Gets the value of a key if it can be served without loading it, that is
+     * if it is cached (in memory or on disk) and not too old to be served. A
+     * stale value is refreshed in the background, as by {@link #get(Object)}
+     *
+     * @param key The key
+     *
+     * @return The (possibly stale) value, or null if it would have to be loaded
+     */
+    public V getIfServable(K key) {
+        Entry<V> entry = entries.get(key);
+
+        if( entry == null ) {
+            entry = readDisk(key);
+        }
+        if( entry == null ) {
+            return null;
+        }
+
+        long age = System.nanoTime() - entry.loadedAt;
+        if( age >= ttlNanos + staleNanos ) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        int accesses = entry.accesses.incrementAndGet();
+
+        if( age < ttlNanos ) {
+            hits.increment();
+
+            if( accesses >= refreshAheadAccesses && age >= (long) (ttlNanos * refreshAheadFraction) ) {
+                scheduleRefresh(key, entry);
+            }
+
+            return entry.value;
+        }
+
+        staleHits.increment();
+        scheduleRefresh(key, entry);
+
+        return entry.value;
+    }
+
+    /**
+     * Gets the cached value of a key without loading it
+     *
+     * @param key The key
+     *
+     * @return The cached value, fresh or stale, or null if there is none
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+
+        return (entry == null) ? null : entry.value;
+    }
+
+    /**
+     * Caches a value that was loaded elsewhere
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        writeDisk(key, value);
+        sweep();
+    }
+
+    /**
+     * Removes the value of a key
+     *
+     * @param key The key
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+
+        DiskStore<V> store = diskStore;
+        if( store != null ) {
+            store.remove(String.valueOf(key));
+        }
+    }
+
+    /**
+     * Removes every value
+     */
+    public void invalidateAll() {
+        entries.clear();
+
+        DiskStore<V> store = diskStore;
+        if( store != null ) {
+            try {
+                store.clear();
+            }
+            catch(IOException e) {
+                // The values expire on disk by themselves
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached values
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops the entries too old to be served, at most once per time-to-live
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        if( now - nextSweep < 0 ) {
+            return;
+        }
+        nextSweep = now + ttlNanos;
+
+        synchronized( entries ) {
+            Iterator<Entry<V>> values = entries.values().iterator();
+
+            while( values.hasNext() ) {
+                if( now - values.next().loadedAt >= ttlNanos + staleNanos ) {
+                    values.remove();
+                }
+            }
+        }
+    }
+
+    private V load(K key) throws EatStreetApiException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inProgress = loading.putIfAbsent(key, future);
+
+        if( inProgress != null ) {
+            return await(key, inProgress);
+        }
+
+        try {
+            V value = loader.load(key);
+            put(key, value);
+            future.complete(value);
+
+            return value;
+        }
+        catch(EatStreetApiException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private V await(K key, CompletableFuture<V> inProgress) throws EatStreetApiException {
+        // Waiting callers still respect their own deadline
+        Deadline deadline = Deadline.current();
+
+        try {
+            return (deadline == null) ? inProgress.get() : inProgress.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch(ExecutionException e) {
+            if( e.getCause() instanceof EatStreetApiException ) {
+                throw (EatStreetApiException) e.getCause();
+            }
+
+            throw (RuntimeException) e.getCause();
+        }
+        catch(TimeoutException e) {
+            throw EatStreetApiException.deadlineExceeded(null, String.format("%s cache load of %s", name, key), deadline.remainingMillis());
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EatStreetApiException(String.format("Interrupted while waiting for the %s cache to load %s", name, key));
+        }
+    }
+
+    private void scheduleRefresh(K key, Entry<V> entry) {
+        // Only one refresh of an entry at a time
+        if( !entry.refreshing.compareAndSet(false, true) ) {
+            return;
+        }
+
+        try {
+            refresher.execute(() -> refresh(key, entry));
+        }
+        catch(RejectedExecutionException e) {
+            // Too many refreshes are waiting; a later read will try again
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void refresh(K key, Entry<V> entry) {
+        RequestPriority.Scope scope = RequestPriority.PREFETCH.activate();
+
+        try {
+            V value = loader.load(key);
+
+            // Entries invalidated or replaced in the meantime are left alone
+            if( entries.replace(key, entry, new Entry<>(value, System.nanoTime())) ) {
+                writeDisk(key, value);
+            }
+            refreshes.increment();
+        }
+        catch(EatStreetApiException | RuntimeException e) {
+            refreshFailures.increment();
+            entry.refreshing.set(false);
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Reads the value of a key from the disk tier into memory
+     *
+     * @return The entry, aged by the time since the value was stored, or null
+     *         if the disk tier has no value young enough to be served
+     */
+    private Entry<V> readDisk(K key) {
+        DiskStore<V> store = diskStore;
+        if( store == null ) {
+            return null;
+        }
+
+        String storeKey = String.valueOf(key);
+        long storedAt = store.getStoredAt(storeKey);
+        if( storedAt < 0 ) {
+            return null;
+        }
+
+        long age = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - storedAt));
+        if( age >= ttlNanos + staleNanos ) {
+            return null;
+        }
+
+        try {
+            V value = store.get(storeKey);
+            if( value == null ) {
+                return null;
+            }
+
+            Entry<V> entry = new Entry<>(value, System.nanoTime() - age);
+            Entry<V> existing = entries.putIfAbsent(key, entry);
+            diskHits.increment();
+
+            return (existing == null) ? entry : existing;
+        }
+        catch(IOException | RuntimeException e) {
+            // An unreadable value is loaded from the API instead
+            store.remove(storeKey);
+            return null;
+        }
+    }
+
+    private void writeDisk(K key, V value) {
+        DiskStore<V> store = diskStore;
+        if( store == null ) {
+            return;
+        }
+
+        try {
+            store.put(String.valueOf(key), value);
+        }
+        catch(IOException | RuntimeException e) {
+            // The disk tier is best effort; the value stays cached in memory
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.smyles96.eatstreet.util.cache;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+
+/**
+ * A read-only list returned in place of a fresh result when the EatStreet
+ * API could not be reached and a recent result was served instead (see
+ * {@link LastKnownGood}). It holds the age of the result and the failure
+ * that caused it to be served.
+ *
+ * Checking whether a result is stale:
+ * <pre>{@code
+ * List<Restaurant> results = api.findRestaurants(address, OrderType.DELIVERY, 2);
+ *
+ * if( StaleList.isStale(results) ) {
+ *     long ageMillis = ((StaleList<Restaurant>) results).getAgeMillis();
+ * }
+ * }</pre>
+ *
+ * @param <E> The type of the list elements
+ *
+ * @author smyles96
+ */
+public final class StaleList<E> extends AbstractList<E> implements RandomAccess {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final List<E> elements;
+    private final long ageMillis;
+    private final EatStreetApiException cause;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new stale list
+     *
+     * @param elements The last known good result
+     * @param ageMillis How long ago the result was retrieved
+     * @param cause The failure that prevented a fresh result
+     */
+    public StaleList(List<E> elements, long ageMillis, EatStreetApiException cause) {
+        this.elements = elements;
+        this.ageMillis = ageMillis;
+        this.cause = cause;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public long getAgeMillis() {
+        return this.ageMillis;
+    }
+
+    public EatStreetApiException getCause() {
+        return this.cause;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Checks whether a result was served stale
+     *
+     * @param result The result
+     *
+     * @return true if the result is a StaleList, false otherwise
+     */
+    public static boolean isStale(List<?> result) {
+        return result instanceof StaleList;
+    }
+}
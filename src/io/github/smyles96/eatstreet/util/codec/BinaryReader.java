@@ -0,0 +1,139 @@
+package io.github.smyles96.eatstreet.util.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the primitive parts of the binary model encoding straight from a
+ * ByteBuffer, which may be a view of a memory-mapped file; nothing is copied
+ * out of the buffer except the characters of new strings.
+ *
+ * @author smyles96
+ */
+final class BinaryReader {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final ByteBuffer buffer;
+    private final List<String> dictionary = new ArrayList<>();
+    private char[] chars = new char[64];
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    int readByte() throws IOException {
+        if( !buffer.hasRemaining() ) {
+            throw new IOException("Unexpected end of encoded data");
+        }
+
+        return buffer.get() & 0xFF;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if( (b & 0x80) == 0 ) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    long readSignedVarint() throws IOException {
+        long value = readVarint();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a varint that counts something, such as a length
+     */
+    int readCount() throws IOException {
+        long value = readVarint();
+
+        if( value > buffer.capacity() ) {
+            throw new IOException("Count exceeds the encoded data: " + value);
+        }
+
+        return (int) value;
+    }
+
+    double readDouble() throws IOException {
+        if( buffer.remaining() < 8 ) {
+            throw new IOException("Unexpected end of encoded data");
+        }
+
+        return Double.longBitsToDouble(buffer.getLong());
+    }
+
+    String readString() throws IOException {
+        long tag = readVarint();
+
+        if( tag == 0 ) {
+            return null;
+        }
+        if( tag >= 2 ) {
+            long reference = tag - 2;
+            if( reference >= dictionary.size() ) {
+                throw new IOException("Unknown string reference: " + reference);
+            }
+
+            return dictionary.get((int) reference);
+        }
+
+        String value = readUtf8(readCount());
+        dictionary.add(value);
+
+        return value;
+    }
+
+    private String readUtf8(int length) throws IOException {
+        if( buffer.remaining() < length ) {
+            throw new IOException("Unexpected end of encoded data");
+        }
+        if( chars.length < length ) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        int count = 0;
+        int end = buffer.position() + length;
+
+        while( buffer.position() < end ) {
+            int b = buffer.get() & 0xFF;
+
+            if( b < 0x80 ) {
+                chars[count++] = (char) b;
+            }
+            else if( b < 0xE0 ) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            }
+            else if( b < 0xF0 ) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+            }
+            else {
+                int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.smyles96.eatstreet.util.codec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the primitive parts of the binary model encoding into a growable
+ * byte array: varints, doubles and dictionary-coded strings.
+ *
+ * Strings are written once; every later occurrence of an equal string is
+ * written as a reference to the first one. A string is written as a varint
+ * tag: 0 for null, 1 for a new string (followed by its UTF-8 length and
+ * bytes), or 2 + n for the n-th new string written.
+ *
+ * @author smyles96
+ */
+final class BinaryWriter {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private byte[] bytes = new byte[256];
+    private int position;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[position++] = (byte) b;
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte
+     */
+    void writeVarint(long value) {
+        ensureCapacity(10);
+
+        while( (value & ~0x7FL) != 0 ) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed value as a zigzag varint, so small negative values stay short
+     */
+    void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        ensureCapacity(8);
+
+        long bits = Double.doubleToRawLongBits(value);
+        for(int shift = 56; shift >= 0; shift -= 8) {
+            bytes[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    void writeString(String value) {
+        if( value == null ) {
+            writeVarint(0);
+            return;
+        }
+
+        Integer reference = dictionary.get(value);
+        if( reference != null ) {
+            writeVarint(2L + reference);
+            return;
+        }
+
+        dictionary.put(value, dictionary.size());
+        writeVarint(1);
+        writeUtf8(value);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    private void writeUtf8(String value) {
+        int length = value.length();
+
+        // Reserve the worst case, then write the real length in front
+        ensureCapacity(5 + length * 3);
+        int lengthPosition = position;
+        position += 5;
+        int start = position;
+
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if( c < 0x80 ) {
+                bytes[position++] = (byte) c;
+            }
+            else if( c < 0x800 ) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if( Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)) ) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        // Move the encoded bytes up against the actual length varint
+        int encodedLength = position - start;
+        position = lengthPosition;
+        writeVarint(encodedLength);
+        System.arraycopy(bytes, start, bytes, position, encodedLength);
+        position += encodedLength;
+    }
+
+    private void ensureCapacity(int extra) {
+        if( position + extra > bytes.length ) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.smyles96.eatstreet.util.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import com.google.gson.reflect.TypeToken;
+import io.github.smyles96.eatstreet.util.cache.DiskStore;
+
+/**
+ * A DiskStore codec that stores model objects in a compact binary encoding
+ * instead of JSON. Fields are written in a fixed order without their names,
+ * integers as varints, whole-cent prices as varints, and repeated strings
+ * (customization names, zones, hours) as references to their first
+ * occurrence. Decoding reads straight from the stored buffer.
+ *
+ * The field layout is inspected once, when the codec is created, and hashed
+ * into the schema version, so stores written before a model class changed are
+ * discarded rather than misread. Lists created by {@link #listOf(Class)} are
+ * decoded read-only, like the values the caches load.
+ *
+ * @param <T> The type of the values
+ *
+ * @author smyles96
+ */
+public final class ModelCodec<T> implements DiskStore.Codec<T> {
+
+    /*
+     * STATIC FIELDS
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final ValueCodec root;
+    private final int schemaVersion;
+    private final boolean readOnlyList;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private ModelCodec(Type type, boolean readOnlyList) {
+        this.root = ValueCodec.forType(type, new HashMap<>());
+        this.readOnlyList = readOnlyList;
+
+        StringBuilder schema = new StringBuilder("binary-").append(FORMAT_VERSION).append(':');
+        root.describe(schema, new HashSet<>());
+        this.schemaVersion = schema.toString().hashCode();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    @Override
+    public byte[] encode(T value) throws IOException {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeVarint(schemaVersion & 0xFFFFFFFFL);
+        root.write(writer, value);
+
+        return writer.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public T decode(ByteBuffer buffer) throws IOException {
+        BinaryReader reader = new BinaryReader(buffer.slice());
+
+        try {
+            if( reader.readVarint() != (schemaVersion & 0xFFFFFFFFL) ) {
+                throw new IOException("Encoded with another schema version");
+            }
+
+            Object value = root.read(reader);
+
+            return (readOnlyList && value != null) ? (T) Collections.unmodifiableList((List) value) : (T) value;
+        }
+        catch(BufferUnderflowException | ClassCastException | IllegalArgumentException e) {
+            throw new IOException("Invalid binary encoding", e);
+        }
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Creates a codec for a model class
+     *
+     * @param type The model class, such as {@code Restaurant.class}
+     *
+     * @return The codec
+     *
+     * @throws IllegalArgumentException If a field of the class cannot be encoded
+     */
+    public static <T> ModelCodec<T> of(Class<T> type) {
+        return new ModelCodec<>(type, false);
+    }
+
+    /**
+     * Creates a codec for lists of a model class
+     *
+     * @param elementType The model class of the elements, such as {@code MenuCategory.class}
+     *
+     * @return The codec
+     *
+     * @throws IllegalArgumentException If a field of the class cannot be encoded
+     */
+    public static <E> ModelCodec<List<E>> listOf(Class<E> elementType) {
+        Type listType = TypeToken.getParameterized(List.class, elementType).getType();
+
+        return new ModelCodec<>(listType, true);
+    }
+}
@@ -0,0 +1,584 @@
+package io.github.smyles96.eatstreet.util.codec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes and decodes one kind of value of the binary model encoding. A tree
+ * of codecs is built once per root type by {@link #forType(Type, Map)}, so no
+ * type inspection happens while values are encoded or decoded.
+ *
+ * Nullable values start with a tag that is 0 for null. Integers are zigzag
+ * varints, and doubles that are whole cents (most prices) are written as a
+ * varint count of cents instead of 8 bytes.
+ *
+ * @author smyles96
+ */
+abstract class ValueCodec {
+
+    abstract void write(BinaryWriter writer, Object value) throws IOException;
+
+    abstract Object read(BinaryReader reader) throws IOException;
+
+    /**
+     * Appends a description of the encoded layout, which changes whenever the
+     * layout does and is hashed into the schema version
+     */
+    abstract void describe(StringBuilder schema, Set<Class<?>> described);
+
+    /* STATIC METHODS */
+
+    /**
+     * Builds the codec of a type
+     *
+     * @param type The type
+     * @param objects The codecs of the model classes built so far, shared so
+     *                that every class gets a single codec
+     *
+     * @return The codec
+     *
+     * @throws IllegalArgumentException If the type (or a field within it) cannot be encoded
+     */
+    static ValueCodec forType(Type type, Map<Class<?>, ObjectCodec> objects) {
+        if( type == String.class ) { return new StringCodec(); }
+        if( type == Integer.class ) { return new IntegerCodec(true, true); }
+        if( type == int.class ) { return new IntegerCodec(false, true); }
+        if( type == Long.class ) { return new IntegerCodec(true, false); }
+        if( type == long.class ) { return new IntegerCodec(false, false); }
+        if( type == Double.class ) { return new DoubleCodec(true); }
+        if( type == double.class ) { return new DoubleCodec(false); }
+        if( type == Boolean.class ) { return new BooleanCodec(true); }
+        if( type == boolean.class ) { return new BooleanCodec(false); }
+
+        if( type instanceof ParameterizedType ) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Type raw = parameterized.getRawType();
+            Type[] arguments = parameterized.getActualTypeArguments();
+
+            if( raw == List.class ) {
+                return new ListCodec(forType(arguments[0], objects));
+            }
+            if( raw == Map.class ) {
+                return new MapCodec(forType(arguments[0], objects), forType(arguments[1], objects));
+            }
+        }
+
+        if( type instanceof GenericArrayType ) {
+            throw new IllegalArgumentException("Unsupported type for binary encoding: " + type);
+        }
+
+        if( type instanceof Class ) {
+            Class<?> clazz = (Class<?>) type;
+
+            if( clazz.isArray() && !clazz.getComponentType().isPrimitive() ) {
+                return new ArrayCodec(clazz.getComponentType(), forType(clazz.getComponentType(), objects));
+            }
+
+            if( !clazz.isPrimitive() && !clazz.isInterface() && !clazz.isEnum() && !clazz.getName().startsWith("java.") ) {
+                ObjectCodec codec = objects.get(clazz);
+                if( codec == null ) {
+                    // Registered before its fields are resolved, so nested
+                    // references to the class reuse it
+                    codec = new ObjectCodec(clazz);
+                    objects.put(clazz, codec);
+                    codec.resolveFields(objects);
+                }
+                return codec;
+            }
+        }
+
+        throw new IllegalArgumentException("Unsupported type for binary encoding: " + type);
+    }
+
+    /**
+     * Strings, dictionary coded by the BinaryWriter
+     */
+    private static final class StringCodec extends ValueCodec {
+        @Override
+        void write(BinaryWriter writer, Object value) {
+            writer.writeString((String) value);
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            return reader.readString();
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append('S');
+        }
+    }
+
+    /**
+     * Integers and longs as zigzag varints; nullable ones are shifted up by one
+     * to make room for the null tag
+     */
+    private static final class IntegerCodec extends ValueCodec {
+        private final boolean nullable;
+        private final boolean narrow;
+
+        IntegerCodec(boolean nullable, boolean narrow) {
+            this.nullable = nullable;
+            this.narrow = narrow;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) {
+            if( !nullable ) {
+                writer.writeSignedVarint(((Number) value).longValue());
+            }
+            else if( value == null ) {
+                writer.writeVarint(0);
+            }
+            else {
+                long number = ((Number) value).longValue();
+                writer.writeVarint(((number << 1) ^ (number >> 63)) + 1);
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            long number;
+
+            if( !nullable ) {
+                number = reader.readSignedVarint();
+            }
+            else {
+                long tag = reader.readVarint();
+                if( tag == 0 ) {
+                    return null;
+                }
+
+                long zigzag = tag - 1;
+                number = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+
+            return narrow ? (Object) (int) number : (Object) number;
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append(narrow ? (nullable ? 'I' : 'i') : (nullable ? 'J' : 'j'));
+        }
+    }
+
+    /**
+     * Doubles, tagged as null, whole cents or raw bits
+     */
+    private static final class DoubleCodec extends ValueCodec {
+        private static final int NULL = 0;
+        private static final int RAW = 1;
+        private static final int CENTS = 2;
+
+        private final boolean nullable;
+
+        DoubleCodec(boolean nullable) {
+            this.nullable = nullable;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) {
+            if( value == null ) {
+                writer.writeByte(NULL);
+                return;
+            }
+
+            double number = (Double) value;
+            long cents = Math.round(number * 100);
+
+            if( Math.abs(cents) < (1L << 52) && cents / 100.0 == number && (cents != 0 || Double.doubleToRawLongBits(number) == 0) ) {
+                writer.writeByte(CENTS);
+                writer.writeSignedVarint(cents);
+            }
+            else {
+                writer.writeByte(RAW);
+                writer.writeDouble(number);
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int tag = reader.readByte();
+
+            switch( tag ) {
+                case NULL:
+                    if( !nullable ) {
+                        throw new IOException("Null value for a primitive double");
+                    }
+                    return null;
+                case CENTS:
+                    return reader.readSignedVarint() / 100.0;
+                case RAW:
+                    return reader.readDouble();
+                default:
+                    throw new IOException("Unknown double tag: " + tag);
+            }
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append(nullable ? 'D' : 'd');
+        }
+    }
+
+    /**
+     * Booleans as a single byte: 0 for null, 1 for false, 2 for true
+     */
+    private static final class BooleanCodec extends ValueCodec {
+        private final boolean nullable;
+
+        BooleanCodec(boolean nullable) {
+            this.nullable = nullable;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) {
+            writer.writeByte(value == null ? 0 : ((Boolean) value ? 2 : 1));
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int tag = reader.readByte();
+
+            if( tag == 0 && nullable ) {
+                return null;
+            }
+            if( tag == 1 || tag == 2 ) {
+                return tag == 2;
+            }
+
+            throw new IOException("Unknown boolean tag: " + tag);
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append(nullable ? 'B' : 'b');
+        }
+    }
+
+    /**
+     * Lists as a size (plus one, 0 for null) followed by the elements
+     */
+    private static final class ListCodec extends ValueCodec {
+        private final ValueCodec elements;
+
+        ListCodec(ValueCodec elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) throws IOException {
+            if( value == null ) {
+                writer.writeVarint(0);
+                return;
+            }
+
+            List<?> list = (List<?>) value;
+            writer.writeVarint(list.size() + 1L);
+            for(Object element : list) {
+                elements.write(writer, element);
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int size = reader.readCount();
+            if( size == 0 ) {
+                return null;
+            }
+
+            List<Object> list = new ArrayList<>(size - 1);
+            for(int i = 1; i < size; i++) {
+                list.add(elements.read(reader));
+            }
+            return list;
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append("L<");
+            elements.describe(schema, described);
+            schema.append('>');
+        }
+    }
+
+    /**
+     * Object arrays, encoded like lists
+     */
+    private static final class ArrayCodec extends ValueCodec {
+        private final Class<?> componentType;
+        private final ValueCodec elements;
+
+        ArrayCodec(Class<?> componentType, ValueCodec elements) {
+            this.componentType = componentType;
+            this.elements = elements;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) throws IOException {
+            if( value == null ) {
+                writer.writeVarint(0);
+                return;
+            }
+
+            int length = Array.getLength(value);
+            writer.writeVarint(length + 1L);
+            for(int i = 0; i < length; i++) {
+                elements.write(writer, Array.get(value, i));
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int length = reader.readCount();
+            if( length == 0 ) {
+                return null;
+            }
+
+            Object array = Array.newInstance(componentType, length - 1);
+            for(int i = 0; i < length - 1; i++) {
+                Array.set(array, i, elements.read(reader));
+            }
+            return array;
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append("A<");
+            elements.describe(schema, described);
+            schema.append('>');
+        }
+    }
+
+    /**
+     * Maps as a size (plus one, 0 for null) followed by key, value pairs
+     */
+    private static final class MapCodec extends ValueCodec {
+        private final ValueCodec keys;
+        private final ValueCodec values;
+
+        MapCodec(ValueCodec keys, ValueCodec values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) throws IOException {
+            if( value == null ) {
+                writer.writeVarint(0);
+                return;
+            }
+
+            Map<?, ?> map = (Map<?, ?>) value;
+            writer.writeVarint(map.size() + 1L);
+            for(Map.Entry<?, ?> entry : map.entrySet()) {
+                keys.write(writer, entry.getKey());
+                values.write(writer, entry.getValue());
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int size = reader.readCount();
+            if( size == 0 ) {
+                return null;
+            }
+
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for(int i = 1; i < size; i++) {
+                map.put(keys.read(reader), values.read(reader));
+            }
+            return map;
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append("M<");
+            keys.describe(schema, described);
+            schema.append(',');
+            values.describe(schema, described);
+            schema.append('>');
+        }
+    }
+
+    /**
+     * Model objects as a presence byte followed by their fields. The fields
+     * are the ones Gson serializes (every non-static, non-transient field,
+     * superclass fields first), in name order.
+     *
+     * Fields are read and written through method handles bound once, when the
+     * codec is built, rather than through Field.get and Field.set, which check
+     * access and box through the reflection layer on every call
+     */
+    static final class ObjectCodec extends ValueCodec {
+        private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private String[] names;
+        private MethodHandle[] getters;
+        private MethodHandle[] setters;
+        private ValueCodec[] codecs;
+
+        ObjectCodec(Class<?> type) {
+            this.type = type;
+
+            // Models either have a no-argument constructor or one taking their api key
+            Constructor<?> found;
+            boolean takesKey = false;
+            try {
+                found = type.getDeclaredConstructor();
+            }
+            catch(NoSuchMethodException e) {
+                try {
+                    found = type.getDeclaredConstructor(String.class);
+                    takesKey = true;
+                }
+                catch(NoSuchMethodException e2) {
+                    throw new IllegalArgumentException("No usable constructor for binary encoding: " + type.getName());
+                }
+            }
+
+            try {
+                found.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflectConstructor(found);
+
+                // The api key is read with the other fields
+                if( takesKey ) {
+                    handle = MethodHandles.insertArguments(handle, 0, (Object) null);
+                }
+                this.constructor = handle.asType(MethodType.methodType(Object.class));
+            }
+            catch(IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException("Unusable constructor for binary encoding: " + type.getName(), e);
+            }
+        }
+
+        void resolveFields(Map<Class<?>, ObjectCodec> objects) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+            }
+
+            List<Field> encoded = new ArrayList<>();
+            for(Class<?> c : hierarchy) {
+                List<Field> declared = new ArrayList<>();
+
+                for(Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if( !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic() ) {
+                        field.setAccessible(true);
+                        declared.add(field);
+                    }
+                }
+
+                declared.sort(Comparator.comparing(Field::getName));
+                encoded.addAll(declared);
+            }
+
+            int count = encoded.size();
+            this.names = new String[count];
+            this.getters = new MethodHandle[count];
+            this.setters = new MethodHandle[count];
+            this.codecs = new ValueCodec[count];
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for(int i = 0; i < count; i++) {
+                Field field = encoded.get(i);
+                names[i] = field.getName();
+
+                try {
+                    getters[i] = lookup.unreflectGetter(field).asType(GETTER);
+                    setters[i] = lookup.unreflectSetter(field).asType(SETTER);
+                }
+                catch(IllegalAccessException e) {
+                    throw new IllegalArgumentException("Inaccessible field for binary encoding: " + field, e);
+                }
+
+                codecs[i] = forType(field.getGenericType(), objects);
+            }
+        }
+
+        @Override
+        void write(BinaryWriter writer, Object value) throws IOException {
+            if( value == null ) {
+                writer.writeByte(0);
+                return;
+            }
+
+            writer.writeByte(1);
+            for(int i = 0; i < getters.length; i++) {
+                Object field;
+                try {
+                    field = (Object) getters[i].invokeExact(value);
+                }
+                catch(Throwable e) {
+                    throw new IOException("Unable to read " + names[i] + " of " + type.getName(), e);
+                }
+
+                codecs[i].write(writer, field);
+            }
+        }
+
+        @Override
+        Object read(BinaryReader reader) throws IOException {
+            int tag = reader.readByte();
+            if( tag == 0 ) {
+                return null;
+            }
+
+            Object value;
+            try {
+                value = (Object) constructor.invokeExact();
+            }
+            catch(Throwable e) {
+                throw new IOException("Unable to create a " + type.getName(), e);
+            }
+
+            for(int i = 0; i < setters.length; i++) {
+                Object field = codecs[i].read(reader);
+
+                try {
+                    setters[i].invokeExact(value, field);
+                }
+                catch(Throwable e) {
+                    throw new IOException("Unable to set " + names[i] + " of " + type.getName(), e);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        void describe(StringBuilder schema, Set<Class<?>> described) {
+            schema.append(type.getName());
+            if( !described.add(type) ) {
+                return;
+            }
+
+            schema.append('{');
+            for(int i = 0; i < names.length; i++) {
+                schema.append(names[i]).append(':');
+                codecs[i].describe(schema, described);
+                schema.append(';');
+            }
+            schema.append('}');
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * The default transport of the request pipeline, backed by Apache HttpClient.
+ *
+ * Requests are isolated by their endpoint's TrafficClass: each class has its
+ * own connection pool and its own concurrency permits, so order submission
+ * keeps its capacity while browse traffic is saturated. A request holds its
+ * permit until its response is closed, and PREFETCH requests may hold at most
+ * a quarter of a class's permits. If no permit becomes available within
+ * the request's connection-request timeout the request fails.
+ *
+ * Every request asks for a gzip or deflate compressed response. Compressed
+ * bodies are decompressed while the caller reads them, and the bytes on the
+ * wire and after decoding are counted in the transport's TransferStats.
+ *
+ * Giving order traffic a larger share:
+ * <pre>{@code
+ * Map<TrafficClass, Integer> poolSizes = new EnumMap<>(TrafficClass.class);
+ * poolSizes.put(TrafficClass.ORDER, 20);
+ * poolSizes.put(TrafficClass.BROWSE, 8);
+ *
+ * EatStreetRequestor.setTransport(new ApacheHttpTransport(poolSizes));
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Map<TrafficClass, CloseableHttpClient> clients;
+    private final TrafficPermits permits;
+    private final RequestConfig defaultConfig;
+    private final TransferStats transferStats = new TransferStats();
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a transport using the default pool size of each traffic class
+     */
+    public ApacheHttpTransport() {
+        this(new EnumMap<>(TrafficClass.class));
+    }
+
+    /**
+     * Create a transport with configured pool sizes
+     *
+     * @param poolSizes The number of connections and concurrent requests allowed
+     *                  per traffic class. Classes missing from the map use
+     *                  their default pool size
+     */
+    public ApacheHttpTransport(Map<TrafficClass, Integer> poolSizes) {
+        this.defaultConfig = RequestConfig.custom()
+            .setCookieSpec(CookieSpecs.STANDARD)
+            .build();
+
+        this.permits = new TrafficPermits(poolSizes);
+        this.clients = new EnumMap<>(TrafficClass.class);
+        
+        for(TrafficClass trafficClass : TrafficClass.values()) {
+            int size = TrafficPermits.sizeOf(trafficClass, poolSizes);
+            
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(size);
+            connectionManager.setDefaultMaxPerRoute(size);
+            
+            clients.put(trafficClass, HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultConfig)
+                .disableContentCompression()
+                .build());
+        }
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets the number of requests of a traffic class that may be started
+     * before the class's capacity is used up
+     *
+     * @param trafficClass The traffic class
+     *
+     * @return The number of free permits
+     */
+    public int getAvailablePermits(TrafficClass trafficClass) {
+        return permits.available(trafficClass);
+    }
+
+    /**
+     * Gets the counters of response bytes received by this transport
+     * 
+     * @return The transfer counters
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    @Override
+    public EatStreetResponse execute(EatStreetRequest request) throws IOException {
+        HttpRequestBase httpRequest;
+
+        if( request.getMethod() == EatStreetRequest.Method.POST ) {
+            HttpPost postRequest = new HttpPost(request.getUri());
+            postRequest.setEntity(request.getEntity());
+            httpRequest = postRequest;
+        }
+        else {
+            httpRequest = new HttpGet(request.getUri());
+        }
+
+        RequestTimeouts timeouts = EatStreetRequestor.getEffectiveTimeouts(request);
+
+        // Compression is negotiated here rather than by HttpClient itself so
+        // that the compressed bytes can be counted
+        ContentDecoding.negotiate(request);
+        
+        for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpRequest.setHeader(header.getKey(), header.getValue());
+        }
+
+        // Wait for a permit of the request's traffic class. The permit is held
+        // until the response has been read and closed
+        TrafficClass trafficClass = request.getEndpoint().getTrafficClass();
+        RequestPriority priority = request.getPriority();
+        permits.acquire(trafficClass, priority, request.remainingCapacityWait(timeouts.getConnectionRequestTimeout()));
+
+        CloseableHttpResponse response;
+        try {
+            // Apply the request's timeouts, shortened to fit within its
+            // deadline. The pool is waited on for what is left of the
+            // capacity wait (at least 1ms, as 0 would wait forever)
+            httpRequest.setConfig(RequestConfig.copy(defaultConfig)
+                .setConnectTimeout(timeouts.getConnectTimeout())
+                .setSocketTimeout(timeouts.getSocketTimeout())
+                .setConnectionRequestTimeout((int) Math.max(1, request.remainingCapacityWait(timeouts.getConnectionRequestTimeout())))
+                .build());
+
+            response = clients.get(trafficClass).execute(httpRequest);
+        }
+        catch(IOException | RuntimeException e) {
+            permits.release(trafficClass, priority);
+            throw e;
+        }
+
+        try {
+            Map<String, String> headers = new HashMap<>();
+            for(Header header : response.getAllHeaders()) {
+                headers.put(header.getName(), header.getValue());
+            }
+
+            HttpEntity entity = response.getEntity();
+            InputStream body = (entity == null) ? null : entity.getContent();
+
+            // Closing the Apache response releases its connection back to the pool
+            EatStreetResponse result = new EatStreetResponse(response.getStatusLine().getStatusCode(), headers, body);
+            result.onClose(() -> permits.release(trafficClass, priority));
+            result.onClose(() -> closeQuietly(response));
+
+            ContentDecoding.decode(result, transferStats);
+            return result;
+        }
+        catch(IOException | RuntimeException e) {
+            closeQuietly(response);
+            permits.release(trafficClass, priority);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
+        }
+        catch(IOException e) {
+            // Nothing can be done at this point; the connection is discarded
+        }
+    }
+}
@@ -7,41 +7,75 @@ package io.github.smyles96.eatstreet.util.http;
  */
 public enum ApiEndpoint {
     // Restaurant Endpoint Paths
-    RESTAURANT_SEARCH("restaurant/search", false),
-    RESTAURANT_SEARCH_TEST("restaurant/search-test", false),
-    RESTAURANT_MENU("restaurant/%s/menu", true),
-    RESTAURANT_DETAILS("restaurant", false),
-    CUSTOMIZATIONS("customizations", false),
+    RESTAURANT_SEARCH("restaurant/search", false, TrafficClass.BROWSE, RequestPriority.MENU),
+    RESTAURANT_SEARCH_TEST("restaurant/search-test", false, TrafficClass.BROWSE, RequestPriority.MENU),
+    RESTAURANT_MENU("restaurant/%s/menu", true, TrafficClass.BROWSE, RequestPriority.MENU),
+    RESTAURANT_DETAILS("restaurant/%s", true, TrafficClass.BROWSE, RequestPriority.MENU),
+    CUSTOMIZATIONS("menu-item/%s/customizations", true, TrafficClass.BROWSE, RequestPriority.MENU),
     
     // Order Endpoint Paths
-    SEND_ORDER("send-order", false),
-    VALIDATE_ORDER("validate-order", false),
-    GET_ORDER("order/%s", true),
-    ORDER_STATUS("order/%s/statuses", true),
+    SEND_ORDER("send-order", false, TrafficClass.ORDER, RequestPriority.ORDER),
+    VALIDATE_ORDER("validate-order", false, TrafficClass.ORDER, RequestPriority.ORDER),
+    GET_ORDER("order/%s", true, TrafficClass.BROWSE, RequestPriority.STATUS),
+    ORDER_STATUS("order/%s/statuses", true, TrafficClass.BROWSE, RequestPriority.STATUS),
     
     // User Endpoint Paths
-    REGISTER_USER("register-user", false),
-    UPDATE_USER("update-user/%s", true),
-    GET_USER("user/%s", true),
-    SIGN_IN("signin", false),
-    ORDER_HISTORY("user/%s/orders", true),
-    ADD_ADDRESS("user/%s/add-address", true),
-    ADD_CARD("user/%s/add-card", true),
-    REMOVE_ADDRESS("user/%s/remove-address/%s", true),
-    REMOVE_CARD("user/%s/remove-card/%s", true);
+    REGISTER_USER("register-user", false, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    UPDATE_USER("update-user/%s", true, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    GET_USER("user/%s", true, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    SIGN_IN("signin", false, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    ORDER_HISTORY("user/%s/orders", true, TrafficClass.BROWSE, RequestPriority.MENU),
+    ADD_ADDRESS("user/%s/add-address", true, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    ADD_CARD("user/%s/add-card", true, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    REMOVE_ADDRESS("user/%s/remove-address/%s", true, TrafficClass.ACCOUNT, RequestPriority.STATUS),
+    REMOVE_CARD("user/%s/remove-card/%s", true, TrafficClass.ACCOUNT, RequestPriority.STATUS);
     
     private final String ENDPOINT_PATH;
     private final boolean REQUIRES_FORMATTING;
+    private final EndpointTemplate TEMPLATE;
+    private final TrafficClass TRAFFIC_CLASS;
+    private final RequestPriority DEFAULT_PRIORITY;
     
-    ApiEndpoint(String endpointPath, boolean requiresFormatting) {
+    ApiEndpoint(String endpointPath, boolean requiresFormatting, TrafficClass trafficClass, RequestPriority defaultPriority) {
         this.ENDPOINT_PATH = endpointPath;
         this.REQUIRES_FORMATTING = requiresFormatting;
+        this.TRAFFIC_CLASS = trafficClass;
+        this.DEFAULT_PRIORITY = defaultPriority;
+        this.TEMPLATE = new EndpointTemplate("https://" + EatStreetRequestor.EAT_STREET_API_URL, endpointPath);
     }
     
     public boolean requiresFormatting() {
         return this.REQUIRES_FORMATTING;
     }
     
+    /**
+     * Gets the precompiled URI template for this endpoint
+     * 
+     * @return The endpoint's template
+     */
+    public EndpointTemplate getTemplate() {
+        return this.TEMPLATE;
+    }
+    
+    /**
+     * Gets the class of traffic requests to this endpoint belong to
+     * 
+     * @return The endpoint's traffic class
+     */
+    public TrafficClass getTrafficClass() {
+        return this.TRAFFIC_CLASS;
+    }
+    
+    /**
+     * Gets the priority of requests to this endpoint when no other priority
+     * is active on the calling thread
+     * 
+     * @return The endpoint's default priority
+     */
+    public RequestPriority getDefaultPriority() {
+        return this.DEFAULT_PRIORITY;
+    }
+    
     @Override
     public String toString() {
         return this.ENDPOINT_PATH;
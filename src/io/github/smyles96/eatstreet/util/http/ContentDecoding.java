@@ -0,0 +1,194 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import org.apache.http.client.entity.DeflateInputStream;
+
+/**
+ * Static helpers that negotiate compressed responses and decompress them
+ * while they are being read. Nothing is buffered: the JSON parser pulls bytes
+ * through the decompressor straight from the network stream.
+ *
+ * @author smyles96
+ */
+public final class ContentDecoding {
+
+    /* STATIC FIELDS */
+
+    /**
+     * The value sent in the Accept-Encoding header of every request
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /* CONSTRUCTOR(S) */
+
+    private ContentDecoding() {}
+
+    /* STATIC METHODS */
+
+    /**
+     * Asks the server for a compressed response, unless the request already
+     * states which encodings it accepts
+     *
+     * @param request The request about to be sent
+     */
+    public static void negotiate(EatStreetRequest request) {
+        for(String name : request.getHeaders().keySet()) {
+            if( name.equalsIgnoreCase("Accept-Encoding") ) {
+                return;
+            }
+        }
+
+        request.setHeader("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * Wraps the body of a response so that it is decompressed as it is read
+     * and its size is counted before and after decompression
+     *
+     * @param response The response received from the server
+     * @param stats The counters to update
+     *
+     * @throws IOException If the response uses an unsupported content encoding
+     */
+    public static void decode(EatStreetResponse response, TransferStats stats) throws IOException {
+        InputStream body = response.getBody();
+        String encoding = response.getHeader("Content-Encoding");
+        String codec = (encoding == null) ? "identity" : encoding.trim().toLowerCase(Locale.ROOT);
+
+        boolean compressed = !codec.isEmpty() && !codec.equals("identity");
+        stats.recordResponse(compressed);
+
+        if( body == null ) {
+            return;
+        }
+
+        // An uncompressed body is the same bytes on the wire and decoded
+        if( !compressed ) {
+            response.setBody(new CountingInputStream(body, stats, true, true));
+            return;
+        }
+
+        InputStream wire = new CountingInputStream(body, stats, true, false);
+
+        if( !codec.equals("gzip") && !codec.equals("x-gzip") && !codec.equals("deflate") ) {
+            throw new IOException(String.format("Unsupported content encoding [%s]", encoding));
+        }
+
+        response.setBody(new CountingInputStream(new LazyDecompressingInputStream(wire, codec), stats, false, true));
+
+        // The body is no longer encoded and its length is no longer known
+        response.setHeader("Content-Encoding", null);
+        response.setHeader("Content-Length", null);
+    }
+
+    /**
+     * Counts the bytes read through it into the wire counter, the decoded
+     * counter, or both
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final TransferStats stats;
+        private final boolean wire;
+        private final boolean decoded;
+
+        CountingInputStream(InputStream in, TransferStats stats, boolean wire, boolean decoded) {
+            super(in);
+            this.stats = stats;
+            this.wire = wire;
+            this.decoded = decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if( b != -1 ) {
+                count(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if( read > 0 ) {
+                count(read);
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            if( skipped > 0 ) {
+                count(skipped);
+            }
+
+            return skipped;
+        }
+
+        private void count(long bytes) {
+            if( wire ) {
+                stats.addWireBytes(bytes);
+            }
+
+            if( decoded ) {
+                stats.addDecodedBytes(bytes);
+            }
+        }
+    }
+
+    /**
+     * Creates the decompressor on the first read, so that constructing it
+     * (which reads the gzip header) does not block or fail on empty bodies
+     */
+    private static final class LazyDecompressingInputStream extends InputStream {
+
+        private final InputStream wire;
+        private final String codec;
+        private InputStream decoded;
+
+        LazyDecompressingInputStream(InputStream wire, String codec) {
+            this.wire = wire;
+            this.codec = codec;
+        }
+
+        private InputStream decoded() throws IOException {
+            if( decoded == null ) {
+                decoded = codec.equals("deflate") ? new DeflateInputStream(wire) : new GZIPInputStream(wire, 8192);
+            }
+
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return decoded().read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (decoded == null) ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if( decoded != null ) {
+                decoded.close();
+            }
+            else {
+                wire.close();
+            }
+        }
+    }
+}
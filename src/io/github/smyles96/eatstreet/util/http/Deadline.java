@@ -0,0 +1,158 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a call, or a whole flow of calls, to the
+ * EatStreet API must be finished.
+ *
+ * Activating a deadline makes it apply to every request made by the current
+ * thread until the returned scope is closed. Before each request the time
+ * left is checked, the request fails fast if the budget is already used up,
+ * and the request's timeouts are shortened so it cannot outlive the deadline.
+ *
+ * Bounding a search, menu lookup and order submission to 5 seconds in total:
+ * <pre>{@code
+ * try(Deadline.Scope scope = Deadline.after(5, TimeUnit.SECONDS).activate()) {
+ *     Restaurant target = api.findRestaurants(address, OrderType.DELIVERY, 2).get(0);
+ *     List<MenuCategory> menu = target.getMenu();
+ *     target.validateOrder(order);
+ *     target.sendOrder(order);
+ * }
+ * catch(EatStreetApiException e) {
+ *     System.out.println(e.getMessage());
+ * }
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public final class Deadline {
+
+    /* STATIC FIELDS */
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /* INSTANCE VARIABLES */
+    private final long expiresAtNanos;
+
+    /* CONSTRUCTOR(S) */
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Creates a deadline that expires after a given amount of time from now
+     *
+     * @param duration The amount of time
+     * @param unit The unit of the duration
+     *
+     * @return The new deadline
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * Gets the deadline active on the current thread
+     *
+     * @return The active deadline, or null if none is active
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Deactivates the deadline active on the current thread (if any) until
+     * the returned scope is closed. Used for background work started by a
+     * call, which must not be cut short by that call's deadline
+     *
+     * @return The scope to close to restore the deadline
+     */
+    public static Scope clear() {
+        Deadline previous = CURRENT.get();
+        CURRENT.remove();
+
+        return new Scope(previous);
+    }
+
+    /* INSTANCE METHODS */
+
+    /**
+     * Gets the time left before this deadline expires
+     *
+     * @return The remaining milliseconds (negative once expired)
+     */
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime());
+    }
+
+    /**
+     * Checks if this deadline has passed
+     *
+     * @return true if expired, false otherwise
+     */
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Gets the earlier of this deadline and another
+     *
+     * @param other The other deadline (may be null)
+     *
+     * @return The deadline that expires first
+     */
+    public Deadline min(Deadline other) {
+        if( other == null || expiresAtNanos - other.expiresAtNanos <= 0 ) {
+            return this;
+        }
+
+        return other;
+    }
+
+    /**
+     * Makes this deadline apply to all requests made by the current thread
+     * until the returned scope is closed. If a deadline is already active,
+     * the earlier of the two applies.
+     *
+     * @return The scope to close once the guarded calls are finished
+     */
+    public Scope activate() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this.min(previous));
+
+        return new Scope(previous);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Deadline [%dms remaining]", remainingMillis());
+    }
+
+    /**
+     * The period during which a deadline is active on a thread
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final Deadline previous;
+
+        private Scope(Deadline previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Restores the deadline that was active before this scope was opened
+         */
+        @Override
+        public void close() {
+            if( previous == null ) {
+                CURRENT.remove();
+            }
+            else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+
+/**
+ * This class represents a single request to the EatStreet API as it passes
+ * through the request pipeline. Interceptors may inspect and modify the
+ * request before it is handed to the transport.
+ *
+ * @author smyles96
+ */
+public class EatStreetRequest {
+
+    /**
+     * The HTTP methods used by the EatStreet API
+     */
+    public enum Method {
+        GET,
+        POST
+    }
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final ApiEndpoint endpoint;
+    private final Method method;
+    private URI uri;
+    private HttpEntity entity;
+    private final Map<String, String> headers;
+    private RequestTimeouts timeouts;
+    private Deadline deadline;
+    private RequestPriority priority;
+
+    // When the current send must stop waiting for capacity (a dispatch slot,
+    // a traffic class permit or a pooled connection), in System.nanoTime()
+    // terms; only set while the request is being sent
+    private long capacityWaitEndNanos;
+    private boolean capacityWaitStarted;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new request. The deadline and priority active on the current
+     * thread (if any) are attached to the request.
+     *
+     * @param endpoint The endpoint being requested
+     * @param method The HTTP method of the request
+     * @param uri The full request URI
+     */
+    public EatStreetRequest(ApiEndpoint endpoint, Method method, URI uri) {
+        this.endpoint = endpoint;
+        this.method = method;
+        this.uri = uri;
+        this.headers = new LinkedHashMap<>();
+        this.deadline = Deadline.current();
+
+        RequestPriority activePriority = RequestPriority.current();
+        this.priority = (activePriority == null) ? endpoint.getDefaultPriority() : activePriority;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public ApiEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * Gets the body of the request
+     *
+     * @return The request body, or null if the request has none
+     */
+    public HttpEntity getEntity() {
+        return entity;
+    }
+
+    public void setEntity(HttpEntity entity) {
+        this.entity = entity;
+    }
+
+    /**
+     * Gets the headers to send with the request
+     *
+     * @return An unmodifiable view of the request headers
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Sets a header on the request, replacing any existing value
+     *
+     * @param name The header name
+     * @param value The header value
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    /**
+     * Removes a header from the request
+     *
+     * @param name The header name
+     */
+    public void removeHeader(String name) {
+        headers.remove(name);
+    }
+
+    /**
+     * Gets the timeouts set for this particular request
+     *
+     * @return The request's timeouts, or null to use those of its endpoint
+     */
+    public RequestTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(RequestTimeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Gets the deadline by which this request must be finished
+     *
+     * @return The deadline, or null if the request has none
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Starts the time a send of this request may spend waiting for capacity.
+     * Every wait of the send takes its timeout from what is left of it, so
+     * the waits together take no longer than the connection request timeout
+     *
+     * @param timeoutMillis The longest total wait
+     */
+    void startCapacityWait(long timeoutMillis) {
+        capacityWaitEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        capacityWaitStarted = true;
+    }
+
+    /**
+     * Gets how much longer the current send may wait for capacity
+     *
+     * @param timeoutMillis The wait allowed if no wait was started (the
+     *                      request was handed straight to a transport)
+     *
+     * @return The remaining wait in milliseconds; 0 once used up
+     */
+    long remainingCapacityWait(long timeoutMillis) {
+        if( !capacityWaitStarted ) {
+            return timeoutMillis;
+        }
+
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(capacityWaitEndNanos - System.nanoTime()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", method, endpoint.name());
+    }
+}
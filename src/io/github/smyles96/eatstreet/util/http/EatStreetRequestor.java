@@ -1,29 +1,32 @@
 package io.github.smyles96.eatstreet.util.http;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.Reader;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.ParseException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+import io.github.smyles96.eatstreet.util.io.DecodingReader;
+import io.github.smyles96.eatstreet.util.json.JsonStreamEntity;
 
 /**
  * Internal class handles the underlying HTTP calls to the EatStreet API
@@ -36,8 +39,17 @@ public class EatStreetRequestor {
     //public static final String EAT_STREET_API_URL = "localhost:8000";
     
     private static String ACCESS_TOKEN;
+    private static String encodedAccessToken;
     private static String userApiKey;
     
+    private static final List<RequestInterceptor> interceptors = new CopyOnWriteArrayList<>();
+    private static volatile HttpTransport transport = TransportType.fromConfiguration().create();
+    private static volatile PriorityScheduler scheduler;
+    
+    private static volatile RequestTimeouts defaultTimeouts = RequestTimeouts.DEFAULT;
+    private static final Map<ApiEndpoint, RequestTimeouts> endpointTimeouts = Collections.synchronizedMap(new EnumMap<>(ApiEndpoint.class));
+    private static volatile long minimumRequestBudget = 50;
+    
     /**
      * Creates a new EatStreetRequestor that handles the underlying REST calls
      * to the EatStreet API
@@ -64,6 +76,10 @@ public class EatStreetRequestor {
     
     public static void setAccessToken(String token) {
         ACCESS_TOKEN = token;
+        
+        // The access token is appended to every request URI, so it is encoded
+        // once here instead of on each call
+        encodedAccessToken = (token == null) ? null : RequestUriBuilder.encodeQueryComponent(token);
     }
     
     /**
@@ -84,6 +100,142 @@ public class EatStreetRequestor {
         userApiKey = apiKey;
     }
     
+    /**
+     * Adds an interceptor to the end of the request pipeline. Interceptors are
+     * called in the order they were added, before the request reaches the transport.
+     * 
+     * @param interceptor The interceptor to add
+     */
+    public static void addInterceptor(RequestInterceptor interceptor) {
+        interceptors.add(interceptor);
+    }
+    
+    /**
+     * Removes an interceptor from the request pipeline
+     * 
+     * @param interceptor The interceptor to remove
+     * 
+     * @return true if the interceptor was registered, false otherwise
+     */
+    public static boolean removeInterceptor(RequestInterceptor interceptor) {
+        return interceptors.remove(interceptor);
+    }
+    
+    /**
+     * Gets the transport that sends requests to the EatStreet server
+     * 
+     * @return The current transport
+     */
+    public static HttpTransport getTransport() {
+        return transport;
+    }
+    
+    /**
+     * Replaces the transport that sends requests to the EatStreet server
+     * 
+     * @param newTransport The transport to use for all subsequent requests
+     */
+    public static void setTransport(HttpTransport newTransport) {
+        transport = newTransport;
+    }
+    
+    /**
+     * Gets the scheduler that dispatches requests to the transport by priority
+     * 
+     * @return The current scheduler, or null if requests are sent immediately
+     */
+    public static PriorityScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Sets a scheduler that limits the requests in flight and dispatches
+     * queued requests by priority
+     * 
+     * @param newScheduler The scheduler to use, or null to send requests immediately
+     */
+    public static void setScheduler(PriorityScheduler newScheduler) {
+        scheduler = newScheduler;
+    }
+    
+    /**
+     * Sets the timeouts used for requests that have none set for themselves
+     * or their endpoint
+     * 
+     * @param timeouts The default timeouts
+     */
+    public static void setDefaultTimeouts(RequestTimeouts timeouts) {
+        defaultTimeouts = Objects.requireNonNull(timeouts);
+    }
+    
+    /**
+     * Sets the timeouts used for all requests to a particular endpoint
+     * 
+     * @param apiEndpoint The endpoint
+     * @param timeouts The timeouts to use, or null to use the default timeouts
+     */
+    public static void setEndpointTimeouts(ApiEndpoint apiEndpoint, RequestTimeouts timeouts) {
+        if( timeouts == null ) {
+            endpointTimeouts.remove(apiEndpoint);
+        }
+        else {
+            endpointTimeouts.put(apiEndpoint, timeouts);
+        }
+    }
+    
+    /**
+     * Gets the timeouts that apply to a request. In order of precedence these
+     * are the timeouts set on the request itself, those set for its endpoint,
+     * then the default timeouts. The result is shortened to fit within the
+     * request's deadline.
+     * 
+     * @param request The request
+     * 
+     * @return The effective timeouts of the request
+     */
+    public static RequestTimeouts getEffectiveTimeouts(EatStreetRequest request) {
+        RequestTimeouts timeouts = request.getTimeouts();
+        
+        if( timeouts == null ) {
+            timeouts = endpointTimeouts.get(request.getEndpoint());
+        }
+        if( timeouts == null ) {
+            timeouts = defaultTimeouts;
+        }
+        
+        return timeouts.within(request.getDeadline());
+    }
+    
+    /**
+     * Sets the least amount of time that must be left before a request's
+     * deadline for the request to be sent. Requests with less time left fail
+     * immediately rather than tying up a connection they cannot use.
+     * 
+     * @param millis The minimum remaining budget in milliseconds
+     */
+    public static void setMinimumRequestBudget(long millis) {
+        minimumRequestBudget = millis;
+    }
+    
+    /**
+     * Checks that a request can still finish before its deadline
+     * 
+     * @param request The request about to be sent
+     * 
+     * @throws EatStreetApiException If the request's remaining budget is too small
+     */
+    public static void checkDeadline(EatStreetRequest request) throws EatStreetApiException {
+        Deadline deadline = request.getDeadline();
+        
+        if( deadline != null ) {
+            long remaining = deadline.remainingMillis();
+            
+            if( remaining < minimumRequestBudget ) {
+                throw EatStreetApiException.deadlineExceeded(request.getEndpoint(), request.toString(), remaining);
+            }
+        }
+    }
+    
     /**
      * Makes a GET request to the EatStreet API
      * 
@@ -96,76 +248,22 @@ public class EatStreetRequestor {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public static Reader makeGetRequest(ApiEndpoint apiEndpoint, List<NameValuePair> queryParams, String... urlParams) throws EatStreetApiException {
-        // Attempt to make the GET request. Any errors that occur are wrapped in a
-        // EatStreetApiException object to provide more specific details to the caller
-        try {
-            CloseableHttpClient client = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-            
-            // Before the URL is constructed, the access-token param must be added
-            // to ensure the request is authenticated with the EatStreet server
-            if( queryParams == null ) {
-                queryParams = new ArrayList<>();
-            }
-            
-            queryParams.add(new BasicNameValuePair("access-token", ACCESS_TOKEN));
-            
-            // Some RESTful URLs of the EatStreet API require values to be inserted inside the endpoint
-            // path url (such as the user's api key or a card id). The constructEndpointPath will format
-            // these particualr endpoint paths with the given urlParams
-            String endpointPath = EatStreetRequestor.constructEndpointPath(apiEndpoint, urlParams);
-            
-            // Start constructing the required EatStreet REST URL
-            URI getUri = new URIBuilder()
-                         .setScheme("https")
-                         .setHost(EAT_STREET_API_URL)
-                         .setPath(endpointPath)
-                         .setParameters(queryParams)
-                         .build();
-            
-            CloseableHttpResponse response = client.execute(new HttpGet(getUri));
-            
-            // Check if the server returned a proper JSON payload
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                throw new EatStreetApiException("The server response did not contain any JSON data to parse");
-            }
-            
-            int statusCode = response.getStatusLine().getStatusCode();
-            // Check the status code
-            if(statusCode != 200) {
-                
-                // If the status code was in the 400 range, then the server also
-                // returned a JSON object with more details
-                if(statusCode >= 400 && statusCode <= 499) {
-                    try(Reader reader = new InputStreamReader(entity.getContent());) {
-                        JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-                        
-                        int code = json.get("errorCode").getAsInt(); // Error code
-                        String message = json.get("details").getAsString(); // Error message
-                        
-                        throw new EatStreetApiException(String.format("Received error code [%d] from the EatStreet server.\n"
-                            + "Server error message: [%s]", code, message));
-                    }
-                }
-                else {
-                    throw new EatStreetApiException(String.format("Receieved error code [%d]", statusCode));
-                }
-                
+        // Some RESTful URLs of the EatStreet API require values to be inserted inside the endpoint
+        // path url (such as the user's api key or a card id). The endpoint's precompiled template
+        // inserts the given urlParams into the path
+        RequestUriBuilder uriBuilder = apiEndpoint.getTemplate().newUri(urlParams);
+        
+        if( queryParams != null ) {
+            for(NameValuePair param : queryParams) {
+                uriBuilder.addParameter(param.getName(), param.getValue());
             }
-            
-            return new InputStreamReader(entity.getContent());
-        }
-        catch (URISyntaxException e) {
-            String errorMessage = String.format("An error occurred when constructing the GET request URI:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
-        }
-        catch (IOException e) {
-            String errorMessage = String.format("An IO error occurred when making the GET request:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
         }
+        
+        // The access-token param must be added to ensure the request is
+        // authenticated with the EatStreet server
+        URI getUri = appendAccessToken(uriBuilder).build();
+        
+        return execute(new EatStreetRequest(apiEndpoint, EatStreetRequest.Method.GET, getUri));
     }
     
     /**
@@ -180,227 +278,352 @@ public class EatStreetRequestor {
      * @throws EatStreetApiException If the request is unable to be made or was corrupted
      */
     public static Reader makePostRequest(ApiEndpoint apiEndpoint, List<NameValuePair> jsonParams, String... urlParams) throws EatStreetApiException {
-        // Attempt to make the POST request. Any errors that occur are wrapped in a
+        // Stream a JSON object built from the jsonParams as the POST request body
+        HttpEntity jsonEntity = null;
+        if( jsonParams != null && jsonParams.size() != 0 ) {
+            jsonEntity = new JsonStreamEntity(writer -> writeJsonObject(jsonParams, writer));
+        }
+        
+        return execute(createPostRequest(apiEndpoint, jsonEntity, urlParams));
+    }
+    
+    /**
+     * Makes a POST request to the EatStreet API with a request body that is
+     * written directly to the connection, such as a {@link JsonStreamEntity}
+     * 
+     * @param apiEndpoint The url of the RESTful end point to get from EatStreet
+     * @param jsonEntity The JSON body of the request (may be null)
+     * @param urlParams Variable number of String arguments to format the endpoint path with
+     * 
+     * @return The HTTP response stream from the EatStreet server
+     * 
+     * @throws EatStreetApiException If the request is unable to be made or was corrupted
+     */
+    public static Reader makePostRequest(ApiEndpoint apiEndpoint, HttpEntity jsonEntity, String... urlParams) throws EatStreetApiException {
+        return execute(createPostRequest(apiEndpoint, jsonEntity, urlParams));
+    }
+    
+    /**
+     * Makes a POST request to the EatStreet API using an existing JSON payload
+     * 
+     * @param apiEndpoint The url of the RESTful end point to get from EatStreet
+     * @param jsonStrPayload The JSON object string to attach to the request
+     * @param urlParams Variable number of String arguments to format the endpoint path with
+     * 
+     * @return The HTTP response stream from the EatStreet server
+     * 
+     * @throws EatStreetApiException If the request is unable to be made or was corrupted
+     */
+    public static Reader makePostRequest(ApiEndpoint apiEndpoint, String jsonStrPayload, String... urlParams) throws EatStreetApiException {
+        // Construct a JSON object string using the jsonPayload, then attach to the POST request
+        HttpEntity jsonEntity = null;
+        if( jsonStrPayload != null && (!jsonStrPayload.equals(""))) {
+            jsonEntity = new StringEntity(jsonStrPayload, ContentType.APPLICATION_JSON);
+        }
+        
+        return execute(createPostRequest(apiEndpoint, jsonEntity, urlParams));
+    }
+    
+    /**
+     * Creates a POST request for an endpoint of the EatStreet API
+     * 
+     * @param apiEndpoint The url of the RESTful end point to post to
+     * @param jsonEntity The JSON body of the request (may be null)
+     * @param urlParams Variable number of String arguments to format the endpoint path with
+     * 
+     * @return The request, ready to be passed to {@link #execute(EatStreetRequest)}
+     */
+    public static EatStreetRequest createPostRequest(ApiEndpoint apiEndpoint, HttpEntity jsonEntity, String... urlParams) {
+        // Some RESTful URLs of the EatStreet API require values to be inserted inside the endpoint
+        // path url (such as the user's api key or a card id). The endpoint's precompiled template
+        // inserts the given urlParams into the path
+        URI postUri = appendAccessToken(apiEndpoint.getTemplate().newUri(urlParams)).build();
+        
+        EatStreetRequest postRequest = new EatStreetRequest(apiEndpoint, EatStreetRequest.Method.POST, postUri);
+        
+        if( jsonEntity != null ) {
+            postRequest.setEntity(jsonEntity);
+            postRequest.setHeader("Accept", "application/json");
+            postRequest.setHeader("Content-type", "application/json");
+        }
+        
+        return postRequest;
+    }
+    
+    /**
+     * Sends a request through the request pipeline (the registered interceptors,
+     * then the transport) and checks the server's response
+     * 
+     * @param request The request to make
+     * 
+     * @return The HTTP response stream from the EatStreet server. Closing it
+     *         releases the underlying connection
+     * 
+     * @throws EatStreetApiException If the request is unable to be made or was corrupted
+     */
+    public static Reader execute(EatStreetRequest request) throws EatStreetApiException {
+        // Requests that can no longer finish in time fail here, before any
+        // upstream capacity is used
+        checkDeadline(request);
+        
+        // Attempt to make the request. Any errors that occur are wrapped in a
         // EatStreetApiException object to provide more specific details to the caller
+        EatStreetResponse response = interceptors.isEmpty()
+                                     ? send(request)
+                                     : new InterceptorChain(interceptors.toArray(new RequestInterceptor[0]), 0, request).proceed(request);
+        
         try {
-            CloseableHttpClient client = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-            
-            // Some RESTful URLs of the EatStreet API require values to be inserted inside the endpoint
-            // path url (such as the user's api key or a card id). The constructEndpointPath will format
-            // these particualr endpoint paths with the given urlParams
-            String endpointPath = constructEndpointPath(apiEndpoint, urlParams);
-            
-            // Construct the URI for the specified end point
-            URI postUri = new URIBuilder()
-                              .setScheme("https")
-                              .setHost(EAT_STREET_API_URL)
-                              .setPath(endpointPath)
-                              .setParameter("access-token", ACCESS_TOKEN)
-                              .build();
-            
-            // Create the POST object
-            HttpPost postRequest = new HttpPost(postUri);
-            
-            // Construct a JSON object string using the jsonParams, then attach to the POST request
-            if( jsonParams != null && jsonParams.size() != 0 ) {
-                HttpEntity jsonEntity = new StringEntity(constructJsonObjectStr(jsonParams), ContentType.APPLICATION_JSON);
-                postRequest.setEntity(jsonEntity);
-                postRequest.setHeader("Accept", "application/json");
-                postRequest.setHeader("Content-type", "application/json");
-            }
-            
-            //postRequest.setEntity(new UrlEncodedFormEntity(jsonParams));
-            
-            // Make the actual request
-            CloseableHttpResponse response = client.execute(postRequest);
-            
             // Check if the server returned a proper JSON payload
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                throw new EatStreetApiException("The server response did not contain any JSON data to parse");
+            InputStream body = response.getBody();
+            if (body == null) {
+                throw EatStreetApiException.emptyResponse(request.getEndpoint(), response.getStatusCode());
             }
             
-            int statusCode = response.getStatusLine().getStatusCode();
+            int statusCode = response.getStatusCode();
             // Check the status code
             if(statusCode != 200) {
+                
                 // If the status code was in the 400 range, then the server also
                 // returned a JSON object with more details
                 if(statusCode >= 400 && statusCode <= 499) {
-                    try(Reader reader = new InputStreamReader(entity.getContent());) {
-                        JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-                        
-                        int code = json.get("errorCode").getAsInt(); // Error code
-                        String message = json.get("details").getAsString(); // Error message
-                        
-                        throw new EatStreetApiException(String.format("Received error code [%d] from the EatStreet server.\n"
-                            + "Server error message: [%s]", code, message));
-                    }
+                    throw readErrorResponse(request, response);
                 }
                 else {
-                    throw new EatStreetApiException(String.format("Receieved error code [%d]", statusCode));
+                    throw EatStreetApiException.errorResponse(request.getEndpoint(), statusCode, EatStreetApiException.NO_ERROR_CODE, null);
                 }
                 
             }
             
             // Get the character set of the returned payload and convert to a Reader object
-            ContentType contentType = ContentType.getOrDefault(entity);
-            Charset charset = contentType.getCharset();
-            
-            return new InputStreamReader(entity.getContent(), charset);
-        }
-        catch (URISyntaxException e) {
-            String errorMessage = String.format("An error occurred when constructing the POST request URI:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
+            // that decodes through pooled buffers. Closing the reader closes the whole
+            // response rather than just its body
+            return new DecodingReader(new ResponseInputStream(response), getCharset(response));
         }
         catch(IOException e) {
-            String errorMessage = String.format("An IO error occurred when making the POST request:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
+            closeQuietly(response);
+            throw EatStreetApiException.ioError(request.getEndpoint(), request.getMethod(), e);
+        }
+        catch(EatStreetApiException | RuntimeException e) {
+            closeQuietly(response);
+            throw e;
         }
     }
     
     /**
-     * Makes a POST request to the EatStreet API using an existing JSON payload
+     * Private helper method that hands a request to the transport, the final
+     * stage of the request pipeline
      * 
-     * @param apiEndpoint The url of the RESTful end point to get from EatStreet
-     * @param jsonStrPayload The JSON object string to attach to the request
-     * @param urlParams Variable number of String arguments to format the endpoint path with
+     * @param request The request to send
      * 
-     * @return The HTTP response stream from the EatStreet server
+     * @return The server's response
      * 
-     * @throws EatStreetApiException If the request is unable to be made or was corrupted
+     * @throws EatStreetApiException If the request could not be sent
      */
-    public static Reader makePostRequest(ApiEndpoint apiEndpoint, String jsonStrPayload, String... urlParams) throws EatStreetApiException {
-        // Attempt to make the POST request. Any errors that occur are wrapped in a
-        // EatStreetApiException object to provide more specific details to the caller
+    private static EatStreetResponse send(EatStreetRequest request) throws EatStreetApiException {
+        // Interceptors may have spent part of the budget, so it is checked again
+        if( request.getDeadline() != null ) {
+            checkDeadline(request);
+        }
+        
+        PriorityScheduler activeScheduler = scheduler;
+        
+        // One connection request timeout covers every wait for capacity: the
+        // scheduler's queue, then the transport's traffic class permit and
+        // connection pool each wait only for what is left of it
+        long capacityWait = getEffectiveTimeouts(request).getConnectionRequestTimeout();
+        request.startCapacityWait(capacityWait);
+        
         try {
-            CloseableHttpClient client = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-            
-            // Some RESTful URLs of the EatStreet API require values to be inserted inside the endpoint
-            // path url (such as the user's api key or a card id). The constructEndpointPath will format
-            // these particualr endpoint paths with the given urlParams
-            String endpointPath = constructEndpointPath(apiEndpoint, urlParams);
-            
-            // Construct the URI for the specified end point
-            URI postUri = new URIBuilder()
-                              .setScheme("https")
-                              .setHost(EAT_STREET_API_URL)
-                              .setPath(endpointPath)
-                              .setParameter("access-token", ACCESS_TOKEN)
-                              .build();
-            
-            // Create the POST object
-            HttpPost postRequest = new HttpPost(postUri);
-            
-            // Construct a JSON object string using the jsonPayload, then attach to the POST request
-            if( jsonStrPayload != null && (!jsonStrPayload.equals(""))) {
-                HttpEntity jsonEntity = new StringEntity(jsonStrPayload, ContentType.APPLICATION_JSON);
-                postRequest.setEntity(jsonEntity);
-                postRequest.setHeader("Accept", "application/json");
-                postRequest.setHeader("Content-type", "application/json");
+            if( activeScheduler == null ) {
+                return transport.execute(request);
             }
             
-            //postRequest.setEntity(new UrlEncodedFormEntity(jsonParams));
-            
-            // Make the actual request
-            CloseableHttpResponse response = client.execute(postRequest);
+            activeScheduler.acquire(request, capacityWait);
             
-            // Check if the server returned a proper JSON payload
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                throw new EatStreetApiException("The server response did not contain any JSON data to parse");
+            EatStreetResponse response;
+            try {
+                checkDeadline(request);
+                response = transport.execute(request);
+            }
+            catch(IOException | EatStreetApiException | RuntimeException e) {
+                activeScheduler.release();
+                throw e;
             }
             
-            int statusCode = response.getStatusLine().getStatusCode();
-            // Check the status code
-            if(statusCode != 200) {
+            // The slot is held until the response has been read and closed
+            response.onClose(activeScheduler::release);
+            return response;
+        }
+        catch(NoCapacityException | ConnectionPoolTimeoutException e) {
+            throw EatStreetApiException.noCapacity(request.getEndpoint(), request.getMethod(), e.getMessage());
+        }
+        catch(IOException e) {
+            throw EatStreetApiException.ioError(request.getEndpoint(), request.getMethod(), e);
+        }
+    }
+    
+    /**
+     * Private helper method that reads the errorCode and details of a 4xx
+     * response. Only those two properties are read; the rest of the body is
+     * skipped without building a JSON tree
+     * 
+     * @param request The request that failed
+     * @param response The error response
+     * 
+     * @return The exception describing the error
+     * 
+     * @throws IOException If the response body could not be read
+     */
+    private static EatStreetApiException readErrorResponse(EatStreetRequest request, EatStreetResponse response) throws IOException {
+        int code = EatStreetApiException.NO_ERROR_CODE; // Error code
+        String message = null; // Error message
+        
+        try(JsonReader reader = new JsonReader(new DecodingReader(response.getBody(), getCharset(response)))) {
+            reader.beginObject();
+            
+            while( reader.hasNext() ) {
+                String name = reader.nextName();
                 
-                // If the status code was in the 400 range, then the server also
-                // returned a JSON object with more details
-                if(statusCode >= 400 && statusCode <= 499) {
-                    try(Reader reader = new InputStreamReader(entity.getContent());) {
-                        JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-                        
-                        int code = json.get("errorCode").getAsInt(); // Error code
-                        String message = json.get("details").getAsString(); // Error message
-                        
-                        throw new EatStreetApiException(String.format("Received error code [%d] from the EatStreet server.\n"
-                            + "Server error message: [%s]", code, message));
-                    }
+                if( name.equals("errorCode") && reader.peek() == JsonToken.NUMBER ) {
+                    code = reader.nextInt();
+                }
+                else if( name.equals("details") && reader.peek() == JsonToken.STRING ) {
+                    message = reader.nextString();
                 }
                 else {
-                    throw new EatStreetApiException(String.format("Receieved error code [%d]", statusCode));
+                    reader.skipValue();
                 }
                 
+                if( code != EatStreetApiException.NO_ERROR_CODE && message != null ) {
+                    break;
+                }
             }
-            
-            // Get the character set of the returned payload and convert to a Reader object
-            ContentType contentType = ContentType.getOrDefault(entity);
-            Charset charset = contentType.getCharset();
-            
-            return new InputStreamReader(entity.getContent(), charset);
         }
-        catch (URISyntaxException e) {
-            String errorMessage = String.format("An error occurred when constructing the POST request URI:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
+        catch(IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            // Not the JSON object the API documents; report the status code alone
+        }
+        
+        return EatStreetApiException.errorResponse(request.getEndpoint(), response.getStatusCode(), code, message);
+    }
+    
+    /**
+     * Private helper method that gets the character set of a response's payload
+     * 
+     * @param response The response
+     * 
+     * @return The charset named in the response's content type, or UTF-8 (the
+     *         encoding JSON is sent in) if it names none
+     */
+    private static Charset getCharset(EatStreetResponse response) {
+        String contentType = response.getHeader("Content-Type");
+        
+        if( contentType != null ) {
+            try {
+                Charset charset = ContentType.parse(contentType).getCharset();
+                if( charset != null ) {
+                    return charset;
+                }
+            }
+            catch(ParseException | UnsupportedCharsetException e) {
+                // Fall back to UTF-8 below
+            }
+        }
+        
+        return StandardCharsets.UTF_8;
+    }
+    
+    private static void closeQuietly(EatStreetResponse response) {
+        try {
+            response.close();
         }
         catch(IOException e) {
-            String errorMessage = String.format("An IO error occurred when making the POST request:\n\t%s", e.getMessage());
-            throw new EatStreetApiException(errorMessage);
+            // Nothing can be done at this point
         }
     }
     
     /**
-     * Private helper method that formats certain EatStreet endpoint paths with the
-     * user's api key
+     * Private helper method that appends the cached, pre-encoded access token
+     * to a request URI
      * 
-     * @param apiEndpoint A apiEndpoint path to check
-     * @param formatStrings Variable number of Strings to format the apiEndpoint argument with
+     * @param uriBuilder The builder of the request URI
      * 
-     * @return The endpoint path
+     * @return The same builder
      */
-    private static String constructEndpointPath(ApiEndpoint apiEndpoint, String... formatStrings) {
-        if( apiEndpoint.requiresFormatting() ) {
-            // String.format takes a Object[] for the values. We can take advantage of this to
-            // pass the variable length formatStrings argument as the arguments to format the
-            // endpoint path with the correct values.
-            //   Example:
-            //      ApiEndpoint.REMOVE_CARD == "/user/%s/remove-card/%s" (First %s is the user's API key; the second %s must be the card's id)
-            //
-            //      Calling constructEndpointPath(ApiEndpoint.REMOVE_CARD, "user1234", "card1234")
-            //      returns "/user/user1234/remove-card/card1234" which is the desired endpoint path
-            return String.format(apiEndpoint.toString(), (Object[]) formatStrings);
-        }
-        else {
-            // If the endpoint path didn't require formatting, we just return its path
-            return apiEndpoint.toString();
+    private static RequestUriBuilder appendAccessToken(RequestUriBuilder uriBuilder) {
+        if( encodedAccessToken == null ) {
+            return uriBuilder.addParameter("access-token", null);
         }
+        
+        return uriBuilder.addEncodedParameter("access-token", encodedAccessToken);
     }
     
     /**
-     * Constructs a JSON object string using a given list of NameValuePair objects
+     * Writes a JSON object using a given list of NameValuePair objects.
+     * Pairs with a null value are left out
      * 
      * @param jsonParams A list of NameValuePair objects representing the key-value items to place in the JSON object
+     * @param writer The writer to write the JSON object to
      * 
-     * @return The constructed JSON object string
+     * @throws IOException If writing fails
      */
-    private static String constructJsonObjectStr(List<NameValuePair> jsonParams) {
-        // Construct a new JSONObject
-        JsonObject json = new JsonObject();
+    private static void writeJsonObject(List<NameValuePair> jsonParams, JsonWriter writer) throws IOException {
+        writer.beginObject();
         
-        // Loop through the pairs
         for(NameValuePair pair : jsonParams) {
             if(pair.getValue() != null) {
-                json.addProperty(pair.getName(), pair.getValue());
+                writer.name(pair.getName()).value(pair.getValue());
             }
         }
         
-        return json.toString();
+        writer.endObject();
+    }
+    
+    /**
+     * The chain of interceptors a request passes through before reaching the transport
+     */
+    private static final class InterceptorChain implements RequestInterceptor.Chain {
+        
+        private final RequestInterceptor[] chain;
+        private final int index;
+        private final EatStreetRequest request;
+        
+        InterceptorChain(RequestInterceptor[] chain, int index, EatStreetRequest request) {
+            this.chain = chain;
+            this.index = index;
+            this.request = request;
+        }
+        
+        @Override
+        public EatStreetRequest getRequest() {
+            return request;
+        }
+        
+        @Override
+        public EatStreetResponse proceed(EatStreetRequest request) throws EatStreetApiException {
+            if( index == chain.length ) {
+                return send(request);
+            }
+            
+            return chain[index].intercept(new InterceptorChain(chain, index + 1, request));
+        }
     }
     
+    /**
+     * Response body stream that closes the whole response (running its close
+     * actions) when it is closed
+     */
+    private static final class ResponseInputStream extends FilterInputStream {
+        
+        private final EatStreetResponse response;
+        
+        ResponseInputStream(EatStreetResponse response) {
+            super(response.getBody());
+            this.response = response;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            response.close();
+        }
+    }
 }
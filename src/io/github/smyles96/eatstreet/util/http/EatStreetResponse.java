@@ -0,0 +1,152 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class represents a response from the EatStreet API as it passes
+ * back through the request pipeline. The body is a stream that is read
+ * lazily by the caller; closing the response closes the stream and runs any
+ * close actions registered by the transport or by interceptors (such as
+ * releasing a pooled connection or a concurrency permit).
+ *
+ * @author smyles96
+ */
+public class EatStreetResponse implements Closeable {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private InputStream body;
+    private List<Runnable> closeActions;
+    private boolean closed;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new response
+     *
+     * @param statusCode The HTTP status code
+     * @param headers The response headers (names are matched case-insensitively)
+     * @param body The response body, or null if the response has none
+     */
+    public EatStreetResponse(int statusCode, Map<String, String> headers, InputStream body) {
+        this.statusCode = statusCode;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.body = body;
+
+        if( headers != null ) {
+            this.headers.putAll(headers);
+        }
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the value of a response header
+     *
+     * @param name The header name (case-insensitive)
+     *
+     * @return The header value, or null if the header was not present
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Sets the value of a response header
+     *
+     * @param name The header name
+     * @param value The header value, or null to remove the header
+     */
+    public void setHeader(String name, String value) {
+        if( value == null ) {
+            headers.remove(name);
+        }
+        else {
+            headers.put(name, value);
+        }
+    }
+
+    /**
+     * Gets the body of the response
+     *
+     * @return The response stream, or null if the response has no body
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Replaces the body of the response. Interceptors use this to wrap the
+     * stream returned by the transport (e.g. to decode or measure it).
+     *
+     * @param body The new response stream
+     */
+    public void setBody(InputStream body) {
+        this.body = body;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Registers an action to run when this response is closed. Actions are
+     * run in the reverse order of their registration.
+     *
+     * @param action The action to run
+     */
+    public synchronized void onClose(Runnable action) {
+        if( closeActions == null ) {
+            closeActions = new ArrayList<>(2);
+        }
+
+        closeActions.add(action);
+    }
+
+    /**
+     * Closes the response body and runs the registered close actions. Calling
+     * this method more than once has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Runnable> actions;
+        synchronized(this) {
+            if( closed ) {
+                return;
+            }
+
+            closed = true;
+            actions = closeActions;
+        }
+
+        try {
+            if( body != null ) {
+                body.close();
+            }
+        }
+        finally {
+            if( actions != null ) {
+                for(int i = actions.size() - 1; i >= 0; i--) {
+                    actions.get(i).run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled form of an ApiEndpoint path. The endpoint path is split once
+ * (when the ApiEndpoint enum is loaded) into its static segments and the
+ * placeholders between them, and each static segment is stored together with
+ * the scheme and host of the EatStreet API. Building a request URI then only
+ * requires appending the already encoded pieces and the encoded url params
+ * to a single StringBuilder.
+ *
+ * For example:
+ *     "user/%s/remove-card/%s"
+ *         => ["https://eatstreet.com/publicapi/v1/user/", "/remove-card/", ""]
+ *
+ * @author smyles96
+ */
+public final class EndpointTemplate {
+
+    /* STATIC FIELDS */
+    private static final String PLACEHOLDER = "%s";
+
+    // Extra room reserved in the builder for url params and the query string
+    // so that most URIs are built without the StringBuilder having to grow
+    private static final int EXTRA_CAPACITY = 96;
+
+    /* INSTANCE VARIABLES */
+    private final String[] segments;
+    private final int staticLength;
+
+    /* CONSTRUCTOR(S) */
+
+    /**
+     * Compile a new endpoint template
+     *
+     * @param baseUrl The scheme and host to prefix the path with (e.g. "https://eatstreet.com/publicapi/v1")
+     * @param path The endpoint path, using "%s" for each value to be inserted
+     */
+    EndpointTemplate(String baseUrl, String path) {
+        List<String> parts = new ArrayList<>();
+        String prefix = baseUrl + "/";
+
+        int start = 0;
+        int index;
+        while( (index = path.indexOf(PLACEHOLDER, start)) != -1 ) {
+            parts.add(prefix + path.substring(start, index));
+            prefix = "";
+            start = index + PLACEHOLDER.length();
+        }
+        parts.add(prefix + path.substring(start));
+
+        this.segments = parts.toArray(new String[parts.size()]);
+
+        int length = 0;
+        for(String segment : segments) {
+            length += segment.length();
+        }
+        this.staticLength = length;
+    }
+
+    /* INSTANCE METHODS */
+
+    /**
+     * Gets the number of url params this template expects
+     *
+     * @return The number of placeholders in the endpoint path
+     */
+    public int getParameterCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Starts building a request URI for this endpoint. The url params are
+     * encoded and inserted in place of the placeholders of the endpoint path.
+     *
+     * @param urlParams Values to insert into the endpoint path, in order
+     *
+     * @return A builder that query parameters can be appended to
+     *
+     * @throws IllegalArgumentException If fewer url params than placeholders are given
+     */
+    public RequestUriBuilder newUri(String... urlParams) {
+        int paramCount = getParameterCount();
+
+        // String.format ignored any extra arguments, so only a missing
+        // argument is treated as an error
+        if( urlParams.length < paramCount ) {
+            throw new IllegalArgumentException(String.format("Endpoint expects %d url params but %d were given",
+                                                             paramCount, urlParams.length));
+        }
+
+        RequestUriBuilder builder = new RequestUriBuilder(staticLength + EXTRA_CAPACITY);
+        builder.appendRaw(segments[0]);
+
+        for(int i = 0; i < paramCount; i++) {
+            builder.appendPathSegment(urlParams[i]);
+            builder.appendRaw(segments[i + 1]);
+        }
+
+        return builder;
+    }
+}
@@ -0,0 +1,645 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.http.HttpEntity;
+import io.github.smyles96.eatstreet.util.io.BufferPool;
+
+/**
+ * An alternative transport that sends requests with the JDK's
+ * java.net.http.HttpClient in HTTP/2 mode. Concurrent requests to the
+ * EatStreet host are multiplexed over a single connection instead of each
+ * opening its own HTTP/1.1 connection. Until the first response arrives,
+ * requests are sent one at a time, so a cold fan-out opens one connection
+ * rather than one per request.
+ *
+ * Against a local stand-in (see bench/README.md) the transport keeps fan-outs
+ * of menu requests to one connection where the ApacheHttpTransport opens one
+ * per concurrent request, but its fan-outs are no faster: fewer connections,
+ * not lower latency, is the reason to choose it.
+ *
+ * The library is compiled for Java 8, so the HttpClient API is bound through
+ * reflection once, when the transport is created. It is only available when
+ * running on Java 11 or newer (see {@link #isSupported()}); servers that do
+ * not speak HTTP/2 are talked to over HTTP/1.1.
+ *
+ * Traffic classes keep their concurrency permits, and responses are
+ * decompressed and counted exactly as with the ApacheHttpTransport. Request
+ * bodies are streamed: the entity is written into a small bounded pipe by a
+ * body writer thread while the JDK client reads from it. The JDK client's own
+ * timeout only covers the wait for the response headers, so each read of a
+ * response body is bounded by the socket timeout here: a read that waits
+ * longer is interrupted and fails with a SocketTimeoutException.
+ *
+ * @author smyles96
+ */
+public class Http2Transport implements HttpTransport {
+
+    /* STATIC FIELDS */
+    private static final Api API = Api.load();
+
+    // Interrupts body reads that wait longer than the socket timeout
+    private static final AtomicInteger watchdogThreads = new AtomicInteger();
+    private static final ScheduledThreadPoolExecutor WATCHDOG = newWatchdog();
+
+    // Writes request bodies into the pipes the JDK client reads them from;
+    // the traffic-class permits bound how many run at once
+    private static final AtomicInteger bodyWriterThreads = new AtomicInteger();
+    private static final ExecutorService BODY_WRITERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "eatstreet-http2-body-" + bodyWriterThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Object client;
+    private final TrafficPermits permits;
+    private final TransferStats transferStats = new TransferStats();
+
+    // Until a first response arrives, requests are sent one at a time, so the
+    // connection the first one opens is shared by the rest instead of every
+    // concurrent request opening (and upgrading) its own
+    private final Object firstConnection = new Object();
+    private volatile boolean connected;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a transport using the default permits of each traffic class
+     *
+     * @throws UnsupportedOperationException If the runtime has no java.net.http.HttpClient
+     */
+    public Http2Transport() {
+        this(new EnumMap<>(TrafficClass.class));
+    }
+
+    /**
+     * Create a transport with configured concurrency per traffic class
+     *
+     * @param permitSizes The number of concurrent requests allowed per traffic class.
+     *                    Classes missing from the map use their default pool size
+     *
+     * @throws UnsupportedOperationException If the runtime has no java.net.http.HttpClient
+     */
+    public Http2Transport(Map<TrafficClass, Integer> permitSizes) {
+        if( API == null ) {
+            throw new UnsupportedOperationException("HTTP/2 transport requires java.net.http (Java 11 or newer)");
+        }
+
+        this.permits = new TrafficPermits(permitSizes);
+
+        try {
+            Object builder = API.clientNewBuilder.invoke(null);
+            API.clientBuilderVersion.invoke(builder, API.http2);
+            API.clientBuilderConnectTimeout.invoke(builder, Duration.ofMillis(RequestTimeouts.DEFAULT.getConnectTimeout()));
+
+            this.client = API.clientBuilderBuild.invoke(builder);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create the HTTP/2 client", e);
+        }
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets the counters of response bytes received by this transport
+     *
+     * @return The transfer counters
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    @Override
+    public EatStreetResponse execute(EatStreetRequest request) throws IOException {
+        RequestTimeouts timeouts = EatStreetRequestor.getEffectiveTimeouts(request);
+        ContentDecoding.negotiate(request);
+
+        Object httpRequest;
+        try {
+            httpRequest = buildRequest(request, timeouts);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new IOException("Unable to build the HTTP/2 request", e);
+        }
+
+        // Concurrency is still limited per traffic class; the permit is held
+        // until the response has been read and closed
+        TrafficClass trafficClass = request.getEndpoint().getTrafficClass();
+        RequestPriority priority = request.getPriority();
+        permits.acquire(trafficClass, priority, request.remainingCapacityWait(timeouts.getConnectionRequestTimeout()));
+
+        EatStreetResponse result;
+        try {
+            Object response = null;
+            if( !connected ) {
+                synchronized( firstConnection ) {
+                    // Requests that waited here share the first one's connection
+                    if( !connected ) {
+                        response = API.clientSend.invoke(client, httpRequest, API.inputStreamHandler);
+                        connected = true;
+                    }
+                }
+            }
+            if( response == null ) {
+                response = API.clientSend.invoke(client, httpRequest, API.inputStreamHandler);
+            }
+
+            int statusCode = (Integer) API.responseStatusCode.invoke(response);
+            InputStream body = new TimedInputStream((InputStream) API.responseBody.invoke(response), timeouts.getSocketTimeout());
+
+            @SuppressWarnings("unchecked")
+            Map<String, List<String>> headerMap = (Map<String, List<String>>) API.headersMap.invoke(API.responseHeaders.invoke(response));
+
+            Map<String, String> headers = new HashMap<>();
+            for(Map.Entry<String, List<String>> header : headerMap.entrySet()) {
+                if( !header.getValue().isEmpty() ) {
+                    headers.put(header.getKey(), header.getValue().get(0));
+                }
+            }
+
+            result = new EatStreetResponse(statusCode, headers, body);
+        }
+        catch(InvocationTargetException e) {
+            permits.release(trafficClass, priority);
+            throw unwrap(e);
+        }
+        catch(ReflectiveOperationException | RuntimeException e) {
+            permits.release(trafficClass, priority);
+            throw new IOException("Unable to send the HTTP/2 request", e);
+        }
+
+        result.onClose(() -> permits.release(trafficClass, priority));
+
+        try {
+            ContentDecoding.decode(result, transferStats);
+        }
+        catch(IOException e) {
+            result.close();
+            throw e;
+        }
+
+        return result;
+    }
+
+    private Object buildRequest(EatStreetRequest request, RequestTimeouts timeouts) throws ReflectiveOperationException {
+        Object builder = API.requestNewBuilder.invoke(null, request.getUri());
+
+        // The JDK client has a single timeout covering the wait for the
+        // response headers; body reads are timed by TimedInputStream
+        API.requestBuilderTimeout.invoke(builder, Duration.ofMillis(timeouts.getSocketTimeout()));
+
+        for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            API.requestBuilderHeader.invoke(builder, header.getKey(), header.getValue());
+        }
+
+        if( request.getMethod() == EatStreetRequest.Method.POST ) {
+            Object publisher;
+
+            if( request.getEntity() == null ) {
+                publisher = API.noBody.invoke(null);
+            }
+            else {
+                HttpEntity entity = request.getEntity();
+                long socketTimeout = timeouts.getSocketTimeout();
+
+                // Called each time the client sends the body
+                Supplier<InputStream> body = () -> {
+                    BodyPipe pipe = new BodyPipe(socketTimeout);
+                    BODY_WRITERS.execute(() -> pipe.writeFrom(entity));
+                    return pipe;
+                };
+                publisher = API.ofInputStream.invoke(null, body);
+
+                long length = entity.getContentLength();
+                if( length >= 0 ) {
+                    publisher = API.fromPublisher.invoke(null, publisher, length);
+                }
+            }
+
+            API.requestBuilderPost.invoke(builder, publisher);
+        }
+        else {
+            API.requestBuilderGet.invoke(builder);
+        }
+
+        return API.requestBuilderBuild.invoke(builder);
+    }
+
+    private static IOException unwrap(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+
+        if( cause instanceof IOException ) {
+            return (IOException) cause;
+        }
+        if( cause instanceof InterruptedException ) {
+            Thread.currentThread().interrupt();
+            return new IOException("Interrupted while waiting for the response");
+        }
+
+        return new IOException(String.valueOf(cause.getMessage()), cause);
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Checks whether the running JVM provides java.net.http.HttpClient
+     *
+     * @return true if this transport can be created, false otherwise
+     */
+    public static boolean isSupported() {
+        return API != null;
+    }
+
+    private static ScheduledThreadPoolExecutor newWatchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "eatstreet-http2-watchdog-" + watchdogThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+
+        return watchdog;
+    }
+
+    /**
+     * Bounds each read of a response body by the socket timeout. The JDK's
+     * body stream blocks in an interruptible wait, so a read that takes too
+     * long is interrupted by the watchdog and the stream is closed. Each read
+     * only moves the stream's deadline; the stream has at most one watchdog
+     * task at a time, which checks the deadline when it fires and, if a read
+     * moved it, waits again for what is left
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+
+        private final long timeoutNanos;
+
+        // Guarded by this
+        private Thread reader;
+        private long deadline;
+        private ScheduledFuture<?> timer;
+        private boolean timedOut;
+
+        TimedInputStream(InputStream in, long timeoutMillis) {
+            super(in);
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        @Override
+        public int read() throws IOException {
+            start();
+            try {
+                return in.read();
+            }
+            catch(IOException e) {
+                throw timedOut(e);
+            }
+            finally {
+                stop();
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            start();
+            try {
+                return in.read(buffer, offset, length);
+            }
+            catch(IOException e) {
+                throw timedOut(e);
+            }
+            finally {
+                stop();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            start();
+            try {
+                return in.skip(n);
+            }
+            catch(IOException e) {
+                throw timedOut(e);
+            }
+            finally {
+                stop();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized( this ) {
+                if( timer != null ) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+            }
+
+            super.close();
+        }
+
+        private synchronized void start() throws IOException {
+            if( timedOut ) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+
+            reader = Thread.currentThread();
+
+            if( timeoutNanos > 0 ) {
+                deadline = System.nanoTime() + timeoutNanos;
+
+                if( timer == null ) {
+                    timer = WATCHDOG.schedule(this::check, timeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        private synchronized void stop() {
+            reader = null;
+
+            // The interrupt was meant for the read, not the caller
+            if( timedOut ) {
+                Thread.interrupted();
+            }
+        }
+
+        private void check() {
+            synchronized( this ) {
+                timer = null;
+
+                // Between reads; the next read starts a new timer
+                if( reader == null ) {
+                    return;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if( remaining > 0 ) {
+                    timer = WATCHDOG.schedule(this::check, remaining, TimeUnit.NANOSECONDS);
+                    return;
+                }
+
+                timedOut = true;
+                reader.interrupt();
+            }
+
+            try {
+                in.close();
+            }
+            catch(IOException e) {
+                // The read fails either way
+            }
+        }
+
+        private synchronized IOException timedOut(IOException e) {
+            if( !timedOut ) {
+                return e;
+            }
+
+            SocketTimeoutException timeout = new SocketTimeoutException(
+                String.format("Read timed out after %dms", TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+            timeout.initCause(e);
+            return timeout;
+        }
+    }
+
+    /**
+     * A bounded pipe a request body is written into by a body writer thread
+     * and read from by the JDK client. A failure to write the body fails the
+     * read, so a partial body is never sent as a complete one, and a writer
+     * whose reader stops reading gives up after the socket timeout
+     */
+    private static final class BodyPipe extends InputStream {
+
+        private final long timeoutNanos;
+        private final byte[] buffer = new byte[BufferPool.BUFFER_SIZE];
+
+        // Guarded by this
+        private int start;
+        private int count;
+        private boolean written;
+        private boolean closed;
+        private IOException failure;
+
+        BodyPipe(long timeoutMillis) {
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis > 0 ? timeoutMillis : RequestTimeouts.DEFAULT.getSocketTimeout());
+        }
+
+        /**
+         * Writes an entity into the pipe, then marks the end of the body
+         */
+        void writeFrom(HttpEntity entity) {
+            OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    put(bytes, offset, length);
+                }
+            };
+
+            try {
+                entity.writeTo(out);
+                finish(null);
+            }
+            catch(IOException | RuntimeException e) {
+                finish((e instanceof IOException) ? (IOException) e : new IOException("Unable to write the request body", e));
+            }
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+            if( length == 0 ) {
+                return 0;
+            }
+
+            while( count == 0 && failure == null && !written ) {
+                if( closed ) {
+                    throw new IOException("The request body pipe is closed");
+                }
+
+                await();
+            }
+
+            if( failure != null ) {
+                throw failure;
+            }
+            if( count == 0 ) {
+                return -1;
+            }
+
+            int read = Math.min(length, Math.min(count, buffer.length - start));
+            System.arraycopy(buffer, start, bytes, offset, read);
+            start = (start + read) % buffer.length;
+            count -= read;
+
+            notifyAll();
+            return read;
+        }
+
+        @Override
+        public synchronized int available() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private synchronized void put(byte[] bytes, int offset, int length) throws IOException {
+            while( length > 0 ) {
+                long deadline = System.nanoTime() + timeoutNanos;
+
+                while( count == buffer.length && !closed ) {
+                    if( System.nanoTime() - deadline >= 0 ) {
+                        throw new SocketTimeoutException("The request body was not read in time");
+                    }
+
+                    await();
+                }
+
+                if( closed ) {
+                    throw new IOException("The request body pipe is closed");
+                }
+
+                int end = (start + count) % buffer.length;
+                int put = Math.min(length, Math.min(buffer.length - count, buffer.length - end));
+                System.arraycopy(bytes, offset, buffer, end, put);
+                count += put;
+                offset += put;
+                length -= put;
+
+                notifyAll();
+            }
+        }
+
+        private synchronized void finish(IOException failure) {
+            this.failure = failure;
+            this.written = true;
+            notifyAll();
+        }
+
+        private void await() throws IOException {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, timeoutNanos);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while streaming the request body");
+            }
+        }
+    }
+
+    /**
+     * The reflectively bound parts of the java.net.http API
+     */
+    private static final class Api {
+
+        Method clientNewBuilder;
+        Method clientBuilderVersion;
+        Method clientBuilderConnectTimeout;
+        Method clientBuilderBuild;
+        Method clientSend;
+        Object http2;
+
+        Method requestNewBuilder;
+        Method requestBuilderTimeout;
+        Method requestBuilderHeader;
+        Method requestBuilderGet;
+        Method requestBuilderPost;
+        Method requestBuilderBuild;
+        Method noBody;
+        Method ofInputStream;
+        Method fromPublisher;
+
+        Object inputStreamHandler;
+        Method responseStatusCode;
+        Method responseHeaders;
+        Method responseBody;
+        Method headersMap;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        static Api load() {
+            try {
+                Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> publisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> publishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+                Class<?> handlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> handlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+
+                Api api = new Api();
+                api.clientNewBuilder = clientClass.getMethod("newBuilder");
+                api.clientBuilderVersion = clientBuilderClass.getMethod("version", versionClass);
+                api.clientBuilderConnectTimeout = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+                api.clientBuilderBuild = clientBuilderClass.getMethod("build");
+                api.clientSend = clientClass.getMethod("send", requestClass, handlerClass);
+                api.http2 = Enum.valueOf((Class<Enum>) versionClass, "HTTP_2");
+
+                api.requestNewBuilder = requestClass.getMethod("newBuilder", URI.class);
+                api.requestBuilderTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+                api.requestBuilderHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+                api.requestBuilderGet = requestBuilderClass.getMethod("GET");
+                api.requestBuilderPost = requestBuilderClass.getMethod("POST", publisherClass);
+                api.requestBuilderBuild = requestBuilderClass.getMethod("build");
+                api.noBody = publishersClass.getMethod("noBody");
+                api.ofInputStream = publishersClass.getMethod("ofInputStream", Supplier.class);
+                api.fromPublisher = publishersClass.getMethod("fromPublisher", Class.forName("java.util.concurrent.Flow$Publisher"), long.class);
+
+                api.inputStreamHandler = handlersClass.getMethod("ofInputStream").invoke(null);
+                api.responseStatusCode = responseClass.getMethod("statusCode");
+                api.responseHeaders = responseClass.getMethod("headers");
+                api.responseBody = responseClass.getMethod("body");
+                api.headersMap = headersClass.getMethod("map");
+
+                return api;
+            }
+            catch(ReflectiveOperationException | RuntimeException e) {
+                // Running on Java 8 or 9/10 without java.net.http
+                return null;
+            }
+        }
+    }
+}
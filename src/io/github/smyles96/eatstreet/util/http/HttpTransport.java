@@ -0,0 +1,24 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.IOException;
+
+/**
+ * The last stage of the request pipeline, responsible for sending a request
+ * over the network and returning the server's response.
+ *
+ * @author smyles96
+ */
+@FunctionalInterface
+public interface HttpTransport {
+
+    /**
+     * Sends a request to the EatStreet server
+     *
+     * @param request The request to send
+     *
+     * @return The server's response. The caller is responsible for closing it
+     *
+     * @throws IOException If the request could not be sent or the response could not be read
+     */
+    EatStreetResponse execute(EatStreetRequest request) throws IOException;
+}
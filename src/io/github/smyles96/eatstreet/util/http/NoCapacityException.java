@@ -0,0 +1,19 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request waited too long for a connection permit or a
+ * dispatch slot, so the requestor can report it as a capacity failure
+ * rather than a generic IO error.
+ *
+ * @author smyles96
+ */
+final class NoCapacityException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    NoCapacityException(String message) {
+        super(message);
+    }
+}
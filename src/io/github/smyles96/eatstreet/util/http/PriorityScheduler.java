@@ -0,0 +1,208 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A scheduler that sits in front of the transport and limits the number of
+ * requests in flight. When the limit is reached, requests queue up and are
+ * dispatched by priority (see RequestPriority).
+ *
+ * To keep low priority interactive requests from starving, a queued request
+ * is treated as if its priority improved by one class for every aging
+ * interval it has waited. PREFETCH requests are handled separately: they are
+ * only dispatched when no interactive request is waiting and more than the
+ * reserved number of slots are free, so speculative work never delays an
+ * interactive call.
+ *
+ * Allowing 16 requests in flight, 4 of which are never used for prefetching:
+ * <pre>{@code
+ * EatStreetRequestor.setScheduler(new PriorityScheduler(16, 4, 250));
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class PriorityScheduler {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final int maxInFlight;
+    private final int reservedForInteractive;
+    private final long agingNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Ticket> interactive;
+    private final ArrayDeque<Ticket> background;
+    private int inFlight;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new scheduler
+     *
+     * @param maxInFlight The maximum number of requests sent at once
+     * @param reservedForInteractive The number of slots PREFETCH requests may never use
+     * @param agingMillis How long a queued request waits before it competes with the next higher priority class
+     *
+     * @throws IllegalArgumentException If the limits are inconsistent
+     */
+    public PriorityScheduler(int maxInFlight, int reservedForInteractive, long agingMillis) {
+        if( maxInFlight <= 0 || reservedForInteractive < 0 || reservedForInteractive >= maxInFlight || agingMillis <= 0 ) {
+            throw new IllegalArgumentException("Invalid scheduler limits");
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.reservedForInteractive = reservedForInteractive;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+
+        this.interactive = new PriorityQueue<>(Comparator.comparingLong((Ticket t) -> t.sortKey));
+        this.background = new ArrayDeque<>();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Gets the number of requests currently dispatched
+     *
+     * @return The number of requests in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting to be dispatched
+     *
+     * @return The number of queued requests
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return interactive.size() + background.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a request may be sent. Every successful call must be paired
+     * with a call to {@link #release()}.
+     *
+     * @param request The request to dispatch
+     * @param timeoutMillis The longest time to wait in the queue
+     *
+     * @throws IOException If the request was not dispatched in time
+     */
+    public void acquire(EatStreetRequest request, long timeoutMillis) throws IOException {
+        boolean prefetch = request.getPriority() == RequestPriority.PREFETCH;
+
+        lock.lock();
+        try {
+            // Fast path: nothing is queued ahead of this request
+            if( prefetch ? canDispatchBackground() : (interactive.isEmpty() && inFlight < maxInFlight) ) {
+                inFlight++;
+                return;
+            }
+
+            Ticket ticket = new Ticket(request.getPriority(), lock.newCondition());
+            if( prefetch ) {
+                background.add(ticket);
+            }
+            else {
+                interactive.add(ticket);
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while( !ticket.granted ) {
+                if( remaining <= 0 ) {
+                    // Leave the queue; the slot may have been granted just now
+                    if( !(prefetch ? background.remove(ticket) : interactive.remove(ticket)) && ticket.granted ) {
+                        return;
+                    }
+
+                    throw new NoCapacityException(String.format("The %s request was not dispatched within %dms (%d requests queued)",
+                                                                request, timeoutMillis, interactive.size() + background.size()));
+                }
+
+                try {
+                    remaining = ticket.condition.awaitNanos(remaining);
+                }
+                catch(InterruptedException e) {
+                    if( !(prefetch ? background.remove(ticket) : interactive.remove(ticket)) && ticket.granted ) {
+                        release();
+                    }
+
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting to be dispatched");
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a finished request and dispatches the next queued request(s)
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+
+            while( inFlight < maxInFlight && !interactive.isEmpty() ) {
+                grant(interactive.poll());
+            }
+            while( canDispatchBackground() && !background.isEmpty() ) {
+                grant(background.poll());
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canDispatchBackground() {
+        return interactive.isEmpty() && inFlight < maxInFlight - reservedForInteractive;
+    }
+
+    private void grant(Ticket ticket) {
+        inFlight++;
+        ticket.granted = true;
+        ticket.condition.signal();
+    }
+
+    /**
+     * A queued request. Its sort key is its arrival time pushed back by one
+     * aging interval per priority class below ORDER, so a request that has
+     * waited long enough sorts ahead of newer, higher priority requests.
+     */
+    private final class Ticket {
+
+        private final long sortKey;
+        private final Condition condition;
+        private boolean granted;
+
+        Ticket(RequestPriority priority, Condition condition) {
+            this.sortKey = System.nanoTime() + priority.ordinal() * agingNanos;
+            this.condition = condition;
+        }
+    }
+}
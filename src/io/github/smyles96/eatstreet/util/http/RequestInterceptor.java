@@ -0,0 +1,65 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import io.github.smyles96.eatstreet.exception.EatStreetApiException;
+
+/**
+ * An interceptor observes, modifies or short-circuits requests made to the
+ * EatStreet API. Interceptors registered with the EatStreetRequestor are
+ * called in the order they were added; each one decides whether to pass the
+ * request further down the chain (and ultimately to the transport) by
+ * calling {@link Chain#proceed(EatStreetRequest)}.
+ *
+ * A timing interceptor:
+ * <pre>{@code
+ * EatStreetRequestor.addInterceptor(chain -> {
+ *     long start = System.nanoTime();
+ *     try {
+ *         return chain.proceed(chain.getRequest());
+ *     }
+ *     finally {
+ *         System.out.println(chain.getRequest() + " took " + (System.nanoTime() - start) + "ns");
+ *     }
+ * });
+ * }</pre>
+ *
+ * @author smyles96
+ */
+@FunctionalInterface
+public interface RequestInterceptor {
+
+    /**
+     * Handles a request
+     *
+     * @param chain The remainder of the request pipeline
+     *
+     * @return The response to the request
+     *
+     * @throws EatStreetApiException If the request is unable to be made
+     */
+    EatStreetResponse intercept(Chain chain) throws EatStreetApiException;
+
+    /**
+     * The remainder of the request pipeline as seen by an interceptor
+     */
+    interface Chain {
+
+        /**
+         * Gets the request being made
+         *
+         * @return The request
+         */
+        EatStreetRequest getRequest();
+
+        /**
+         * Passes a request to the next interceptor, or to the transport if
+         * this is the last interceptor
+         *
+         * @param request The request to pass on
+         *
+         * @return The response to the request
+         *
+         * @throws EatStreetApiException If the request is unable to be made
+         */
+        EatStreetResponse proceed(EatStreetRequest request) throws EatStreetApiException;
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.smyles96.eatstreet.util.http;
+
+/**
+ * This enum holds the priority classes of requests made to the EatStreet
+ * API, from highest to lowest priority. When a PriorityScheduler is set on
+ * the EatStreetRequestor, queued requests are dispatched in this order.
+ *
+ * Each endpoint has a default priority. Background work can lower the
+ * priority of every request it makes on the current thread:
+ * <pre>{@code
+ * try(RequestPriority.Scope scope = RequestPriority.PREFETCH.activate()) {
+ *     restaurant.getMenu();
+ * }
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public enum RequestPriority {
+    // Order validation and submission
+    ORDER,
+
+    // Order statuses and small interactive account calls
+    STATUS,
+
+    // Searches, menus and other browse traffic
+    MENU,
+
+    // Speculative or background work that must never delay interactive calls
+    PREFETCH;
+
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Gets the priority activated on the current thread
+     *
+     * @return The active priority, or null if requests use their endpoint's default
+     */
+    public static RequestPriority current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this priority apply to all requests made by the current thread
+     * until the returned scope is closed
+     *
+     * @return The scope to close once the calls are finished
+     */
+    public Scope activate() {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(this);
+
+        return new Scope(previous);
+    }
+
+    /**
+     * The period during which a priority is active on a thread
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final RequestPriority previous;
+
+        private Scope(RequestPriority previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Restores the priority that was active before this scope was opened
+         */
+        @Override
+        public void close() {
+            if( previous == null ) {
+                CURRENT.remove();
+            }
+            else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.smyles96.eatstreet.util.http;
+
+/**
+ * An immutable set of timeouts (in milliseconds) applied to a request made to
+ * the EatStreet API.
+ *
+ * <ul>
+ *   <li>connect - time allowed to establish a connection with the server</li>
+ *   <li>socket - maximum time to wait between two packets of the response</li>
+ *   <li>connection request - time allowed to lease a connection from the pool</li>
+ * </ul>
+ *
+ * @author smyles96
+ */
+public final class RequestTimeouts {
+
+    /* STATIC FIELDS */
+
+    /**
+     * The timeouts used when none are configured for the request or its endpoint
+     */
+    public static final RequestTimeouts DEFAULT = new RequestTimeouts(10_000, 30_000, 10_000);
+
+    /* INSTANCE VARIABLES */
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int connectionRequestTimeout;
+
+    /* CONSTRUCTOR(S) */
+
+    /**
+     * Create a new set of timeouts
+     *
+     * @param connectTimeout Milliseconds allowed to establish a connection
+     * @param socketTimeout Milliseconds allowed between two packets of the response
+     * @param connectionRequestTimeout Milliseconds allowed to lease a pooled connection
+     *
+     * @throws IllegalArgumentException If a timeout is not positive
+     */
+    public RequestTimeouts(int connectTimeout, int socketTimeout, int connectionRequestTimeout) {
+        if( connectTimeout <= 0 || socketTimeout <= 0 || connectionRequestTimeout <= 0 ) {
+            throw new IllegalArgumentException("Timeouts must be positive");
+        }
+
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    /* GETTERS */
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /* INSTANCE METHODS */
+
+    /**
+     * Shortens these timeouts so that none of them exceeds the time left
+     * before a deadline
+     *
+     * @param deadline The deadline to respect (may be null)
+     *
+     * @return The clamped timeouts, or this object if no clamping was needed
+     */
+    public RequestTimeouts within(Deadline deadline) {
+        if( deadline == null ) {
+            return this;
+        }
+
+        long remaining = Math.max(1, deadline.remainingMillis());
+        if( remaining >= connectTimeout && remaining >= socketTimeout && remaining >= connectionRequestTimeout ) {
+            return this;
+        }
+
+        int limit = (int) remaining;
+        return new RequestTimeouts(Math.min(connectTimeout, limit),
+                                   Math.min(socketTimeout, limit),
+                                   Math.min(connectionRequestTimeout, limit));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[connect: %dms, socket: %dms, connection request: %dms]",
+                             connectTimeout, socketTimeout, connectionRequestTimeout);
+    }
+}
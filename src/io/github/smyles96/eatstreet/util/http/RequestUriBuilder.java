@@ -0,0 +1,192 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An append-only builder for EatStreet request URIs. Instances are created
+ * by an EndpointTemplate with the scheme, host and path already written, so
+ * only the query parameters need to be appended by the caller.
+ *
+ * Values are percent-encoded as UTF-8. Values made up only of unreserved
+ * characters (which covers api keys and most parameter names) are appended
+ * as-is without any intermediate allocations.
+ *
+ * Url params in the path are encoded as URIBuilder encoded the endpoint
+ * path: besides the unreserved characters, the sub-delimiters and ':' and
+ * '@' (!'()*;:@&=+$,) are left as they are. The one difference is '/',
+ * which is escaped, so a url param can never add segments to the path.
+ * Query parameters are form encoded.
+ *
+ * @author smyles96
+ */
+public final class RequestUriBuilder {
+
+    /* STATIC FIELDS */
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /* INSTANCE VARIABLES */
+    private final StringBuilder uri;
+    private boolean hasQuery;
+
+    /* CONSTRUCTOR(S) */
+
+    RequestUriBuilder(int capacity) {
+        this.uri = new StringBuilder(capacity);
+    }
+
+    /* INSTANCE METHODS */
+
+    /**
+     * Appends a query parameter to the URI. Both the name and the value are
+     * encoded using the application/x-www-form-urlencoded rules.
+     *
+     * @param name The parameter name
+     * @param value The parameter value (may be null to only append the name)
+     *
+     * @return This builder
+     */
+    public RequestUriBuilder addParameter(String name, String value) {
+        startParameter();
+        appendEncoded(name, true);
+
+        if( value != null ) {
+            uri.append('=');
+            appendEncoded(value, true);
+        }
+
+        return this;
+    }
+
+    /**
+     * Appends a query parameter whose name and value have already been
+     * encoded (see {@link #encodeQueryComponent(String)}).
+     *
+     * @param encodedName The encoded parameter name
+     * @param encodedValue The encoded parameter value
+     *
+     * @return This builder
+     */
+    public RequestUriBuilder addEncodedParameter(String encodedName, String encodedValue) {
+        startParameter();
+        uri.append(encodedName).append('=').append(encodedValue);
+
+        return this;
+    }
+
+    /**
+     * Builds the URI
+     *
+     * @return The request URI
+     */
+    public URI build() {
+        return URI.create(uri.toString());
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+
+    void appendRaw(String encoded) {
+        uri.append(encoded);
+    }
+
+    void appendPathSegment(String value) {
+        // String.format wrote "null" for null arguments; that behaviour is kept
+        appendEncoded(String.valueOf(value), false);
+    }
+
+    private void startParameter() {
+        uri.append(hasQuery ? '&' : '?');
+        hasQuery = true;
+    }
+
+    private void appendEncoded(String value, boolean query) {
+        int length = value.length();
+
+        // Find the first character that needs encoding. If there is none, the
+        // value is appended directly
+        int first = 0;
+        while( first < length && isLiteral(value.charAt(first), query) ) {
+            first++;
+        }
+
+        if( first == length ) {
+            uri.append(value);
+            return;
+        }
+
+        uri.append(value, 0, first);
+
+        for(int i = first; i < length; i++) {
+            char c = value.charAt(i);
+
+            if( isLiteral(c, query) ) {
+                uri.append(c);
+            }
+            else if( c == ' ' && query ) {
+                uri.append('+');
+            }
+            else if( c < 0x80 ) {
+                appendEscaped(c);
+            }
+            else {
+                // Encode the (possibly surrogate paired) character as UTF-8
+                int end = (Character.isHighSurrogate(c) && i + 1 < length) ? i + 2 : i + 1;
+                for(byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    appendEscaped(b & 0xFF);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    private void appendEscaped(int b) {
+        uri.append('%').append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0x0F]);
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Encodes a query parameter name or value so that it can be passed to
+     * {@link #addEncodedParameter(String, String)}. Useful for values such
+     * as the access token that are appended to every request.
+     *
+     * @param value The value to encode
+     *
+     * @return The encoded value
+     */
+    public static String encodeQueryComponent(String value) {
+        RequestUriBuilder builder = new RequestUriBuilder(value.length() + 16);
+        builder.appendEncoded(value, true);
+
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether a character is appended without encoding: in a query,
+     * only unreserved characters are; in a path segment, the path-safe
+     * characters are too
+     */
+    private static boolean isLiteral(char c, boolean query) {
+        return isUnreserved(c) || (!query && isPathSafe(c));
+    }
+
+    private static boolean isPathSafe(char c) {
+        switch( c ) {
+            case '!': case '\'': case '(': case ')': case '*':
+            case ';': case ':': case '@': case '&': case '=': case '+': case '$': case ',':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') ||
+               (c >= 'A' && c <= 'Z') ||
+               (c >= '0' && c <= '9') ||
+               c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.smyles96.eatstreet.util.http;
+
+/**
+ * This enum groups the endpoints of the EatStreet API into classes of
+ * traffic. Each class is given its own connection pool and concurrency
+ * permits by the transport, so that a burst of one kind of traffic (such as
+ * browsing menus) cannot starve another (such as submitting orders).
+ *
+ * @author smyles96
+ */
+public enum TrafficClass {
+    // Order validation and submission
+    ORDER(10),
+
+    // User account management
+    ACCOUNT(10),
+
+    // Restaurant search, menus, order lookups and statuses
+    BROWSE(20);
+
+    private final int defaultPoolSize;
+
+    TrafficClass(int defaultPoolSize) {
+        this.defaultPoolSize = defaultPoolSize;
+    }
+
+    /**
+     * Gets the number of connections (and concurrent requests) allowed for
+     * this class of traffic when no size is configured
+     *
+     * @return The default pool size
+     */
+    public int getDefaultPoolSize() {
+        return defaultPoolSize;
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The concurrency permits of each TrafficClass, shared by the transports so
+ * that every transport isolates order, account and browse traffic the same way.
+ *
+ * PREFETCH requests may hold at most a quarter of a class's permits (at least
+ * one), so speculative work always leaves most of the class to interactive
+ * requests, with or without a PriorityScheduler in front of the transport.
+ *
+ * @author smyles96
+ */
+final class TrafficPermits {
+
+    /* INSTANCE VARIABLES */
+    private final Map<TrafficClass, Semaphore> permits;
+    private final Map<TrafficClass, Semaphore> prefetchPermits;
+
+    /* CONSTRUCTOR(S) */
+
+    /**
+     * Create the permits of every traffic class
+     *
+     * @param sizes The number of concurrent requests allowed per traffic class.
+     *              Classes missing from the map use their default pool size
+     */
+    TrafficPermits(Map<TrafficClass, Integer> sizes) {
+        this.permits = new EnumMap<>(TrafficClass.class);
+        this.prefetchPermits = new EnumMap<>(TrafficClass.class);
+
+        for(TrafficClass trafficClass : TrafficClass.values()) {
+            int size = sizeOf(trafficClass, sizes);
+
+            permits.put(trafficClass, new Semaphore(size, true));
+            prefetchPermits.put(trafficClass, new Semaphore(Math.max(1, size / 4), true));
+        }
+    }
+
+    /* INSTANCE METHODS */
+
+    int available(TrafficClass trafficClass) {
+        return permits.get(trafficClass).availablePermits();
+    }
+
+    /**
+     * Waits for a permit of a traffic class
+     *
+     * @param trafficClass The traffic class of the request
+     * @param priority The priority of the request
+     * @param timeoutMillis The longest time to wait
+     *
+     * @throws IOException If no permit became available in time
+     */
+    void acquire(TrafficClass trafficClass, RequestPriority priority, long timeoutMillis) throws IOException {
+        boolean prefetch = priority == RequestPriority.PREFETCH;
+        long start = System.nanoTime();
+
+        try {
+            if( prefetch && !prefetchPermits.get(trafficClass).tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS) ) {
+                throw new NoCapacityException(String.format("No prefetch capacity available for %s traffic within %dms",
+                                                            trafficClass, timeoutMillis));
+            }
+
+            boolean acquired = false;
+            try {
+                long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if( !permits.get(trafficClass).tryAcquire(Math.max(0, remaining), TimeUnit.MILLISECONDS) ) {
+                    throw new NoCapacityException(String.format("No capacity available for %s traffic within %dms",
+                                                                trafficClass, timeoutMillis));
+                }
+                acquired = true;
+            }
+            finally {
+                // The prefetch permit is only held along with a class permit
+                if( prefetch && !acquired ) {
+                    prefetchPermits.get(trafficClass).release();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection");
+        }
+    }
+
+    void release(TrafficClass trafficClass, RequestPriority priority) {
+        permits.get(trafficClass).release();
+
+        if( priority == RequestPriority.PREFETCH ) {
+            prefetchPermits.get(trafficClass).release();
+        }
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Gets the configured size of a traffic class
+     *
+     * @param trafficClass The traffic class
+     * @param sizes The configured sizes
+     *
+     * @return The configured size, or the class's default pool size
+     *
+     * @throws IllegalArgumentException If the configured size is not positive
+     */
+    static int sizeOf(TrafficClass trafficClass, Map<TrafficClass, Integer> sizes) {
+        Integer size = sizes.get(trafficClass);
+
+        if( size == null ) {
+            return trafficClass.getDefaultPoolSize();
+        }
+        if( size <= 0 ) {
+            throw new IllegalArgumentException("Pool sizes must be positive");
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the response bytes received by a transport. Bytes on the
+ * wire are counted before decompression and decoded bytes after it, so the
+ * ratio between the two shows how much compression is saving. An
+ * uncompressed body counts the same bytes as both.
+ *
+ * @author smyles96
+ */
+public class TransferStats {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+
+    /*
+     * GETTERS
+     */
+
+    /**
+     * Gets the number of responses received
+     *
+     * @return The response count
+     */
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    /**
+     * Gets the number of responses that were received compressed
+     *
+     * @return The compressed response count
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * Gets the number of body bytes read from the network
+     *
+     * @return The bytes on the wire
+     */
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    /**
+     * Gets the number of body bytes after decompression
+     *
+     * @return The decoded bytes
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    /**
+     * Gets how many decoded bytes were received per byte on the wire
+     *
+     * @return The compression ratio (1.0 when nothing was compressed)
+     */
+    public double getCompressionRatio() {
+        long wire = getWireBytes();
+
+        return (wire == 0) ? 1.0 : (double) getDecodedBytes() / wire;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Resets all counters to zero
+     */
+    public void reset() {
+        responses.reset();
+        compressedResponses.reset();
+        wireBytes.reset();
+        decodedBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d responses (%d compressed), %d bytes on wire, %d bytes decoded (%.1fx)",
+                             getResponses(), getCompressedResponses(), getWireBytes(), getDecodedBytes(), getCompressionRatio());
+    }
+
+    void recordResponse(boolean compressed) {
+        responses.increment();
+
+        if( compressed ) {
+            compressedResponses.increment();
+        }
+    }
+
+    void addWireBytes(long count) {
+        wireBytes.add(count);
+    }
+
+    void addDecodedBytes(long count) {
+        decodedBytes.add(count);
+    }
+}
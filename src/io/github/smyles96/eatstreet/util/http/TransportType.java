@@ -0,0 +1,84 @@
+package io.github.smyles96.eatstreet.util.http;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This enum holds the transports available to the EatStreetRequestor.
+ *
+ * The transport used by default is chosen with the "eatstreet.transport"
+ * system property ("http1" or "http2"). HTTP/2 falls back to the pooled
+ * HTTP/1.1 transport when the JVM does not provide java.net.http.
+ *
+ * Choosing a transport in code:
+ * <pre>{@code
+ * EatStreetRequestor.setTransport(TransportType.HTTP_2.create());
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public enum TransportType {
+    // Apache HttpClient with a connection pool per traffic class
+    HTTP_1_1("http1"),
+
+    // JDK HttpClient multiplexing requests over HTTP/2
+    HTTP_2("http2");
+
+    /**
+     * The system property used to choose the default transport
+     */
+    public static final String SYSTEM_PROPERTY = "eatstreet.transport";
+
+    private final String configName;
+
+    TransportType(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Creates a transport of this type with the default size for each traffic class
+     *
+     * @return The new transport
+     */
+    public HttpTransport create() {
+        return create(new EnumMap<>(TrafficClass.class));
+    }
+
+    /**
+     * Creates a transport of this type
+     *
+     * @param poolSizes The number of concurrent requests allowed per traffic class
+     *
+     * @return The new transport
+     */
+    public HttpTransport create(Map<TrafficClass, Integer> poolSizes) {
+        if( this == HTTP_2 && Http2Transport.isSupported() ) {
+            return new Http2Transport(poolSizes);
+        }
+
+        return new ApacheHttpTransport(poolSizes);
+    }
+
+    @Override
+    public String toString() {
+        return this.configName;
+    }
+
+    /**
+     * Gets the transport type named by the "eatstreet.transport" system property
+     *
+     * @return The configured type, or HTTP_1_1 if the property is unset or unknown
+     */
+    public static TransportType fromConfiguration() {
+        String configured = System.getProperty(SYSTEM_PROPERTY, "");
+
+        for(TransportType type : values()) {
+            if( type.configName.equals(configured.trim().toLowerCase(Locale.ROOT)) ) {
+                return type;
+            }
+        }
+
+        return HTTP_1_1;
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.smyles96.eatstreet.util.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * This class contains a bounded pool of byte and char buffers that are
+ * reused when request bodies are written and responses are decoded, so that
+ * each request does not allocate (and later garbage collect) its own buffers.
+ *
+ * Every buffer taken from the pool should be given back once it is no longer
+ * used. Buffers that are not given back are simply garbage collected.
+ *
+ * @author smyles96
+ */
+public final class BufferPool {
+
+    /* STATIC FIELDS */
+
+    /**
+     * The size of every pooled buffer
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    // Number of idle buffers of each kind kept for reuse
+    private static final int MAX_POOLED = 64;
+
+    private static final ArrayBlockingQueue<byte[]> BYTE_BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final ArrayBlockingQueue<char[]> CHAR_BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    /* CONSTRUCTOR(S) */
+
+    private BufferPool() {}
+
+    /* STATIC METHODS */
+
+    /**
+     * Takes a byte buffer from the pool, or allocates one if the pool is empty
+     *
+     * @return A byte buffer of {@link #BUFFER_SIZE} bytes
+     */
+    public static byte[] acquireBytes() {
+        byte[] buffer = BYTE_BUFFERS.poll();
+
+        return (buffer == null) ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    /**
+     * Gives a byte buffer back to the pool
+     *
+     * @param buffer The buffer, which must not be used afterwards
+     */
+    public static void release(byte[] buffer) {
+        if( buffer != null && buffer.length == BUFFER_SIZE ) {
+            BYTE_BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Takes a char buffer from the pool, or allocates one if the pool is empty
+     *
+     * @return A char buffer of {@link #BUFFER_SIZE} chars
+     */
+    public static char[] acquireChars() {
+        char[] buffer = CHAR_BUFFERS.poll();
+
+        return (buffer == null) ? new char[BUFFER_SIZE] : buffer;
+    }
+
+    /**
+     * Gives a char buffer back to the pool
+     *
+     * @param buffer The buffer, which must not be used afterwards
+     */
+    public static void release(char[] buffer) {
+        if( buffer != null && buffer.length == BUFFER_SIZE ) {
+            CHAR_BUFFERS.offer(buffer);
+        }
+    }
+}
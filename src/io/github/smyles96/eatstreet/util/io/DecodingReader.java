@@ -0,0 +1,173 @@
+package io.github.smyles96.eatstreet.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A buffered Reader that decodes an InputStream with a CharsetDecoder,
+ * using a byte buffer and a char buffer taken from the BufferPool. It
+ * replaces an InputStreamReader (which allocates its own buffers for every
+ * response) and a BufferedReader on top of it, so each decoded character is
+ * copied only once on its way to the JSON parser.
+ *
+ * Malformed input is replaced rather than reported, as with an
+ * InputStreamReader. Closing the reader closes the stream and returns both
+ * buffers to the pool.
+ *
+ * @author smyles96
+ */
+public class DecodingReader extends Reader {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+
+    private byte[] bytes;
+    private char[] chars;
+    private final ByteBuffer byteBuffer;
+    private final CharBuffer charBuffer;
+
+    private boolean endOfInput;
+    private boolean flushed;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new reader
+     *
+     * @param in The stream to decode
+     * @param charset The character set of the stream
+     */
+    public DecodingReader(InputStream in, Charset charset) {
+        this.in = in;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        this.bytes = BufferPool.acquireBytes();
+        this.chars = BufferPool.acquireChars();
+
+        // Both buffers start out empty, ready to be read from
+        this.byteBuffer = ByteBuffer.wrap(bytes);
+        this.byteBuffer.flip();
+        this.charBuffer = CharBuffer.wrap(chars);
+        this.charBuffer.flip();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+
+        if( !charBuffer.hasRemaining() && !fill() ) {
+            return -1;
+        }
+
+        return charBuffer.get();
+    }
+
+    @Override
+    public int read(char[] cbuf, int offset, int length) throws IOException {
+        ensureOpen();
+
+        if( length == 0 ) {
+            return 0;
+        }
+        if( !charBuffer.hasRemaining() && !fill() ) {
+            return -1;
+        }
+
+        int count = Math.min(length, charBuffer.remaining());
+        charBuffer.get(cbuf, offset, count);
+
+        return count;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        ensureOpen();
+        return charBuffer.hasRemaining() || in.available() > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( chars == null ) {
+            return;
+        }
+
+        try {
+            in.close();
+        }
+        finally {
+            BufferPool.release(bytes);
+            BufferPool.release(chars);
+            bytes = null;
+            chars = null;
+        }
+    }
+
+    /**
+     * Decodes the next run of characters into the char buffer, reading from
+     * the stream only when no buffered bytes can be decoded
+     *
+     * @return true if characters were decoded, false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        charBuffer.clear();
+
+        while( !flushed ) {
+            if( decoder.decode(byteBuffer, charBuffer, endOfInput).isOverflow() ) {
+                break;
+            }
+
+            if( endOfInput ) {
+                flushed = decoder.flush(charBuffer).isUnderflow();
+                break;
+            }
+
+            // Hand back what has been decoded rather than block for more bytes
+            if( charBuffer.position() > 0 ) {
+                break;
+            }
+
+            readBytes();
+        }
+
+        charBuffer.flip();
+        return charBuffer.hasRemaining();
+    }
+
+    private void readBytes() throws IOException {
+        // Keep any partial multi-byte sequence at the front of the buffer
+        byteBuffer.compact();
+
+        int count = in.read(bytes, byteBuffer.position(), byteBuffer.remaining());
+        if( count < 0 ) {
+            endOfInput = true;
+        }
+        else {
+            byteBuffer.position(byteBuffer.position() + count);
+        }
+
+        byteBuffer.flip();
+    }
+
+    private void ensureOpen() throws IOException {
+        if( chars == null ) {
+            throw new IOException("Reader closed");
+        }
+    }
+}
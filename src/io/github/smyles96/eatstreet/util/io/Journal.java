@@ -0,0 +1,272 @@
+package io.github.smyles96.eatstreet.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead log of opaque records.
+ *
+ * Each record is written as its length, a CRC32 of its bytes, and the bytes.
+ * A record is durable once {@link #append(byte[], boolean)} returns with sync
+ * set; appends made concurrently share one fsync (group commit), so the cost
+ * of syncing is paid once per batch rather than once per record. Records
+ * appended without sync become durable with the next synced append or
+ * {@link #sync()}.
+ *
+ * When a journal is opened its records are read back, and anything after the
+ * last complete record (a record torn by a crash) is cut off.
+ *
+ * @author smyles96
+ */
+public final class Journal implements Closeable {
+
+    /* STATIC FIELDS */
+
+    // Length and CRC in front of each record
+    private static final int RECORD_OVERHEAD = 8;
+
+    // Larger lengths can only come from a corrupted file
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final Path file;
+    private FileChannel channel;
+
+    // Written under this; read by syncers without it
+    private volatile long written;
+
+    // Guarded by syncLock
+    private final Object syncLock = new Object();
+    private long synced;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    private Journal(Path file, FileChannel channel, long size) {
+        this.file = file;
+        this.channel = channel;
+        this.written = size;
+        this.synced = size;
+    }
+
+    /*
+     * GETTERS and SETTERS
+     */
+
+    /**
+     * Gets the size of the journal file
+     *
+     * @return The size in bytes
+     */
+    public long size() {
+        return written;
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    /**
+     * Appends a record
+     *
+     * @param record The record
+     * @param sync Whether to wait until the record is on disk
+     *
+     * @throws IOException If the record could not be written or synced
+     */
+    public void append(byte[] record, boolean sync) throws IOException {
+        if( record.length > MAX_RECORD_SIZE ) {
+            throw new IOException("Journal record too large: " + record.length + " bytes");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + record.length);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        buffer.flip();
+
+        long end;
+        synchronized( this ) {
+            writeFully(channel, buffer, written);
+            written += buffer.capacity();
+            end = written;
+        }
+
+        if( sync ) {
+            awaitSynced(end);
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk
+     *
+     * @throws IOException If the journal could not be synced
+     */
+    public void sync() throws IOException {
+        awaitSynced(size());
+    }
+
+    /**
+     * Replaces the journal's records, such as with only the records that are
+     * still needed. The new file is written and synced aside, then moved in
+     * place of the old one
+     *
+     * @param records The records to keep
+     *
+     * @throws IOException If the journal could not be rewritten
+     */
+    public synchronized void rewrite(List<byte[]> records) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+
+            for(byte[] record : records) {
+                CRC32 crc = new CRC32();
+                crc.update(record, 0, record.length);
+
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + record.length);
+                buffer.putInt(record.length);
+                buffer.putInt((int) crc.getValue());
+                buffer.put(record);
+                buffer.flip();
+
+                writeFully(out, buffer, position);
+                position += buffer.capacity();
+            }
+
+            out.force(true);
+        }
+
+        synchronized( syncLock ) {
+            channel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            written = channel.size();
+            synced = written;
+        }
+    }
+
+    /**
+     * Syncs and closes the journal
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if( channel.isOpen() ) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /**
+     * Waits until the journal is synced up to a position. Records keep being
+     * appended while a sync runs, and the waiters queued behind it are usually
+     * covered by the next single sync
+     */
+    private void awaitSynced(long position) throws IOException {
+        synchronized( syncLock ) {
+            if( synced < position ) {
+                long target = written;
+
+                channel.force(false);
+                synced = Math.max(synced, target);
+            }
+        }
+    }
+
+    /*
+     * STATIC METHODS
+     */
+
+    /**
+     * Opens a journal, creating it if it doesn't exist, and reads back its
+     * records
+     *
+     * @param file The journal file
+     * @param records Receives the journal's complete records, in order
+     *
+     * @return The journal, positioned to append after the last complete record
+     *
+     * @throws IOException If the journal could not be opened or read
+     */
+    public static Journal open(Path file, List<byte[]> records) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_OVERHEAD);
+            List<byte[]> read = new ArrayList<>();
+
+            while( position + RECORD_OVERHEAD <= size ) {
+                header.clear();
+                readFully(channel, header, position);
+                header.flip();
+
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if( length < 0 || length > MAX_RECORD_SIZE || position + RECORD_OVERHEAD + length > size ) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(channel, record, position + RECORD_OVERHEAD);
+
+                CRC32 crc = new CRC32();
+                crc.update(record.array(), 0, length);
+                if( (int) crc.getValue() != checksum ) {
+                    break;
+                }
+
+                read.add(record.array());
+                position += RECORD_OVERHEAD + length;
+            }
+
+            // Cut off a record torn by a crash
+            if( position < size ) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+
+            records.addAll(read);
+            return new Journal(file, channel, position);
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while( buffer.hasRemaining() ) {
+            position += file.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while( buffer.hasRemaining() ) {
+            int read = file.read(buffer, position);
+            if( read < 0 ) {
+                throw new IOException("Unexpected end of journal");
+            }
+            position += read;
+        }
+    }
+}
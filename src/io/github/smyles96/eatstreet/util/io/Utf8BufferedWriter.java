@@ -0,0 +1,156 @@
+package io.github.smyles96.eatstreet.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A Writer that encodes characters as UTF-8 straight into a pooled byte
+ * buffer and writes the buffer to an OutputStream whenever it fills up.
+ * Unlike an OutputStreamWriter wrapped in a BufferedWriter it needs no
+ * intermediate char buffer and no per-instance encoder buffers.
+ *
+ * Closing the writer flushes it and returns its buffer to the BufferPool,
+ * but does not close the underlying stream.
+ *
+ * @author smyles96
+ */
+public class Utf8BufferedWriter extends Writer {
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+    private char pendingHighSurrogate;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new writer
+     *
+     * @param out The stream to write the encoded bytes to
+     */
+    public Utf8BufferedWriter(OutputStream out) {
+        this.out = out;
+        this.buffer = BufferPool.acquireBytes();
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        ensureOpen();
+
+        for(int i = offset, end = offset + length; i < end; i++) {
+            encode(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int offset, int length) throws IOException {
+        ensureOpen();
+
+        for(int i = offset, end = offset + length; i < end; i++) {
+            encode(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( buffer == null ) {
+            return;
+        }
+
+        try {
+            if( pendingHighSurrogate != 0 ) {
+                // A lone high surrogate cannot be encoded; write a replacement
+                pendingHighSurrogate = 0;
+                putByte('?');
+            }
+
+            flushBuffer();
+            out.flush();
+        }
+        finally {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if( pendingHighSurrogate != 0 ) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+
+            if( Character.isLowSurrogate(c) ) {
+                int codePoint = Character.toCodePoint(high, c);
+                putByte(0xF0 | (codePoint >> 18));
+                putByte(0x80 | ((codePoint >> 12) & 0x3F));
+                putByte(0x80 | ((codePoint >> 6) & 0x3F));
+                putByte(0x80 | (codePoint & 0x3F));
+                return;
+            }
+
+            putByte('?');
+        }
+
+        if( c < 0x80 ) {
+            putByte(c);
+        }
+        else if( c < 0x800 ) {
+            putByte(0xC0 | (c >> 6));
+            putByte(0x80 | (c & 0x3F));
+        }
+        else if( Character.isHighSurrogate(c) ) {
+            pendingHighSurrogate = c;
+        }
+        else if( Character.isLowSurrogate(c) ) {
+            putByte('?');
+        }
+        else {
+            putByte(0xE0 | (c >> 12));
+            putByte(0x80 | ((c >> 6) & 0x3F));
+            putByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void putByte(int b) throws IOException {
+        if( position == buffer.length ) {
+            flushBuffer();
+        }
+
+        buffer[position++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if( position > 0 ) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if( buffer == null ) {
+            throw new IOException("Writer closed");
+        }
+    }
+}
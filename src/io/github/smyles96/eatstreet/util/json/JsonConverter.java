@@ -1,11 +1,15 @@
 package io.github.smyles96.eatstreet.util.json;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.InstanceCreator;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This class contains static helper methods that handle JSON conversions
@@ -46,6 +50,30 @@ public class JsonConverter {
         return GSON.toJsonTree(src).getAsJsonObject();
     }
     
+    /**
+     * Writes the JSON representation of a Java object to a Writer, optionally
+     * appending extra properties to the object. The object is serialized
+     * directly, without building a JsonObject tree or String first.
+     * 
+     * @param src The Java object to write
+     * @param out The writer to write to
+     * @param extraProperties Writes extra properties into the object before it is closed (may be null)
+     * 
+     * @throws IOException If writing fails
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeJson(Object src, Writer out, JsonStreamEntity.BodyWriter extraProperties) throws IOException {
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) GSON.getAdapter(src.getClass());
+        JsonWriter writer = (extraProperties == null) ? new JsonWriter(out) : new AppendingJsonWriter(out, extraProperties);
+        
+        // Match the output of toJson(), which leaves out null fields
+        writer.setSerializeNulls(GSON.serializeNulls());
+        writer.setHtmlSafe(GSON.htmlSafe());
+        
+        adapter.write(writer, src);
+        writer.flush();
+    }
+    
     /**
      * Turn a JSON object string to a Java object
      * 
@@ -72,4 +100,47 @@ public class JsonConverter {
             @Override public T createInstance(Type t) { return into; }
         }).create().fromJson(json, type);
     }
+    
+    /**
+     * A JsonWriter that writes the extra properties of the outermost object
+     * just before that object is closed
+     */
+    private static final class AppendingJsonWriter extends JsonWriter {
+        
+        private final JsonStreamEntity.BodyWriter extraProperties;
+        private int depth;
+        
+        AppendingJsonWriter(Writer out, JsonStreamEntity.BodyWriter extraProperties) {
+            super(out);
+            this.extraProperties = extraProperties;
+        }
+        
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            depth++;
+            return super.beginObject();
+        }
+        
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            depth++;
+            return super.beginArray();
+        }
+        
+        @Override
+        public JsonWriter endArray() throws IOException {
+            depth--;
+            return super.endArray();
+        }
+        
+        @Override
+        public JsonWriter endObject() throws IOException {
+            if( depth == 1 ) {
+                extraProperties.write(this);
+            }
+            
+            depth--;
+            return super.endObject();
+        }
+    }
 }
@@ -0,0 +1,249 @@
+package io.github.smyles96.eatstreet.util.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import com.google.gson.stream.JsonWriter;
+import io.github.smyles96.eatstreet.util.io.BufferPool;
+import io.github.smyles96.eatstreet.util.io.Utf8BufferedWriter;
+
+/**
+ * An HTTP request body that is serialized as JSON straight onto the
+ * connection's output stream while the request is being sent. No JsonObject
+ * tree, String or byte array of the whole payload is ever built; characters
+ * are UTF-8 encoded into a pooled buffer and flushed to the socket.
+ *
+ * Posting a model object:
+ * <pre>{@code
+ * HttpEntity body = JsonStreamEntity.of(address);
+ * EatStreetRequestor.makePostRequest(ApiEndpoint.ADD_ADDRESS, body, userApiKey);
+ * }</pre>
+ *
+ * @author smyles96
+ */
+public class JsonStreamEntity extends AbstractHttpEntity {
+
+    /**
+     * Writes a JSON payload (or part of one) to a JsonWriter
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+
+        /**
+         * Writes JSON to the writer
+         *
+         * @param writer The writer to write to
+         *
+         * @throws IOException If writing fails
+         */
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes a JSON payload to a character stream
+     */
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(Writer out) throws IOException;
+    }
+
+    /**
+     * Thrown by a BoundedBuffer once the payload no longer fits
+     */
+    private static final class Overflow extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Collects a payload into a pooled buffer, failing once it is full
+     */
+    private static final class BoundedBuffer extends OutputStream {
+        private final byte[] buffer = BufferPool.acquireBytes();
+        private int length;
+        private boolean overflowed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if( overflowed ) {
+                // Only the first write past the end fails, so closing the
+                // writer doesn't fail again
+                return;
+            }
+
+            if( len > buffer.length - length ) {
+                overflowed = true;
+                throw new Overflow();
+            }
+
+            System.arraycopy(b, off, buffer, length, len);
+            length += len;
+        }
+    }
+
+    /*
+     * INSTANCE VARIABLES
+     */
+    private final PayloadWriter payloadWriter;
+
+    // The payload serialized by getContentLength and not yet sent, or null.
+    // Guarded by this
+    private byte[] buffered;
+    private int bufferedLength;
+    private boolean tooLarge;
+
+    /*
+     * CONSTRUCTOR(S)
+     */
+
+    /**
+     * Create a new streaming JSON body
+     *
+     * @param bodyWriter Writes the payload each time the body is sent
+     */
+    public JsonStreamEntity(BodyWriter bodyWriter) {
+        this((PayloadWriter) out -> {
+            JsonWriter jsonWriter = new JsonWriter(out);
+            bodyWriter.write(jsonWriter);
+            jsonWriter.flush();
+        });
+    }
+
+    private JsonStreamEntity(PayloadWriter payloadWriter) {
+        this.payloadWriter = payloadWriter;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+    }
+
+    /*
+     * INSTANCE METHODS
+     */
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Gets the length of the payload, serializing it into a pooled buffer if
+     * it is small enough to be held there until it is sent
+     *
+     * @return The length in bytes, or -1 if the payload is too large and is
+     *         sent chunked
+     */
+    @Override
+    public synchronized long getContentLength() {
+        if( buffered != null ) {
+            return bufferedLength;
+        }
+
+        if( tooLarge ) {
+            return -1;
+        }
+
+        BoundedBuffer buffer = new BoundedBuffer();
+
+        try {
+            stream(buffer);
+        }
+        catch(IOException e) {
+            // Too large for the buffer (or unwritable, which writeTo reports)
+            BufferPool.release(buffer.buffer);
+            tooLarge = true;
+            return -1;
+        }
+
+        buffered = buffer.buffer;
+        bufferedLength = buffer.length;
+
+        return bufferedLength;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Serializes the payload into memory. Only used by consumers that need
+     * the body as a stream; the transport itself calls {@link #writeTo(OutputStream)}.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeTo(buffer);
+
+        return new ByteArrayInputStream(buffer.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] payload;
+        int length;
+
+        // The buffered payload is sent once; a resend serializes it again
+        synchronized( this ) {
+            payload = buffered;
+            length = bufferedLength;
+            buffered = null;
+        }
+
+        if( payload == null ) {
+            stream(out);
+            return;
+        }
+
+        try {
+            out.write(payload, 0, length);
+            out.flush();
+        }
+        finally {
+            BufferPool.release(payload);
+        }
+    }
+
+    private void stream(OutputStream out) throws IOException {
+        try(Utf8BufferedWriter writer = new Utf8BufferedWriter(out)) {
+            payloadWriter.write(writer);
+        }
+    }
+
+    /* STATIC METHODS */
+
+    /**
+     * Creates a body that serializes a Java object
+     *
+     * @param src The object to send
+     *
+     * @return The request body
+     */
+    public static JsonStreamEntity of(Object src) {
+        return new JsonStreamEntity((PayloadWriter) out -> JsonConverter.writeJson(src, out, null));
+    }
+
+    /**
+     * Creates a body that serializes a Java object with extra properties
+     * appended to its JSON object
+     *
+     * @param src The object to send
+     * @param extraProperties Writes the extra properties (names and values) of the object
+     *
+     * @return The request body
+     */
+    public static JsonStreamEntity of(Object src, BodyWriter extraProperties) {
+        return new JsonStreamEntity((PayloadWriter) out -> JsonConverter.writeJson(src, out, extraProperties));
+    }
+}